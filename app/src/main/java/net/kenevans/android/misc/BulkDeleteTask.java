@@ -0,0 +1,183 @@
+//Copyright (c) 2011 Kenneth Evans
+//
+//Permission is hereby granted, free of charge, to any person obtaining
+//a copy of this software and associated documentation files (the
+//"Software"), to deal in the Software without restriction, including
+//without limitation the rights to use, copy, modify, merge, publish,
+//distribute, sublicense, and/or sell copies of the Software, and to
+//permit persons to whom the Software is furnished to do so, subject to
+//the following conditions:
+//
+//The above copyright notice and this permission notice shall be included
+//in all copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+//EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+//MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+//IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+//CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+//TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+//SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+package net.kenevans.android.misc;
+
+import android.app.Activity;
+import android.app.AlertDialog;
+import android.content.ContentProviderOperation;
+import android.content.DialogInterface;
+import android.database.Cursor;
+import android.net.Uri;
+
+/**
+ * Deletes all the rows matching a selection. It is first run as a dry run
+ * to get the number of rows, which the user is asked to confirm before they
+ * are deleted in batches.
+ */
+public class BulkDeleteTask extends BulkUpdateTask {
+    /**
+     * Told about the rows that were deleted.
+     */
+    interface Listener {
+        /**
+         * Called on the main thread after rows have been deleted.
+         *
+         * @param ids   The ids of the rows that were deleted.
+         * @param count The number of ids to use.
+         */
+        void onDeleted(long[] ids, int count);
+    }
+
+    private final Listener mListener;
+
+    /**
+     * The address to match, or null to delete all the rows matching the
+     * selection, and its phoneNumberKey.
+     */
+    private final String mAddress;
+    private final long mAddressKey;
+
+    /**
+     * Constructor.
+     *
+     * @param activity  The activity.
+     * @param noun      What the rows are called in messages.
+     * @param uri       The Uri of the provider.
+     * @param selection The selection for the rows to delete.
+     * @param address   The address to match or null.
+     * @param dryRun    Whether to only count the rows.
+     * @param listener  The Listener.
+     */
+    private BulkDeleteTask(Activity activity, String noun, Uri uri,
+                           String selection, String address, boolean dryRun,
+                           Listener listener) {
+        super(activity, "Deleting", noun, uri, selection, dryRun);
+        mAddress = address;
+        mAddressKey = MessageUtils.phoneNumberKey(address);
+        mListener = listener;
+    }
+
+    /**
+     * Counts the rows matching the selection and deletes them if the user
+     * confirms.
+     *
+     * @param activity  The activity.
+     * @param noun      What the rows are called in messages, for example
+     *                  "calls".
+     * @param uri       The Uri of the provider.
+     * @param selection The selection for the rows to delete.
+     * @param listener  The Listener.
+     */
+    static void start(Activity activity, String noun, Uri uri,
+                      String selection, Listener listener) {
+        new BulkDeleteTask(activity, noun, uri, selection, null, true,
+                listener).execute();
+    }
+
+    /**
+     * Counts the rows with the given address and deletes them if the user
+     * confirms. Phone numbers are compared by their phoneNumberKey, so
+     * +1 (555) 123-4567 matches 5551234567. Other addresses are compared
+     * ignoring case.
+     *
+     * @param activity The activity.
+     * @param noun     What the rows are called in messages.
+     * @param uri      The Uri of the provider, which must have an address
+     *                 column.
+     * @param address  The address.
+     * @param listener The Listener.
+     */
+    static void startForAddress(Activity activity, String noun, Uri uri,
+                                String address, Listener listener) {
+        new BulkDeleteTask(activity, noun, uri, null, address, true,
+                listener).execute();
+    }
+
+    @Override
+    protected String[] getProjection() {
+        if (mAddress == null) return super.getProjection();
+        return new String[]{COL_ID, COL_DATE, COL_ADDRESS};
+    }
+
+    @Override
+    protected boolean accept(Cursor cursor) {
+        if (mAddress == null) return true;
+        String address = cursor.getString(2);
+        if (address == null) return false;
+        if (mAddressKey != MessageUtils.NO_PHONE_KEY) {
+            return MessageUtils.phoneNumberKey(address) == mAddressKey;
+        }
+        return address.trim().equalsIgnoreCase(mAddress);
+    }
+
+    @Override
+    protected ContentProviderOperation makeOperation(long id, long date) {
+        return ContentProviderOperation.newDelete(mUri)
+                .withSelection(COL_ID + "=" + id, null)
+                .build();
+    }
+
+    @Override
+    protected String preview(long[] ids, long[] dates) {
+        return "Are you sure you want to delete " + ids.length + " "
+                + mNoun + "? It cannot be undone.";
+    }
+
+    @Override
+    protected String describe(int count, int total) {
+        return "Deleted " + count + " of " + total + " " + mNoun;
+    }
+
+    @Override
+    protected void onPreviewed(String preview) {
+        AlertDialog.Builder builder = new AlertDialog.Builder(mActivity);
+        builder.setMessage(preview)
+                .setCancelable(false)
+                .setPositiveButton(mActivity.getText(R.string.yes_label),
+                        new DialogInterface.OnClickListener() {
+                            public void onClick(DialogInterface dialog,
+                                                int id) {
+                                new BulkDeleteTask(mActivity, mNoun, mUri,
+                                        mSelection, mAddress, false,
+                                        mListener).execute();
+                            }
+                        })
+                .setNegativeButton(mActivity.getText(R.string.cancel_label),
+                        new DialogInterface.OnClickListener() {
+                            public void onClick(DialogInterface dialog,
+                                                int id) {
+                                dialog.cancel();
+                            }
+                        });
+        AlertDialog alert = builder.create();
+        alert.show();
+    }
+
+    @Override
+    protected void onChanged(long[] ids, int count) {
+        if (mListener != null) {
+            mListener.onDeleted(ids, count);
+        }
+    }
+
+}
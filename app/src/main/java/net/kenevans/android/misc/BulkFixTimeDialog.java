@@ -0,0 +1,164 @@
+//Copyright (c) 2011 Kenneth Evans
+//
+//Permission is hereby granted, free of charge, to any person obtaining
+//a copy of this software and associated documentation files (the
+//"Software"), to deal in the Software without restriction, including
+//without limitation the rights to use, copy, modify, merge, publish,
+//distribute, sublicense, and/or sell copies of the Software, and to
+//permit persons to whom the Software is furnished to do so, subject to
+//the following conditions:
+//
+//The above copyright notice and this permission notice shall be included
+//in all copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+//EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+//MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+//IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+//CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+//TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+//SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+package net.kenevans.android.misc;
+
+import android.app.Dialog;
+import android.content.Context;
+import android.widget.Button;
+import android.widget.EditText;
+import android.widget.RadioButton;
+import android.widget.RadioGroup;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Dialog for the user to enter a range of messages, by id or by date, and a
+ * time offset in hours and minutes to add to their dates. The range starts
+ * out as the given message.
+ */
+public class BulkFixTimeDialog extends Dialog implements IConstants {
+    /**
+     * The format for the dates of the range.
+     */
+    private static final String DATE_FORMAT = "yyyy-MM-dd HH:mm";
+
+    private final Button mOkButton;
+    private final Button mCancelButton;
+    private final RadioButton mDateButton;
+    private final EditText mStartText;
+    private final EditText mEndText;
+    private final EditText mHourText;
+    private final EditText mMinuteText;
+
+    /**
+     * Constructor.
+     *
+     * @param context The context.
+     * @param offset  The time offset in ms to use for the suggested value.
+     * @param id      The id of the current message.
+     * @param date    The date of the current message in ms.
+     */
+    public BulkFixTimeDialog(Context context, int offset, final long id,
+                             final long date) {
+        super(context);
+        setContentView(R.layout.bulkfixtime);
+
+        mOkButton = findViewById(R.id.ok_button);
+        mCancelButton = findViewById(R.id.cancel_button);
+        mDateButton = findViewById(R.id.rangeDateButton);
+        mStartText = findViewById(R.id.rangeStartEditText);
+        mEndText = findViewById(R.id.rangeEndEditText);
+        mHourText = findViewById(R.id.hourEditText);
+        mMinuteText = findViewById(R.id.minuteEditText);
+
+        // Start with the current message
+        mStartText.setText(Long.toString(id));
+        mEndText.setText(Long.toString(id));
+        RadioGroup group = findViewById(R.id.rangeTypeGroup);
+        group.setOnCheckedChangeListener(new RadioGroup
+                .OnCheckedChangeListener() {
+            @Override
+            public void onCheckedChanged(RadioGroup group, int checkedId) {
+                String value = checkedId == R.id.rangeDateButton
+                        ? newDateFormat().format(new Date(date))
+                        : Long.toString(id);
+                mStartText.setText(value);
+                mEndText.setText(value);
+            }
+        });
+
+        // Determine the initial values from the given offset
+        int hours = offset / 3600000;
+        int minutes = (offset - hours * 3600000) / 60000;
+        mHourText.setText(Integer.toString(hours));
+        mMinuteText.setText(Integer.toString(minutes));
+    }
+
+    /**
+     * @return A new SimpleDateFormat for DATE_FORMAT, which is not thread
+     * safe.
+     */
+    private static SimpleDateFormat newDateFormat() {
+        return new SimpleDateFormat(DATE_FORMAT, Locale.US);
+    }
+
+    /**
+     * Gets the time offset in ms from the hours and minutes values in the
+     * EditTexts.
+     *
+     * @return The offset or null if the values are invalid.
+     */
+    public Integer getTimeOffset() {
+        try {
+            int hours = Integer.parseInt(mHourText.getText().toString()
+                    .trim());
+            int minutes = Integer.parseInt(mMinuteText.getText().toString()
+                    .trim());
+            // Convert to ms
+            return 3600000 * hours + 60000 * minutes;
+        } catch (Exception ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Gets the selection for the messages in the range. Dates include the
+     * whole minute of the end of the range.
+     *
+     * @param dateMultiplier The factor to convert the provider dates to ms.
+     * @return The selection or null if the values are invalid.
+     */
+    public String getSelection(long dateMultiplier) {
+        String start = mStartText.getText().toString().trim();
+        String end = mEndText.getText().toString().trim();
+        try {
+            if (mDateButton.isChecked()) {
+                SimpleDateFormat format = newDateFormat();
+                long startDate = format.parse(start).getTime();
+                long endDate = format.parse(end).getTime() + 59999;
+                if (endDate < startDate) return null;
+                return COL_DATE + ">=" + startDate / dateMultiplier
+                        + " AND " + COL_DATE + "<=" + endDate / dateMultiplier;
+            } else {
+                long startId = Long.parseLong(start);
+                long endId = Long.parseLong(end);
+                if (endId < startId) return null;
+                return COL_ID + ">=" + startId + " AND " + COL_ID + "<="
+                        + endId;
+            }
+        } catch (Exception ex) {
+            return null;
+        }
+    }
+
+    public Button getOkButton() {
+        return mOkButton;
+    }
+
+    public Button getCancelButton() {
+        return mCancelButton;
+    }
+
+}
@@ -0,0 +1,96 @@
+//Copyright (c) 2011 Kenneth Evans
+//
+//Permission is hereby granted, free of charge, to any person obtaining
+//a copy of this software and associated documentation files (the
+//"Software"), to deal in the Software without restriction, including
+//without limitation the rights to use, copy, modify, merge, publish,
+//distribute, sublicense, and/or sell copies of the Software, and to
+//permit persons to whom the Software is furnished to do so, subject to
+//the following conditions:
+//
+//The above copyright notice and this permission notice shall be included
+//in all copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+//EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+//MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+//IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+//CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+//TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+//SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+package net.kenevans.android.misc;
+
+import android.app.Activity;
+import android.content.ContentProviderOperation;
+import android.net.Uri;
+
+/**
+ * Shifts the dates of all the messages in a range by a time offset.
+ */
+public class BulkFixTimeTask extends BulkUpdateTask {
+    /**
+     * The offset in ms.
+     */
+    private final long mOffset;
+
+    /**
+     * The factor to convert the provider dates to ms. 1 for SMS, 1000 for
+     * MMS.
+     */
+    private final long mDateMultiplier;
+
+    /**
+     * Constructor.
+     *
+     * @param activity       The activity.
+     * @param uri            The Uri of the provider.
+     * @param selection      The selection for the messages to change.
+     * @param offset         The offset in ms.
+     * @param dateMultiplier The factor to convert the provider dates to ms.
+     * @param dryRun         Whether to only show what would be changed.
+     */
+    public BulkFixTimeTask(Activity activity, Uri uri, String selection,
+                           long offset, long dateMultiplier, boolean dryRun) {
+        super(activity, "Fixing Times", "messages", uri, selection,
+                dryRun);
+        mOffset = offset;
+        mDateMultiplier = dateMultiplier;
+    }
+
+    /**
+     * @param date A date in the units of the provider.
+     * @return The date with the offset added, in the units of the provider.
+     */
+    private long newDate(long date) {
+        return (date * mDateMultiplier + mOffset) / mDateMultiplier;
+    }
+
+    @Override
+    protected ContentProviderOperation makeOperation(long id, long date) {
+        return ContentProviderOperation.newUpdate(mUri)
+                .withSelection(COL_ID + "=" + id, null)
+                .withValue(COL_DATE, newDate(date))
+                .build();
+    }
+
+    @Override
+    protected String preview(long[] ids, long[] dates) {
+        int last = ids.length - 1;
+        return "Dry run:\n" + ids.length + " messages would be changed"
+                + "\nIds " + ids[0] + " to " + ids[last]
+                + "\n\nFirst message " + ids[0]
+                + "\nOld Time=" + MessageUtils.formatDate(
+                dates[0] * mDateMultiplier)
+                + "\nNew Time=" + MessageUtils.formatDate(
+                newDate(dates[0]) * mDateMultiplier);
+    }
+
+    @Override
+    protected String describe(int count, int total) {
+        return "Changed the time for " + count + " of " + total
+                + " messages";
+    }
+
+}
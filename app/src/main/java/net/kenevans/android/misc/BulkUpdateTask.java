@@ -0,0 +1,238 @@
+//Copyright (c) 2011 Kenneth Evans
+//
+//Permission is hereby granted, free of charge, to any person obtaining
+//a copy of this software and associated documentation files (the
+//"Software"), to deal in the Software without restriction, including
+//without limitation the rights to use, copy, modify, merge, publish,
+//distribute, sublicense, and/or sell copies of the Software, and to
+//permit persons to whom the Software is furnished to do so, subject to
+//the following conditions:
+//
+//The above copyright notice and this permission notice shall be included
+//in all copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+//EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+//MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+//IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+//CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+//TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+//SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+package net.kenevans.android.misc;
+
+import android.app.Activity;
+import android.content.ContentProviderOperation;
+import android.database.Cursor;
+import android.net.Uri;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Base class for changing many rows of a provider in the background. The
+ * ids and dates of the rows matching a selection are gotten first. In dry
+ * run mode only a preview is shown. Otherwise an operation is made for each
+ * row and they are applied with applyBatch, BATCH_SIZE at a time, rather
+ * than with one provider call per row. A progress dialog shows the number
+ * of rows done out of the total and has a Cancel button, which stops after
+ * the current batch.
+ * <p>
+ * The ids of the rows that were changed are passed to onChanged, so that a
+ * list can be updated without getting it again.
+ */
+public abstract class BulkUpdateTask extends ProgressTask {
+    /**
+     * The number of operations applied in one call to applyBatch.
+     */
+    private static final int BATCH_SIZE = 200;
+
+    protected final Uri mUri;
+    protected final String mNoun;
+    protected final String mSelection;
+    private final boolean mDryRun;
+
+    /**
+     * The ids of the matching rows, in order.
+     */
+    private long[] mIds;
+
+    /**
+     * The number of rows changed so far. They are the first ones in mIds.
+     */
+    private volatile int mDone;
+
+    /**
+     * Constructor.
+     *
+     * @param activity  The activity.
+     * @param title     The title for the progress dialog.
+     * @param noun      What the rows are called in messages, for example
+     *                  "messages".
+     * @param uri       The Uri of the provider.
+     * @param selection The selection for the rows to change.
+     * @param dryRun    Whether to only show what would be changed.
+     */
+    protected BulkUpdateTask(Activity activity, String title, String noun,
+                             Uri uri, String selection, boolean dryRun) {
+        super(activity, title);
+        mNoun = noun;
+        mUri = uri;
+        mSelection = selection;
+        mDryRun = dryRun;
+    }
+
+    /**
+     * Makes the operation for a row. Called on a worker thread.
+     *
+     * @param id   The _id.
+     * @param date The date, in the units of the provider.
+     * @return The operation.
+     */
+    protected abstract ContentProviderOperation makeOperation(long id,
+                                                              long date);
+
+    /**
+     * Describes what would be done in dry run mode. Called on a worker
+     * thread.
+     *
+     * @param ids   The ids of the rows.
+     * @param dates The dates of the rows, in the units of the provider.
+     * @return The message to show.
+     */
+    protected abstract String preview(long[] ids, long[] dates);
+
+    /**
+     * Describes what was done.
+     *
+     * @param count The number of rows changed.
+     * @param total The number of rows that matched.
+     * @return The message to show.
+     */
+    protected abstract String describe(int count, int total);
+
+    /**
+     * Gets the columns to query. The first two must be _id and date.
+     * Override to add columns used by accept.
+     *
+     * @return The projection.
+     */
+    protected String[] getProjection() {
+        return new String[]{COL_ID, COL_DATE};
+    }
+
+    /**
+     * Whether to include the row at the current cursor position, for
+     * conditions that cannot be put in the selection. Called on a worker
+     * thread. Accepts all rows by default.
+     *
+     * @param cursor The cursor with the columns from getProjection.
+     * @return If the row is to be changed.
+     */
+    protected boolean accept(Cursor cursor) {
+        return true;
+    }
+
+    /**
+     * Called on the main thread with the result of a dry run. Shows it by
+     * default.
+     *
+     * @param preview The message from preview.
+     */
+    protected void onPreviewed(String preview) {
+        Utils.infoMsg(mActivity, preview);
+    }
+
+    /**
+     * Called on the main thread after rows have been changed, even if the
+     * task was cancelled or failed part way. Does nothing by default.
+     *
+     * @param ids   The ids of the rows that were changed.
+     * @param count The number of ids to use.
+     */
+    protected void onChanged(long[] ids, int count) {
+    }
+
+    @Override
+    protected String doWork() throws Exception {
+        // Get the rows
+        long[] ids;
+        long[] dates;
+        int total = 0;
+        Cursor cursor = null;
+        try {
+            cursor = mActivity.getContentResolver().query(mUri,
+                    getProjection(), mSelection, null, COL_ID + " ASC");
+            if (cursor == null) {
+                return "Could not get the " + mNoun;
+            }
+            ids = new long[cursor.getCount()];
+            dates = new long[cursor.getCount()];
+            while (cursor.moveToNext() && total < ids.length) {
+                if (!accept(cursor)) continue;
+                ids[total] = cursor.getLong(0);
+                dates[total] = cursor.getLong(1);
+                total++;
+            }
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+        if (total < ids.length) {
+            ids = Arrays.copyOf(ids, total);
+            dates = Arrays.copyOf(dates, total);
+        }
+        mIds = ids;
+        if (total == 0) {
+            return "No " + mNoun + " were found";
+        }
+        if (mDryRun) {
+            return preview(ids, dates);
+        }
+
+        // Apply the operations in batches
+        String authority = mUri.getAuthority();
+        ArrayList<ContentProviderOperation> operations =
+                new ArrayList<>(BATCH_SIZE);
+        publishProgress(0, total);
+        for (int i = 0; i < total; i++) {
+            operations.add(makeOperation(ids[i], dates[i]));
+            if (operations.size() == BATCH_SIZE || i == total - 1) {
+                mActivity.getContentResolver().applyBatch(authority,
+                        operations);
+                mDone += operations.size();
+                operations.clear();
+                publishProgress(mDone, total);
+                if (isCancelled()) break;
+            }
+        }
+        return describe(mDone, total);
+    }
+
+    @Override
+    protected String getErrorMessage() {
+        return "Error changing " + mNoun + " after " + mDone + " were done";
+    }
+
+    @Override
+    protected String getCancelledMessage() {
+        return "Cancelled after " + mDone + " " + mNoun + " were done.";
+    }
+
+    @Override
+    protected void onDone() {
+        if (mDone > 0) {
+            onChanged(mIds, mDone);
+        }
+    }
+
+    @Override
+    protected void showResult(String result) {
+        if (mDryRun && mIds != null && mIds.length > 0) {
+            onPreviewed(result);
+        } else {
+            super.showResult(result);
+        }
+    }
+
+}
@@ -0,0 +1,165 @@
+//Copyright (c) 2011 Kenneth Evans
+//
+//Permission is hereby granted, free of charge, to any person obtaining
+//a copy of this software and associated documentation files (the
+//"Software"), to deal in the Software without restriction, including
+//without limitation the rights to use, copy, modify, merge, publish,
+//distribute, sublicense, and/or sell copies of the Software, and to
+//permit persons to whom the Software is furnished to do so, subject to
+//the following conditions:
+//
+//The above copyright notice and this permission notice shall be included
+//in all copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+//EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+//MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+//IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+//CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+//TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+//SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+package net.kenevans.android.misc;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Thread-safe date formatter for the formats used in MessageUtils. Each
+ * thread has its own SimpleDateFormat, which is used only to format the day
+ * portion of the date. That is cached, so for a list of dates only the
+ * time of day has to be appended for most of them. The output is the same
+ * as that of a SimpleDateFormat with the full pattern and Locale.US.
+ */
+public class CachedDateFormat {
+    /**
+     * Style for "MMM dd, yyyy HH:mm:ss Z".
+     */
+    static final int STYLE_LONG = 0;
+    /**
+     * Style for "MMM dd, yyyy HH:mm:ss".
+     */
+    static final int STYLE_MEDIUM = 1;
+    /**
+     * Style for "M/d/yy h:mm a".
+     */
+    static final int STYLE_SHORT = 2;
+
+    private static final long MS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    /**
+     * The style.
+     */
+    private final int mStyle;
+
+    /**
+     * The pattern for the day portion, including the separator before the
+     * time.
+     */
+    private final String mDayPattern;
+
+    /**
+     * The per-thread state.
+     */
+    private final ThreadLocal<State> mState = new ThreadLocal<State>() {
+        @Override
+        protected State initialValue() {
+            return new State(new SimpleDateFormat(mDayPattern, Locale.US));
+        }
+    };
+
+    /**
+     * Constructor.
+     *
+     * @param style One of STYLE_LONG, STYLE_MEDIUM, or STYLE_SHORT.
+     */
+    CachedDateFormat(int style) {
+        mStyle = style;
+        mDayPattern = style == STYLE_SHORT ? "M/d/yy " : "MMM dd, yyyy ";
+    }
+
+    /**
+     * Formats the date.
+     *
+     * @param date The date in ms.
+     * @return The formatted date.
+     */
+    String format(long date) {
+        State state = mState.get();
+        // Zone and DST offset in effect at this date
+        int offset = state.zone.getOffset(date);
+        long local = date + offset;
+        long day = local / MS_PER_DAY;
+        if (local % MS_PER_DAY < 0) {
+            day--;
+        }
+        if (day != state.day || offset != state.offset
+                || state.prefix == null) {
+            state.prefix = state.formatter.format(date);
+            state.day = day;
+            state.offset = offset;
+        }
+        int msOfDay = (int) (local - day * MS_PER_DAY);
+        int seconds = msOfDay / 1000;
+        int minute = seconds / 60 % 60;
+        int hour = seconds / 3600;
+
+        StringBuilder sb = state.sb;
+        sb.setLength(0);
+        sb.append(state.prefix);
+        if (mStyle == STYLE_SHORT) {
+            int hour12 = hour % 12;
+            sb.append(hour12 == 0 ? 12 : hour12).append(':');
+            append2(sb, minute);
+            sb.append(hour < 12 ? " AM" : " PM");
+        } else {
+            append2(sb, hour);
+            sb.append(':');
+            append2(sb, minute);
+            sb.append(':');
+            append2(sb, seconds % 60);
+            if (mStyle == STYLE_LONG) {
+                // Same as SimpleDateFormat Z, which truncates to minutes
+                int minutes = offset / 60000;
+                sb.append(' ').append(minutes < 0 ? '-' : '+');
+                minutes = Math.abs(minutes);
+                append2(sb, minutes / 60);
+                append2(sb, minutes % 60);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Appends a value with at least two digits.
+     *
+     * @param sb    The StringBuilder.
+     * @param value The value, which is not negative.
+     */
+    private static void append2(StringBuilder sb, int value) {
+        if (value < 10) {
+            sb.append('0');
+        }
+        sb.append(value);
+    }
+
+    /**
+     * The formatter and cached day for a thread.
+     */
+    private static class State {
+        private final SimpleDateFormat formatter;
+        private final TimeZone zone;
+        private final StringBuilder sb = new StringBuilder(32);
+        private long day;
+        private int offset;
+        private String prefix;
+
+        private State(SimpleDateFormat formatter) {
+            this.formatter = formatter;
+            this.zone = formatter.getTimeZone();
+        }
+    }
+
+}
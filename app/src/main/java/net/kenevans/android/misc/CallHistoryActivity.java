@@ -31,6 +31,9 @@ import android.os.Bundle;
 import android.os.Environment;
 import android.os.ParcelFileDescriptor;
 import android.provider.CallLog;
+import android.text.InputType;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.Menu;
@@ -40,6 +43,7 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.AdapterView;
 import android.widget.BaseAdapter;
+import android.widget.EditText;
 import android.widget.ListView;
 import android.widget.TextView;
 import android.widget.Toast;
@@ -48,7 +52,7 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Locale;
 
@@ -97,6 +101,12 @@ public class CallHistoryActivity extends AppCompatActivity implements IConstants
 
     private ListView mListView;
 
+    /**
+     * The search box. Typing in it shows the calls whose number or name
+     * starts with the text.
+     */
+    private EditText mSearchText;
+
     /**
      * Array of hard-coded mFilters
      */
@@ -120,12 +130,23 @@ public class CallHistoryActivity extends AppCompatActivity implements IConstants
      */
     private static final String SAVE_FILE_NAME = "CallHistory.%s.csv";
 
+    /**
+     * Whether the save being requested is to write only calls newer than
+     * the last save.
+     */
+    private boolean mSaveIncremental;
+
     private CustomListAdapter mListAdapter;
 
+    /**
+     * Gets the row values for mListAdapter in the background.
+     */
+    private RowBinder mRowBinder;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        setContentView(R.layout.list_view);
+        setContentView(R.layout.callhistory);
         mListView = findViewById(R.id.mainListView);
         mListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
             @Override
@@ -134,6 +155,25 @@ public class CallHistoryActivity extends AppCompatActivity implements IConstants
                 onListItemClick(mListView, view, position, id);
             }
         });
+        mSearchText = findViewById(R.id.search_text);
+        mSearchText.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start,
+                                          int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before,
+                                      int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                if (mListAdapter != null) {
+                    mListAdapter.setSearch(s.toString());
+                }
+            }
+        });
 
         // Create mFilters here so getText is available
         mFilters = new Filter[]{
@@ -177,6 +217,20 @@ public class CallHistoryActivity extends AppCompatActivity implements IConstants
         // Set fast scroll
         mListView.setFastScrollEnabled(true);
 
+        // Let the user select calls to delete with a long press
+        ListSelectionMode.install(mListView, new ListSelectionMode.Callback() {
+            @Override
+            public long getRowId(int position) {
+                return mListAdapter == null ? -1
+                        : mListAdapter.getListRowId(position);
+            }
+
+            @Override
+            public void deleteRows(long[] ids, int count) {
+                deleteCalls(MessageUtils.inSelection(COL_ID, ids, count));
+            }
+        });
+
         // Call refresh to set the contents
         // Does not have to be done in resume
         refresh();
@@ -196,7 +250,10 @@ public class CallHistoryActivity extends AppCompatActivity implements IConstants
             refresh();
             return true;
         } else if (id == R.id.save) {
-            save();
+            save(false);
+            return true;
+        } else if (id == R.id.save_new) {
+            save(true);
             return true;
         } else if (id == R.id.help) {
             showHelp();
@@ -207,6 +264,9 @@ public class CallHistoryActivity extends AppCompatActivity implements IConstants
         } else if (id == R.id.sort) {
             setSortOrder();
             return true;
+        } else if (id == R.id.delete_older) {
+            deleteOlder();
+            return true;
         }
         return false;
     }
@@ -215,7 +275,7 @@ public class CallHistoryActivity extends AppCompatActivity implements IConstants
             id) {
         // Save the position when starting the activity
         mCurrentPosition = position;
-        mCurrentId = id;
+        mCurrentId = mListAdapter.getListRowId(position);
         mIncrement = 0;
         displayCall();
     }
@@ -239,10 +299,20 @@ public class CallHistoryActivity extends AppCompatActivity implements IConstants
                 + ".onPause: mCurrentPosition=" + mCurrentPosition);
         Log.d(TAG, this.getClass().getSimpleName() + ".onPause: mCurrentId="
                 + mCurrentId);
+        Log.d(TAG, this.getClass().getSimpleName() + ".onPause: names "
+                + ContactNameCache.getInstance(this).getStats());
         super.onPause();
         // We save the preferences in refresh
     }
 
+    @Override
+    protected void onDestroy() {
+        if (mRowBinder != null) {
+            mRowBinder.cancel();
+        }
+        super.onDestroy();
+    }
+
     @Override
     protected void onActivityResult(int requestCode, int resultCode,
                                     Intent intent) {
@@ -253,6 +323,12 @@ public class CallHistoryActivity extends AppCompatActivity implements IConstants
                 + " resultCode=" + resultCode + " mCurrentPosition="
                 + mCurrentPosition);
         if (requestCode == DISPLAY_MESSAGE) {
+            // The display activity may have moved through the list itself
+            if (intent != null && intent.hasExtra(NAV_POSITION_KEY)) {
+                mCurrentPosition = intent.getIntExtra(NAV_POSITION_KEY,
+                        mCurrentPosition);
+                mCurrentId = intent.getLongExtra(COL_ID, mCurrentId);
+            }
             mIncrement = 0;
             // Note that earlier items are at higher positions in the list
             if (resultCode == RESULT_PREV) {
@@ -260,14 +336,22 @@ public class CallHistoryActivity extends AppCompatActivity implements IConstants
             } else if (resultCode == RESULT_NEXT) {
                 mIncrement = +1;
             }
+        } else if (requestCode == CREATE_DOCUMENT
+                && resultCode == RESULT_OK && intent != null) {
+            doSave(intent.getData());
         }
     }
 
     /**
      * Asks for the name of the save file
+     *
+     * @param incremental Whether to write only the calls newer than the last
+     *                    save. A full save also sets the starting point for
+     *                    the next incremental one.
      */
-    private void save() {
+    private void save(boolean incremental) {
         try {
+            mSaveIncremental = incremental;
             File sdCardRoot = Environment.getExternalStorageDirectory();
             String format = "yyyy-MM-dd-HHmmss";
             SimpleDateFormat formatter = new SimpleDateFormat(format,
@@ -298,92 +382,18 @@ public class CallHistoryActivity extends AppCompatActivity implements IConstants
     }
 
     /**
-     * Does the actual writing for the save.
+     * Starts writing the save file in the background.
      *
      * @param uri The Uri to use for writing.
      */
     private void doSave(Uri uri) {
-        FileWriter writer = null;
-        BufferedWriter out = null;
-        Cursor cursor = null;
-        try {
-            ParcelFileDescriptor pfd = getContentResolver().
-                    openFileDescriptor(uri, "w");
-            writer =
-                    new FileWriter(pfd.getFileDescriptor());
-
-            out = new BufferedWriter(writer);
-            out.write("id," + "date," + "number," + "type,"
-                    + "duration," + "name\n");
-
-            // Get the database again to avoid traversing the ListView,
-            // which only has visible items
-
-            // Get a cursor
-            String[] desiredColumns = {COL_ID, COL_NUMBER, COL_DATE,
-                    COL_DURATION, COL_TYPE, COL_NAME};
-            cursor = getContentResolver().query(getUri(),
-                    desiredColumns, mFilters[filter].selection, null,
-                    sortOrders[mSortOrder].sortOrder);
-            int indexId = cursor.getColumnIndex(COL_ID);
-            int indexDate = cursor.getColumnIndex(COL_DATE);
-            int indexNumber = cursor.getColumnIndex(COL_NUMBER);
-            int indexDuration = cursor.getColumnIndex(COL_DURATION);
-            int indexType = cursor.getColumnIndex(COL_TYPE);
-            int indexName = cursor.getColumnIndex(COL_NAME);
-
-            // Loop over items
-            cursor.moveToFirst();
-            while (!cursor.isAfterLast()) {
-                String id = cursor.getString(indexId);
-                String number = "<Number NA>";
-                if (indexNumber > -1) {
-                    number = cursor.getString(indexNumber);
-                }
-                long dateNum = -1L;
-                if (indexDate > -1) {
-                    dateNum = cursor.getLong(indexDate);
-                }
-                String duration = "<Duration NA>";
-                if (indexDuration > -1) {
-                    duration = cursor.getString(indexDuration);
-                }
-                int type = -1;
-                if (indexType > -1) {
-                    type = cursor.getInt(indexType);
-                }
-                String name = "Unknown";
-                if (indexName > -1) {
-                    name = cursor.getString(indexName);
-                    if (name == null) {
-                        name = "Unknown";
-                    }
-                }
-                out.write(id
-                        + ","
-                        + "\""
-                        + formatDate(MessageUtils.mediumFormatter,
-                        dateNum) + "\","
-                        + MessageUtils.formatAddress(number) + ","
-                        + formatType(type) + ","
-                        + formatDuration(duration) + "," + name +
-                        "\n");
-                cursor.moveToNext();
-            }
-        } catch (Exception ex) {
-            Utils.excMsg(this, "Error finding calls", ex);
-        } finally {
-            if (cursor != null) {
-                cursor.close();
-            }
-            try {
-                if (writer != null) writer.close();
-                if (out != null) out.close();
-            } catch (Exception ex) {
-                // No nothing
-            }
-        }
-        Utils.infoMsg(this, "Wrote " + uri.getPath());
+        // Keep the last saved call separately for each filter
+        ExportWatermarks watermarks = new ExportWatermarks(this,
+                ExportWatermarks.SOURCE_CALLS + "." + filter,
+                !mSaveIncremental);
+        new CsvExportTask(uri, mFilters[filter].selection,
+                sortOrders[mSortOrder].sortOrder, watermarks,
+                mSaveIncremental).execute();
     }
 
     /**
@@ -449,14 +459,26 @@ public class CallHistoryActivity extends AppCompatActivity implements IConstants
      * @return The formatted duration.
      */
     public static String formatDuration(String duration) {
+        return appendDuration(new StringBuilder(), duration).toString();
+    }
+
+    /**
+     * Appends the duration formatted as in formatDuration.
+     *
+     * @param sb       The StringBuilder.
+     * @param duration The given duration.
+     * @return The StringBuilder.
+     */
+    private static StringBuilder appendDuration(StringBuilder sb,
+                                                String duration) {
         if (duration == null || duration.length() == 0) {
-            return "<Unknown>";
+            return sb.append("<Unknown>");
         }
         int seconds;
         try {
             seconds = Integer.parseInt(duration);
         } catch (NumberFormatException ex) {
-            return "<Invalid>";
+            return sb.append("<Invalid>");
         }
 
         int hours = seconds / 3600;
@@ -464,8 +486,13 @@ public class CallHistoryActivity extends AppCompatActivity implements IConstants
         int minutes = seconds / 60;
         seconds -= minutes * 60;
 
-        return String.format(Locale.US, "%d:%02d:%02d", hours, minutes,
-                seconds);
+        // Same as String.format("%d:%02d:%02d")
+        sb.append(hours).append(':');
+        if (minutes >= 0 && minutes < 10) sb.append('0');
+        sb.append(minutes).append(':');
+        if (seconds >= 0 && seconds < 10) sb.append('0');
+        sb.append(seconds);
+        return sb;
     }
 
     /**
@@ -535,14 +562,14 @@ public class CallHistoryActivity extends AppCompatActivity implements IConstants
             if (mCurrentPosition > count - 1 || mCurrentPosition < 0) {
                 changed = true;
             } else {
-                Data data = mListAdapter.getData(mCurrentPosition);
-                if (data == null) {
+                long dataId = mListAdapter.getListRowId(mCurrentPosition);
+                if (dataId < 0) {
                     Utils.errMsg(this, "Error displaying message: Missing" +
                             " " +
                             "data for position " + mCurrentPosition);
                     return;
                 }
-                id = data.getId();
+                id = dataId;
                 if (id != mCurrentId) {
                     changed = true;
                 }
@@ -553,19 +580,9 @@ public class CallHistoryActivity extends AppCompatActivity implements IConstants
                     "id=" + id
                     + " changed=" + changed);
             if (changed) {
-                for (int i = 0; i < count; i++) {
-                    Data data = mListAdapter.getData(mCurrentPosition);
-                    if (data == null) {
-                        Utils.errMsg(this, "Error displaying message: " +
-                                "Missing" +
-                                " " + "data for position " + mCurrentPosition);
-                        return;
-                    }
-                    id = data.getId();
-                    if (id == mCurrentId) {
-                        mCurrentPosition = i;
-                        break;
-                    }
+                int position = mListAdapter.getPosition(mCurrentId);
+                if (position >= 0) {
+                    mCurrentPosition = position;
                 }
             }
             // mCurrentPosition may still be invalid, check it is in range
@@ -597,19 +614,21 @@ public class CallHistoryActivity extends AppCompatActivity implements IConstants
             }
 
             // Request the new call
-            Data data = mListAdapter.getData(mCurrentPosition);
-            if (data == null) {
+            long dataId = mListAdapter.getListRowId(mCurrentPosition);
+            if (dataId < 0) {
                 Utils.errMsg(this, "Error displaying message: Missing " +
                         "data for position " + mCurrentPosition);
                 return;
             }
-            mCurrentId = data.getId();
+            mCurrentId = dataId;
             Intent i = new Intent(this, DisplayCallActivity.class);
             i.putExtra(COL_ID, mCurrentId);
             i.putExtra(URI_KEY, getUri().toString());
             Log.d(TAG, this.getClass().getSimpleName()
                     + ".displayCall: position=" + mCurrentPosition
                     + " mCurrentId=" + mCurrentId);
+            i.putExtra(NAV_POSITION_KEY, mCurrentPosition);
+            NavigationList.setCurrent(mListAdapter.getNavigationList());
             startActivityForResult(i, DISPLAY_CALL);
         } catch (Exception ex) {
             Utils.excMsg(this, "Error displaying call", ex);
@@ -624,10 +643,116 @@ public class CallHistoryActivity extends AppCompatActivity implements IConstants
      */
     private void refresh() {
         // Initialize the list view mAapter
+        if (mRowBinder != null) {
+            mRowBinder.cancel();
+        }
         mListAdapter = new CustomListAdapter();
+        mListAdapter.setSearch(mSearchText.getText().toString());
+        mRowBinder = new RowBinder(mListView, mListAdapter,
+                RowBinder.DEFAULT_PREFETCH_WINDOW);
         mListView.setAdapter(mListAdapter);
     }
 
+    /**
+     * Gets the numerals in a string.
+     *
+     * @param value The string.
+     * @return The numerals, or null if there are none.
+     */
+    private static String getDigits(String value) {
+        if (value == null) return null;
+        StringBuilder sb = new StringBuilder(value.length());
+        char c;
+        for (int i = 0; i < value.length(); i++) {
+            c = value.charAt(i);
+            if (c >= '0' && c <= '9') {
+                sb.append(c);
+            }
+        }
+        return sb.length() == 0 ? null : sb.toString();
+    }
+
+    /**
+     * Adds the search keys for a call, which are the number with and
+     * without formatting and a leading 1, and the lower-case name and each
+     * word in it.
+     *
+     * @param index  The PrefixIndex.
+     * @param row    The row position.
+     * @param number The number.
+     * @param name   The name.
+     */
+    private static void addSearchKeys(PrefixIndex index, int row,
+                                      String number, String name) {
+        String compressed = MessageUtils.compressPhoneNumber(number);
+        index.add(compressed, row);
+        String digits = getDigits(number);
+        if (digits != null && !digits.equals(compressed)) {
+            index.add(digits, row);
+        }
+        if (name == null) return;
+        name = name.trim().toLowerCase(Locale.getDefault());
+        index.add(name, row);
+        int start = name.indexOf(' ');
+        while (start >= 0) {
+            index.add(name.substring(start + 1), row);
+            start = name.indexOf(' ', start + 1);
+        }
+    }
+
+    /**
+     * Asks for a number of days and deletes all the calls older than that.
+     */
+    private void deleteOlder() {
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle(getText(R.string.delete_older_title));
+        final EditText input = new EditText(this);
+        input.setInputType(InputType.TYPE_CLASS_NUMBER);
+        builder.setView(input);
+        builder.setPositiveButton(R.string.ok,
+                new DialogInterface.OnClickListener() {
+                    public void onClick(DialogInterface dialog, int which) {
+                        int days;
+                        try {
+                            days = Integer.parseInt(input.getText()
+                                    .toString().trim());
+                        } catch (NumberFormatException ex) {
+                            Utils.errMsg(CallHistoryActivity.this,
+                                    "Invalid number of days");
+                            return;
+                        }
+                        long cutoff = System.currentTimeMillis()
+                                - days * 86400000L;
+                        deleteCalls(COL_DATE + "<" + cutoff);
+                    }
+                });
+        builder.setNegativeButton(R.string.cancel,
+                new DialogInterface.OnClickListener() {
+                    public void onClick(DialogInterface dialog, int which) {
+                        // Do nothing
+                    }
+                });
+        builder.create().show();
+    }
+
+    /**
+     * Deletes the calls matching the selection after asking the user, then
+     * removes them from the list.
+     *
+     * @param selection The selection.
+     */
+    private void deleteCalls(String selection) {
+        BulkDeleteTask.start(this, "calls", getUri(), selection,
+                new BulkDeleteTask.Listener() {
+                    @Override
+                    public void onDeleted(long[] ids, int count) {
+                        if (mListAdapter != null) {
+                            mListAdapter.removeRows(ids, count);
+                        }
+                    }
+                });
+    }
+
     /**
      * @return The content provider URI used.
      */
@@ -662,66 +787,154 @@ public class CallHistoryActivity extends AppCompatActivity implements IConstants
     }
 
     /**
-     * Class to manage the data needed for an item in the ListView.
+     * Writes the calls for the current filter and sort order to a CSV file
+     * in the background.
      */
-    private static class Data {
-        private final long id;
-        private String number;
-        private long dateNum = -1;
-        private String duration;
-        private int type;
-        private String name;
-        private boolean invalid = true;
-
-        private Data(long id) {
-            this.id = id;
+    private class CsvExportTask extends ExportTask {
+        private final Uri mSaveUri;
+        private final String mSelection;
+        private final String mSort;
+        private final ExportWatermarks mWatermarks;
+
+        /**
+         * Constructor. The filter and sort order are those when the save
+         * was requested.
+         *
+         * @param saveUri     The Uri to use for writing.
+         * @param selection   The selection.
+         * @param sort        The sort order.
+         * @param watermarks  The last calls saved, updated when done.
+         * @param incremental Whether to write only newer calls.
+         */
+        private CsvExportTask(Uri saveUri, String selection, String sort,
+                              ExportWatermarks watermarks,
+                              boolean incremental) {
+            super(CallHistoryActivity.this, "Saving Calls");
+            mSaveUri = saveUri;
+            mSelection = incremental ? ExportWatermarks.and(selection,
+                    watermarks.getSelection()) : selection;
+            mSort = sort;
+            mWatermarks = watermarks;
         }
 
-        private void setValues(String number, long dateNum, String duration,
-                               int type, String name) {
-            this.number = number;
-            this.dateNum = dateNum;
-            this.duration = duration;
-            this.type = type;
-            this.name = name;
-            invalid = false;
-        }
-
-        private long getId() {
-            return id;
-        }
-
-        private String getNumber() {
-            return number;
-        }
-
-        private long getDateNum() {
-            return dateNum;
-        }
-
-        private String getDuration() {
-            return duration;
-        }
-
-        private int getType() {
-            return type;
-        }
-
-        private String getName() {
-            return name;
-        }
-
-        private boolean isInvalid() {
-            return invalid;
+        @Override
+        protected String export() throws Exception {
+            ParcelFileDescriptor pfd = null;
+            BufferedWriter out = null;
+            Cursor cursor = null;
+            int nRows = 0;
+            try {
+                pfd = getContentResolver().openFileDescriptor(mSaveUri, "w");
+                out = new BufferedWriter(
+                        new FileWriter(pfd.getFileDescriptor()), 65536);
+                out.write("id," + "date," + "number," + "type,"
+                        + "duration," + "name\n");
+
+                // Get the database again to avoid traversing the ListView,
+                // which only has visible items
+                String[] desiredColumns = {COL_ID, COL_NUMBER, COL_DATE,
+                        COL_DURATION, COL_TYPE, COL_NAME};
+                cursor = getContentResolver().query(getUri(),
+                        desiredColumns, mSelection, null, mSort);
+                if (cursor == null) {
+                    return "No calls found";
+                }
+                int indexId = cursor.getColumnIndex(COL_ID);
+                int indexDate = cursor.getColumnIndex(COL_DATE);
+                int indexNumber = cursor.getColumnIndex(COL_NUMBER);
+                int indexDuration = cursor.getColumnIndex(COL_DURATION);
+                int indexType = cursor.getColumnIndex(COL_TYPE);
+                int indexName = cursor.getColumnIndex(COL_NAME);
+                int total = cursor.getCount();
+
+                // Each line is built in the same StringBuilder and written
+                // from the same char array
+                StringBuilder sb = new StringBuilder(128);
+                char[] chars = new char[128];
+                String number;
+                long dateNum;
+                String duration;
+                int type;
+                String name;
+                long id;
+                while (cursor.moveToNext()) {
+                    if (isCancelled()) break;
+                    id = cursor.getLong(indexId);
+                    number = "<Number NA>";
+                    if (indexNumber > -1) {
+                        number = cursor.getString(indexNumber);
+                    }
+                    dateNum = -1L;
+                    if (indexDate > -1) {
+                        dateNum = cursor.getLong(indexDate);
+                    }
+                    duration = "<Duration NA>";
+                    if (indexDuration > -1) {
+                        duration = cursor.getString(indexDuration);
+                    }
+                    type = -1;
+                    if (indexType > -1) {
+                        type = cursor.getInt(indexType);
+                    }
+                    name = "Unknown";
+                    if (indexName > -1) {
+                        name = cursor.getString(indexName);
+                        if (name == null) {
+                            name = "Unknown";
+                        }
+                    }
+                    sb.setLength(0);
+                    sb.append(id).append(",\"")
+                            .append(formatDate(MessageUtils.mediumFormatter,
+                                    dateNum)).append("\",")
+                            .append(MessageUtils.formatAddress(number))
+                            .append(',').append(formatType(type))
+                            .append(',');
+                    appendDuration(sb, duration);
+                    sb.append(',').append(name).append('\n');
+                    if (sb.length() > chars.length) {
+                        chars = new char[sb.length()];
+                    }
+                    sb.getChars(0, sb.length(), chars, 0);
+                    out.write(chars, 0, sb.length());
+                    mWatermarks.update(id, dateNum);
+                    publishRows(++nRows, total);
+                }
+                if (!isCancelled()) {
+                    mWatermarks.commit();
+                }
+            } finally {
+                if (cursor != null) {
+                    cursor.close();
+                }
+                try {
+                    if (out != null) out.close();
+                    if (pfd != null) pfd.close();
+                } catch (Exception ex) {
+                    // Do nothing
+                }
+            }
+            return "Wrote " + nRows + " calls to " + mSaveUri.getPath();
         }
     }
 
+    /**
+     * The values kept in the RowStore for a row, besides the id, date, and
+     * type.
+     */
+    private static final int FIELD_NUMBER = 0;
+    private static final int FIELD_DURATION = 1;
+    private static final int FIELD_NAME = 2;
+    private static final int N_FIELDS = 3;
+
     /**
      * ListView adapter class for this activity.
      */
-    private class CustomListAdapter extends BaseAdapter {
+    private class CustomListAdapter extends BaseAdapter implements
+            RowBinder.Loader, PagedRowLoader.Callback {
         private String[] mDesiredColumns;
-        private Data[] mDataArray;
+        private RowStore mRows;
+        private PagedRowLoader mPager;
         private final LayoutInflater mInflator;
         private int mIndexId;
         private int mIndexDate;
@@ -730,6 +943,18 @@ public class CallHistoryActivity extends AppCompatActivity implements IConstants
         private int mIndexDuration;
         private int mIndexName;
 
+        /**
+         * Prefix index over the numbers and names of all the rows.
+         */
+        private PrefixIndex mSearchIndex;
+
+        /**
+         * The rows in mRows that are shown when searching, or null to show
+         * all of them. List positions are mapped through this. It is read
+         * on the RowBinder threads.
+         */
+        private volatile int[] mMatches;
+
         private CustomListAdapter() {
             super();
             // DEBUG
@@ -739,31 +964,12 @@ public class CallHistoryActivity extends AppCompatActivity implements IConstants
             Cursor cursor = null;
             int nItems = 0;
             try {
-                // First get the names of all the columns in the database
-                String[] availableColumns;
-                cursor = getContentResolver().query(getUri(), null, null,
-                        null, null);
-                if (cursor == null) {
-                    availableColumns = new String[0];
-                } else {
-                    availableColumns = cursor.getColumnNames();
-                    cursor.close();
-                }
-
-                // Make an array of the desired ones that are available
+                // Get the desired columns that are available, which is cached
+                // for the process
                 String[] desiredColumns = {COL_ID, COL_DATE,
                         COL_TYPE, COL_NUMBER, COL_DURATION, COL_NAME};
-                ArrayList<String> list = new ArrayList<>();
-                for (String col : desiredColumns) {
-                    for (String col1 : availableColumns) {
-                        if (col.equals(col1)) {
-                            list.add(col);
-                            break;
-                        }
-                    }
-                }
-                mDesiredColumns = new String[list.size()];
-                list.toArray(mDesiredColumns);
+                mDesiredColumns = ProviderSchema.getAvailableColumns(
+                        getContentResolver(), getUri(), desiredColumns);
 
                 // Get the available columns from all rows
                 cursor = getContentResolver().query(getUri(),
@@ -785,7 +991,8 @@ public class CallHistoryActivity extends AppCompatActivity implements IConstants
                 mIndexName = cursor.getColumnIndex(COL_NAME);
 
                 int count = cursor.getCount();
-                mDataArray = new Data[count];
+                mRows = new RowStore(count, N_FIELDS);
+                mSearchIndex = new PrefixIndex(3 * count);
 
                 if (count <= 0) {
                     Utils.infoMsg(CallHistoryActivity.this, "No items in " +
@@ -795,12 +1002,31 @@ public class CallHistoryActivity extends AppCompatActivity implements IConstants
                     if (cursor.moveToFirst()) {
                         while (!cursor.isAfterLast()) {
                             long id = cursor.getLong(mIndexId);
-                            mDataArray[nItems] = new Data(id);
+                            long dateNum = -1L;
+                            if (mIndexDate > -1) {
+                                dateNum = cursor.getLong(mIndexDate);
+                            }
+                            int type = -1;
+                            if (mIndexType > -1) {
+                                type = cursor.getInt(mIndexType);
+                            }
+                            int row = mRows.add(id, dateNum, type);
+                            addSearchKeys(mSearchIndex, row,
+                                    mIndexNumber > -1 ?
+                                            cursor.getString(mIndexNumber)
+                                            : null,
+                                    mIndexName > -1 ?
+                                            cursor.getString(mIndexName)
+                                            : null);
                             nItems++;
                             cursor.moveToNext();
                         }
                     }
                 }
+                mSearchIndex.sort();
+                mPager = new PagedRowLoader(getContentResolver(), getUri(),
+                        mDesiredColumns, count, PagedRowLoader.DEFAULT_PAGE_SIZE,
+                        PagedRowLoader.DEFAULT_MAX_PAGES, this);
             } catch (Exception ex) {
                 Utils.excMsg(CallHistoryActivity.this,
                         "ListAdapter: Error getting data", ex);
@@ -818,24 +1044,187 @@ public class CallHistoryActivity extends AppCompatActivity implements IConstants
             Log.d(TAG, "Data list created with " + nItems + " items");
         }
 
-        private Data getData(int i) {
-            if (mDataArray == null || i < 0 || i >= mDataArray.length) {
-                return null;
+        /**
+         * Shows only the rows whose number or name starts with the text.
+         * Text with letters is matched against the names and otherwise its
+         * numerals are matched against the numbers.
+         *
+         * @param text The text, empty to show all rows.
+         */
+        private void setSearch(String text) {
+            int[] matches = null;
+            String prefix = text.trim().toLowerCase(Locale.getDefault());
+            if (prefix.length() > 0 && mSearchIndex != null) {
+                boolean hasLetter = false;
+                for (int i = 0; i < prefix.length(); i++) {
+                    if (Character.isLetter(prefix.charAt(i))) {
+                        hasLetter = true;
+                        break;
+                    }
+                }
+                if (!hasLetter) {
+                    prefix = getDigits(prefix);
+                }
+                matches = prefix == null ? new int[0]
+                        : mSearchIndex.find(prefix);
+            }
+            mMatches = matches;
+            notifyDataSetChanged();
+        }
+
+        /**
+         * Removes rows that have been deleted from the list, keeping the
+         * rest without querying for them again. The search is done again
+         * on the remaining rows.
+         *
+         * @param ids   The ids of the rows.
+         * @param count The number of ids to use.
+         */
+        private void removeRows(long[] ids, int count) {
+            if (mRows == null || mPager == null) return;
+            int[] map;
+            synchronized (mPager) {
+                map = mRows.remove(ids, null, count);
+                mPager.reset(mRows.size());
+            }
+            if (map != null && mSearchIndex != null) {
+                mSearchIndex.remap(map);
             }
-            return mDataArray[i];
+            setSearch(mSearchText.getText().toString());
+        }
+
+        /**
+         * @param i The list position.
+         * @return The position in mRows or -1 if the position is no longer
+         * in the list.
+         */
+        private int getRow(int i) {
+            int[] matches = mMatches;
+            if (matches == null) return i;
+            return i >= 0 && i < matches.length ? matches[i] : -1;
+        }
+
+        @Override
+        public boolean isLoaded(int i) {
+            int row = getRow(i);
+            return mRows == null || row < 0 || mRows.isLoaded(row);
+        }
+
+        @Override
+        public void load(int i) {
+            int row = getRow(i);
+            if (mPager != null && row >= 0) {
+                mPager.load(row);
+            }
+        }
+
+        /**
+         * @return The ids of the rows in the list.
+         */
+        private NavigationList getNavigationList() {
+            if (mRows == null) {
+                return new NavigationList(new long[0], null);
+            }
+            long[] ids = mRows.copyIds();
+            int[] matches = mMatches;
+            if (matches != null) {
+                long[] matchIds = new long[matches.length];
+                for (int i = 0; i < matches.length; i++) {
+                    matchIds[i] = ids[matches[i]];
+                }
+                ids = matchIds;
+            }
+            return new NavigationList(ids, null);
+        }
+
+        /**
+         * Used by the PagedRowLoader, so the position is a row in mRows,
+         * not a list position.
+         *
+         * @param position The position in mRows.
+         * @return The _id of the row or -1 if not found.
+         */
+        @Override
+        public long getRowId(int position) {
+            return mRows == null ? -1 : mRows.getId(position);
+        }
+
+        /**
+         * @param i The list position.
+         * @return The _id of the row shown at the list position or -1 if
+         * not found.
+         */
+        private long getListRowId(int i) {
+            if (mRows == null || i < 0 || i >= getCount()) {
+                return -1;
+            }
+            return mRows.getId(getRow(i));
+        }
+
+        /**
+         * @param id The _id.
+         * @return The list position of the row with the given id or -1 if it
+         * is not in the list.
+         */
+        private int getPosition(long id) {
+            if (mRows == null) return -1;
+            int row = mRows.getPosition(id);
+            int[] matches = mMatches;
+            if (row < 0 || matches == null) return row;
+            // The matches are in row order
+            int i = Arrays.binarySearch(matches, row);
+            return i >= 0 ? i : -1;
+        }
+
+        @Override
+        public void onRowLoaded(int position, Cursor cursor) {
+            if (mRows.getId(position) < 0) return;
+            if (cursor == null) {
+                // Not found, so show it with no values
+                mRows.setLoaded(position);
+                return;
+            }
+            String number = "<Number NA>";
+            if (mIndexNumber > -1) {
+                number = cursor.getString(mIndexNumber);
+            }
+            String duration = "<Duration NA>";
+            if (mIndexDuration > -1) {
+                duration = cursor.getString(mIndexDuration);
+            }
+            String name = null;
+            if (mIndexName > -1) {
+                name = cursor.getString(mIndexName);
+            }
+            if (name == null) {
+                // Not cached in the call log, so look it up
+                name = ContactNameCache.getInstance(
+                        CallHistoryActivity.this).getName(number);
+            }
+            mRows.setLoaded(position, number, duration, name);
+        }
+
+        @Override
+        public void onPageLoaded(int start, int end) {
+        }
+
+        @Override
+        public void onPageEvicted(int start, int end) {
+            mRows.unload(start, end);
         }
 
         @Override
         public int getCount() {
-            return mDataArray == null ? 0 : mDataArray.length;
+            if (mRows == null) return 0;
+            return mMatches == null ? mRows.size() : mMatches.length;
         }
 
         @Override
         public Object getItem(int i) {
-            if (mDataArray == null || i < 0 || i >= mDataArray.length) {
+            if (i < 0 || i >= getCount()) {
                 return null;
             }
-            return mDataArray[i];
+            return getListRowId(i);
         }
 
         @Override
@@ -864,64 +1253,33 @@ public class CallHistoryActivity extends AppCompatActivity implements IConstants
             String subTitleText;
 
             // Check if index is OK.
-            if (i < 0 || i >= mDataArray.length) {
+            if (i < 0 || i >= getCount()) {
                 titleText = "Error";
                 subTitleText = "Bad view index" + i + " (Should be 0 to "
-                        + mDataArray.length + ")";
+                        + getCount() + ")";
                 viewHolder.title.setText(titleText);
                 viewHolder.subTitle.setText(subTitleText);
                 return view;
             }
-            Data data = mDataArray[i];
-            if (data == null) {
-                titleText = "Error";
-                subTitleText = "Cannot find data for i=" + i;
-                viewHolder.title.setText(titleText);
-                viewHolder.subTitle.setText(subTitleText);
+            int row = getRow(i);
+            long id = mRows.getId(row);
+
+            // Only calculate what is needed (i.e visible), in the background
+            if (!mRowBinder.bind(view, i)) {
+                viewHolder.title.setText(String.format(Locale.US, "%d",
+                        id) + ": Loading...");
+                viewHolder.subTitle.setText("");
                 return view;
             }
 
-            if (data.isInvalid()) {
-                // Get the values for this item
-                Cursor cursor = getContentResolver().query(getUri(),
-                        mDesiredColumns,
-                        COL_ID + "=" + mDataArray[i].getId(), null, null);
-                if (cursor != null && cursor.moveToFirst()) {
-                    String number = "<Number NA>";
-                    if (mIndexNumber > -1) {
-                        number = cursor.getString(mIndexNumber);
-                    }
-                    long dateNum = -1L;
-                    if (mIndexDate > -1) {
-                        dateNum = cursor.getLong(mIndexDate);
-                    }
-                    String duration = "<Duration NA>";
-                    if (mIndexDuration > -1) {
-                        duration = cursor.getString(mIndexDuration);
-                    }
-                    int type = -1;
-                    if (mIndexType > -1) {
-                        type = cursor.getInt(mIndexType);
-                    }
-                    String name = "Unknown";
-                    if (mIndexName > -1) {
-                        name = cursor.getString(mIndexName);
-                        if (name == null) {
-                            name = "Unknown";
-                        }
-                    }
-                    data.setValues(number, dateNum, duration, type, name);
-                }
-                if (cursor != null) cursor.close();
-            }
-            mDataArray[i] = data;
-
-            titleText = String.format(Locale.US, "%d", data.getId()) + ": " +
-                    MessageUtils.formatAddress(data.getNumber())
-                    + " (" + formatType(data.getType()) + ") " + data.getName();
+            titleText = String.format(Locale.US, "%d", id) + ": " +
+                    MessageUtils.formatAddress(
+                            mRows.getString(row, FIELD_NUMBER))
+                    + " (" + formatType(mRows.getType(row)) + ") "
+                    + mRows.getString(row, FIELD_NAME);
             subTitleText = formatDate(MessageUtils.mediumFormatter,
-                    data.getDateNum()) + " Duration: "
-                    + formatDuration(data.getDuration());
+                    mRows.getDate(row)) + " Duration: "
+                    + formatDuration(mRows.getString(row, FIELD_DURATION));
             viewHolder.title.setText(titleText);
             viewHolder.subTitle.setText(subTitleText);
             return view;
@@ -0,0 +1,191 @@
+//Copyright (c) 2011 Kenneth Evans
+//
+//Permission is hereby granted, free of charge, to any person obtaining
+//a copy of this software and associated documentation files (the
+//"Software"), to deal in the Software without restriction, including
+//without limitation the rights to use, copy, modify, merge, publish,
+//distribute, sublicense, and/or sell copies of the Software, and to
+//permit persons to whom the Software is furnished to do so, subject to
+//the following conditions:
+//
+//The above copyright notice and this permission notice shall be included
+//in all copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+//EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+//MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+//IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+//CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+//TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+//SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+package net.kenevans.android.misc;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.provider.ContactsContract;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Process-wide index from phone numbers to contacts. It is built once in the
+ * background from a single query of the Phone table, after which lookups are
+ * a hash map access instead of a scan of the whole table. Numbers are keyed
+ * by MessageUtils.phoneNumberKey so no strings are made for the lookups.
+ */
+public class ContactIndex implements IConstants {
+    /**
+     * The single instance for the process.
+     */
+    private static ContactIndex sInstance;
+
+    /**
+     * The application context.
+     */
+    private final Context mContext;
+
+    /**
+     * Released when the index has been built.
+     */
+    private final CountDownLatch mReady = new CountDownLatch(1);
+
+    /**
+     * Map from phone number key to the index of the contact name in
+     * mNames.
+     */
+    private volatile LongIntHashMap mMap = new LongIntHashMap(0);
+
+    /**
+     * The contact names.
+     */
+    private volatile List<String> mNames = new ArrayList<>();
+
+    private ContactIndex(Context context) {
+        mContext = context;
+    }
+
+    /**
+     * Gets the index, starting to build it in the background if this is the
+     * first call.
+     *
+     * @param context The calling context.
+     * @return The index.
+     */
+    static synchronized ContactIndex getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ContactIndex(context.getApplicationContext());
+            sInstance.start();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Discards the index so it will be rebuilt on the next use. Called when
+     * the contacts change.
+     */
+    static synchronized void invalidate() {
+        sInstance = null;
+    }
+
+    /**
+     * Starts building the index so it is likely to be ready by the time the
+     * first lookup is done.
+     *
+     * @param context The calling context.
+     */
+    static void prefetch(Context context) {
+        getInstance(context);
+    }
+
+    /**
+     * Builds the index on a background thread.
+     */
+    private void start() {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                build();
+            }
+        }, "ContactIndex");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Reads the Phone table once and fills the map. The first contact found
+     * for a number is used, as was done when the table was searched for each
+     * lookup.
+     */
+    private void build() {
+        LongIntHashMap map = new LongIntHashMap(256);
+        List<String> names = new ArrayList<>();
+        String[] columns = {ContactsContract.CommonDataKinds.Phone.NUMBER,
+                ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME};
+        Cursor cursor = null;
+        try {
+            cursor = mContext.getContentResolver().query(
+                    ContactsContract.CommonDataKinds.Phone.CONTENT_URI,
+                    columns, null, null, null);
+            if (cursor != null) {
+                int indexNumber = cursor.getColumnIndex(ContactsContract
+                        .CommonDataKinds.Phone.NUMBER);
+                int indexName = cursor.getColumnIndex(ContactsContract
+                        .CommonDataKinds.Phone.DISPLAY_NAME);
+                if (indexNumber > -1) {
+                    long key;
+                    String name;
+                    while (cursor.moveToNext()) {
+                        key = MessageUtils.phoneNumberKey(
+                                cursor.getString(indexNumber));
+                        if (key == MessageUtils.NO_PHONE_KEY
+                                || map.containsKey(key)) {
+                            continue;
+                        }
+                        name = indexName > -1 ?
+                                cursor.getString(indexName) : null;
+                        map.put(key, names.size());
+                        names.add(name == null ? "Unknown" : name);
+                    }
+                }
+            }
+        } catch (Exception ex) {
+            Log.e(TAG, ContactIndex.class.getSimpleName()
+                    + ".build Exception: " + ex.getMessage());
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+            mNames = names;
+            mMap = map;
+            mReady.countDown();
+        }
+        Log.d(TAG, ContactIndex.class.getSimpleName() + ".build: "
+                + map.size() + " numbers");
+    }
+
+    /**
+     * Gets the contact name for the given number key, waiting for the index
+     * to be built if necessary.
+     *
+     * @param key The key.
+     * @return The name or null if not found.
+     * @see MessageUtils#phoneNumberKey(String)
+     */
+    String lookup(long key) {
+        if (key == MessageUtils.NO_PHONE_KEY) {
+            return null;
+        }
+        try {
+            mReady.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        int index = mMap.get(key, -1);
+        return index < 0 ? null : mNames.get(index);
+    }
+
+}
@@ -0,0 +1,177 @@
+//Copyright (c) 2011 Kenneth Evans
+//
+//Permission is hereby granted, free of charge, to any person obtaining
+//a copy of this software and associated documentation files (the
+//"Software"), to deal in the Software without restriction, including
+//without limitation the rights to use, copy, modify, merge, publish,
+//distribute, sublicense, and/or sell copies of the Software, and to
+//permit persons to whom the Software is furnished to do so, subject to
+//the following conditions:
+//
+//The above copyright notice and this permission notice shall be included
+//in all copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+//EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+//MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+//IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+//CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+//TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+//SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+package net.kenevans.android.misc;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.ContactsContract;
+import android.util.Log;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Process-wide cache from addresses to contact names, shared by the message
+ * and call lists. Unknown numbers are cached too, so that repeated binds of
+ * the same row do not query the contacts provider again. The cache is cleared
+ * when the contacts change.
+ */
+public class ContactNameCache implements IConstants {
+    /**
+     * The maximum number of addresses to keep.
+     */
+    private static final int MAX_ENTRIES = 512;
+
+    /**
+     * The single instance for the process.
+     */
+    private static ContactNameCache sInstance;
+
+    /**
+     * The application context.
+     */
+    private final Context mContext;
+
+    /**
+     * Map from address to name, in least recently used order.
+     */
+    private final Map<String, String> mMap =
+            new LinkedHashMap<String, String>(16, .75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String,
+                        String> eldest) {
+                    return size() > MAX_ENTRIES;
+                }
+            };
+
+    /**
+     * Incremented by clear, so that a name resolved while the cache was
+     * cleared is not put back.
+     */
+    private int mGeneration;
+
+    private long mHits;
+    private long mMisses;
+
+    private ContactNameCache(Context context) {
+        mContext = context;
+        ContentObserver observer =
+                new ContentObserver(new Handler(Looper.getMainLooper())) {
+                    @Override
+                    public void onChange(boolean selfChange) {
+                        Log.d(TAG, ContactNameCache.class.getSimpleName()
+                                + ": Contacts changed");
+                        // Invalidate the index first, so a lookup that
+                        // starts after clear does not use the old one
+                        ContactIndex.invalidate();
+                        clear();
+                    }
+                };
+        mContext.getContentResolver().registerContentObserver(
+                ContactsContract.Contacts.CONTENT_URI, true, observer);
+    }
+
+    /**
+     * Gets the cache, creating it if this is the first call.
+     *
+     * @param context The calling context.
+     * @return The cache.
+     */
+    static synchronized ContactNameCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ContactNameCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Gets the contact name for the given address, resolving it only if it
+     * is not already cached.
+     *
+     * @param address The address.
+     * @return The name or "Unknown" if not found.
+     * @see MessageUtils#getContactNameFromNumber(Context, String)
+     */
+    String getName(String address) {
+        if (address == null || address.length() == 0) {
+            return "Unknown";
+        }
+        int generation;
+        synchronized (this) {
+            String name = mMap.get(address);
+            if (name != null) {
+                mHits++;
+                return name;
+            }
+            mMisses++;
+            generation = mGeneration;
+        }
+        // Resolve outside the lock, since it may wait for the index
+        String name = MessageUtils.getContactNameFromNumber(mContext, address);
+        synchronized (this) {
+            // Do not cache a name that may be from before the contacts
+            // changed
+            if (generation == mGeneration) {
+                mMap.put(address, name);
+            }
+        }
+        return name;
+    }
+
+    /**
+     * Removes all the cached names.
+     */
+    synchronized void clear() {
+        mGeneration++;
+        mMap.clear();
+    }
+
+    /**
+     * @return The number of lookups found in the cache.
+     */
+    synchronized long getHits() {
+        return mHits;
+    }
+
+    /**
+     * @return The number of lookups that had to be resolved.
+     */
+    synchronized long getMisses() {
+        return mMisses;
+    }
+
+    /**
+     * Gets a summary of the cache usage for logging.
+     *
+     * @return The summary.
+     */
+    synchronized String getStats() {
+        long total = mHits + mMisses;
+        return "size=" + mMap.size() + " hits=" + mHits + " misses="
+                + mMisses + " hitRate="
+                + (total == 0 ? 0 : 100 * mHits / total) + "%";
+    }
+
+}
@@ -44,7 +44,6 @@ import android.widget.ListView;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import java.util.ArrayList;
 import java.util.Locale;
 
 import androidx.appcompat.app.AppCompatActivity;
@@ -76,6 +75,17 @@ public class ContactsActivity extends AppCompatActivity implements IConstants {
      */
     private static final Uri URI = ContactsContract.Contacts.CONTENT_URI;
 
+    /**
+     * The number of rows whose values are gotten together. Smaller than for
+     * the other lists since each row also loads a photo.
+     */
+    private static final int PAGE_SIZE = 64;
+
+    /**
+     * The number of pages of photos to keep.
+     */
+    private static final int MAX_PAGES = 4;
+
     /**
      * Enum to specify the sort order.
      */
@@ -95,6 +105,11 @@ public class ContactsActivity extends AppCompatActivity implements IConstants {
     private Order mSortOrder = Order.NAME;
 
     private CustomListAdapter mListAdapter;
+
+    /**
+     * Gets the row values for mListAdapter in the background.
+     */
+    private RowBinder mRowBinder;
     private ListView mListView;
 
     @Override
@@ -139,12 +154,12 @@ public class ContactsActivity extends AppCompatActivity implements IConstants {
             id) {
         Log.d(TAG, this.getClass().getSimpleName() + ": onListItemClick: " +
                 "position=" + position + " id=" + id);
-        Data data = mListAdapter.getData(position);
-        if (data == null) return;
-        Log.d(TAG, "data: id=" + data.getId() + " " + data.getName());
+        long dataId = mListAdapter.getRowId(position);
+        if (dataId < 0) return;
+        Log.d(TAG, "data: id=" + dataId);
         // Save the position when starting the activity
         mCurrentPosition = position;
-        mCurrentId = data.getId();
+        mCurrentId = dataId;
         mIncrement = 0;
         displayContact();
     }
@@ -159,6 +174,12 @@ public class ContactsActivity extends AppCompatActivity implements IConstants {
                 + " resultCode=" + resultCode + " mCurrentPosition="
                 + mCurrentPosition);
         if (requestCode == DISPLAY_MESSAGE) {
+            // The display activity may have moved through the list itself
+            if (intent != null && intent.hasExtra(NAV_POSITION_KEY)) {
+                mCurrentPosition = intent.getIntExtra(NAV_POSITION_KEY,
+                        mCurrentPosition);
+                mCurrentId = intent.getLongExtra(COL_ID, mCurrentId);
+            }
             mIncrement = 0;
             // Note that earlier items are at higher positions in the list
             if (resultCode == RESULT_PREV) {
@@ -191,6 +212,14 @@ public class ContactsActivity extends AppCompatActivity implements IConstants {
         super.onPause();
     }
 
+    @Override
+    protected void onDestroy() {
+        if (mRowBinder != null) {
+            mRowBinder.cancel();
+        }
+        super.onDestroy();
+    }
+
     /**
      * Bring up a dialog to change the sort order.
      */
@@ -234,13 +263,13 @@ public class ContactsActivity extends AppCompatActivity implements IConstants {
             if (mCurrentPosition > count - 1 || mCurrentPosition < 0) {
                 changed = true;
             } else {
-                Data data = mListAdapter.getData(mCurrentPosition);
-                if (data == null) {
+                long dataId = mListAdapter.getRowId(mCurrentPosition);
+                if (dataId < 0) {
                     Utils.errMsg(this, "Error displaying message: Missing " +
                             "data for position " + mCurrentPosition);
                     return;
                 }
-                id = data.getId();
+                id = dataId;
                 if (id != mCurrentId) {
                     changed = true;
                 }
@@ -250,18 +279,9 @@ public class ContactsActivity extends AppCompatActivity implements IConstants {
                     + ".displayMessage: position=" + mCurrentPosition + " id="
                     + id + " changed=" + changed);
             if (changed) {
-                for (int i = 0; i < count; i++) {
-                    Data data = mListAdapter.getData(mCurrentPosition);
-                    if (data == null) {
-                        Utils.errMsg(this, "Error displaying message: Missing" +
-                                " " + "data for position " + mCurrentPosition);
-                        return;
-                    }
-                    id = data.getId();
-                    if (id == mCurrentId) {
-                        mCurrentPosition = i;
-                        break;
-                    }
+                int position = mListAdapter.getPosition(mCurrentId);
+                if (position >= 0) {
+                    mCurrentPosition = position;
                 }
             }
             // mCurrentPosition may still be invalid, check it is in range
@@ -291,19 +311,21 @@ public class ContactsActivity extends AppCompatActivity implements IConstants {
             }
 
             // Request the new message
-            Data data = mListAdapter.getData(mCurrentPosition);
-            if (data == null) {
+            long dataId = mListAdapter.getRowId(mCurrentPosition);
+            if (dataId < 0) {
                 Utils.errMsg(this, "Error displaying message: Missing " +
                         "data for position " + mCurrentPosition);
                 return;
             }
-            mCurrentId = data.getId();
+            mCurrentId = dataId;
             Intent i = new Intent(this, DisplayContactActivity.class);
             i.putExtra(COL_ID, mCurrentId);
             i.putExtra(URI_KEY, getUri().toString());
             Log.d(TAG, this.getClass().getSimpleName()
                     + ".displayMessage: position=" + mCurrentPosition
                     + " currentId=" + mCurrentId);
+            i.putExtra(NAV_POSITION_KEY, mCurrentPosition);
+            NavigationList.setCurrent(mListAdapter.getNavigationList());
             startActivityForResult(i, DISPLAY_MESSAGE);
         } catch (Exception ex) {
             Utils.excMsg(this, "Error displaying message", ex);
@@ -318,7 +340,12 @@ public class ContactsActivity extends AppCompatActivity implements IConstants {
      */
     private void refresh() {
         // Initialize the list view mListAdapter
+        if (mRowBinder != null) {
+            mRowBinder.cancel();
+        }
         mListAdapter = new CustomListAdapter();
+        mRowBinder = new RowBinder(mListView, mListAdapter,
+                RowBinder.DEFAULT_PREFETCH_WINDOW);
         mListView.setAdapter(mListAdapter);
     }
 
@@ -330,41 +357,21 @@ public class ContactsActivity extends AppCompatActivity implements IConstants {
     }
 
     /**
-     * Class to manage the data needed for an item in the ListView.
+     * The values kept in the RowStore for a row, besides the id, date, and
+     * type.
      */
-    private static class Data {
-        private final long id;
-        private String name;
-        private boolean invalid = true;
-
-        private Data(long id) {
-            this.id = id;
-        }
-
-        private void setValues(String name) {
-            this.name = name;
-            invalid = false;
-        }
-
-        private long getId() {
-            return id;
-        }
-
-        private String getName() {
-            return name;
-        }
-
-        private boolean isInvalid() {
-            return invalid;
-        }
-    }
+    private static final int FIELD_NAME = 0;
+    private static final int FIELD_PHOTO = 1;
+    private static final int N_FIELDS = 2;
 
     /**
      * ListView adapter class for this activity.
      */
-    private class CustomListAdapter extends BaseAdapter {
+    private class CustomListAdapter extends BaseAdapter implements
+            RowBinder.Loader, PagedRowLoader.Callback {
         private String[] mDesiredColumns;
-        private Data[] mDataArray;
+        private RowStore mRows;
+        private PagedRowLoader mPager;
         private final LayoutInflater mInflator;
         private int mIndexId;
         private int mIndexName;
@@ -378,31 +385,12 @@ public class ContactsActivity extends AppCompatActivity implements IConstants {
             Cursor cursor = null;
             int nItems = 0;
             try {
-                // First get the names of all the columns in the database
-                String[] availableColumns;
-                cursor = getContentResolver().query(getUri(), null, null,
-                        null, null);
-                if (cursor == null) {
-                    availableColumns = new String[0];
-                } else {
-                    availableColumns = cursor.getColumnNames();
-                    cursor.close();
-                }
-
-                // Make an array of the desired ones that are available
+                // Get the desired columns that are available, which is cached
+                // for the process
                 String[] desiredColumns = {COL_ID, ContactsContract.Contacts
                         .DISPLAY_NAME};
-                ArrayList<String> list = new ArrayList<>();
-                for (String col : desiredColumns) {
-                    for (String col1 : availableColumns) {
-                        if (col.equals(col1)) {
-                            list.add(col);
-                            break;
-                        }
-                    }
-                }
-                mDesiredColumns = new String[list.size()];
-                list.toArray(mDesiredColumns);
+                mDesiredColumns = ProviderSchema.getAvailableColumns(
+                        getContentResolver(), getUri(), desiredColumns);
 
                 // Get the available columns from all rows
                 cursor = getContentResolver().query(getUri(), mDesiredColumns,
@@ -419,7 +407,7 @@ public class ContactsActivity extends AppCompatActivity implements IConstants {
                         .DISPLAY_NAME);
 
                 int count = cursor.getCount();
-                mDataArray = new Data[count];
+                mRows = new RowStore(count, N_FIELDS);
 
                 if (count <= 0) {
                     Utils.infoMsg(ContactsActivity.this, "No items in " +
@@ -429,12 +417,14 @@ public class ContactsActivity extends AppCompatActivity implements IConstants {
                     if (cursor.moveToFirst()) {
                         while (!cursor.isAfterLast()) {
                             long id = cursor.getLong(mIndexId);
-                            mDataArray[nItems] = new Data(id);
+                            mRows.add(id, -1L, 0);
                             nItems++;
                             cursor.moveToNext();
                         }
                     }
                 }
+                mPager = new PagedRowLoader(getContentResolver(), getUri(),
+                        mDesiredColumns, count, PAGE_SIZE, MAX_PAGES, this);
             } catch (Exception ex) {
                 Utils.excMsg(ContactsActivity.this,
                         "ListAdapter: Error getting data", ex);
@@ -452,24 +442,79 @@ public class ContactsActivity extends AppCompatActivity implements IConstants {
             Log.d(TAG, "Data list created with " + nItems + " items");
         }
 
-        private Data getData(int i) {
-            if (mDataArray == null || i < 0 || i >= mDataArray.length) {
-                return null;
+        @Override
+        public boolean isLoaded(int i) {
+            return mRows == null || mRows.isLoaded(i);
+        }
+
+        @Override
+        public void load(int i) {
+            if (mPager != null) {
+                mPager.load(i);
+            }
+        }
+
+        /**
+         * @return The ids of the rows in the list.
+         */
+        private NavigationList getNavigationList() {
+            return new NavigationList(mRows == null ? new long[0]
+                    : mRows.copyIds(), null);
+        }
+
+        @Override
+        public long getRowId(int position) {
+            return mRows == null ? -1 : mRows.getId(position);
+        }
+
+        /**
+         * @param id The _id.
+         * @return The position of the row with the given id or -1 if it is
+         * not in the list.
+         */
+        private int getPosition(long id) {
+            return mRows == null ? -1 : mRows.getPosition(id);
+        }
+
+        @Override
+        public void onRowLoaded(int position, Cursor cursor) {
+            long id = getRowId(position);
+            if (id < 0) return;
+            String displayName = null;
+            Bitmap bitmap = null;
+            if (cursor != null) {
+                displayName = "Unknown";
+                if (mIndexName > -1) {
+                    displayName = cursor.getString(mIndexName);
+                }
+                // The row id is the contact id, so there is no need to look
+                // it up by name
+                bitmap = MessageUtils.loadContactPhoto(getContentResolver(),
+                        id);
             }
-            return mDataArray[i];
+            mRows.setLoaded(position, displayName, bitmap);
+        }
+
+        @Override
+        public void onPageLoaded(int start, int end) {
+        }
+
+        @Override
+        public void onPageEvicted(int start, int end) {
+            mRows.unload(start, end);
         }
 
         @Override
         public int getCount() {
-            return mDataArray == null ? 0 : mDataArray.length;
+            return mRows == null ? 0 : mRows.size();
         }
 
         @Override
         public Object getItem(int i) {
-            if (mDataArray == null || i < 0 || i >= mDataArray.length) {
+            if (i < 0 || i >= getCount()) {
                 return null;
             }
-            return mDataArray[i];
+            return mRows.getId(i);
         }
 
         @Override
@@ -497,44 +542,29 @@ public class ContactsActivity extends AppCompatActivity implements IConstants {
             String titleText;
 
             // Check if index is OK.
-            if (i < 0 || i >= mDataArray.length) {
-                titleText = "Error";
-                viewHolder.title.setText(titleText);
-                return view;
-            }
-            Data data = mDataArray[i];
-            if (data == null) {
+            if (i < 0 || i >= getCount()) {
                 titleText = "Error";
                 viewHolder.title.setText(titleText);
                 return view;
             }
+            long id = mRows.getId(i);
 
-            if (data.isInvalid()) {
-                // Get the values for this item
-                Cursor cursor = getContentResolver().query(getUri(),
-                        mDesiredColumns,
-                        COL_ID + "=" + mDataArray[i].getId(), null, mSortOrder
-                                .sqlCommand);
-                if (cursor != null && cursor.moveToFirst()) {
-                    String displayName = "Unknown";
-                    if (mIndexName > -1) {
-                        displayName = cursor.getString(mIndexName);
-                    }
-                    data.setValues(displayName);
+            // Only calculate what is needed (i.e visible), in the background
+            if (!mRowBinder.bind(view, i)) {
+                viewHolder.title.setText(String.format(Locale.US, "%d",
+                        id) + ": Loading...");
+                if (viewHolder.imageView != null) {
+                    viewHolder.imageView.setImageDrawable(null);
                 }
-                if (cursor != null) cursor.close();
+                return view;
             }
-            mDataArray[i] = data;
 
-            titleText = String.format(Locale.US, "%d", data.getId()) +
-                    ": " + data.getName();
+            titleText = String.format(Locale.US, "%d", id) +
+                    ": " + mRows.getString(i, FIELD_NAME);
             viewHolder.title.setText(titleText);
 
             if (viewHolder.imageView != null) {
-                long contactId = MessageUtils.getContactIdFromName(
-                        ContactsActivity.this, data.getName());
-                Bitmap bitmap = MessageUtils.loadContactPhoto(
-                        getContentResolver(), contactId);
+                Bitmap bitmap = (Bitmap) mRows.getValue(i, FIELD_PHOTO);
                 if (bitmap == null) {
                     // DEBUG
                     // bitmap =
@@ -0,0 +1,351 @@
+//Copyright (c) 2011 Kenneth Evans
+//
+//Permission is hereby granted, free of charge, to any person obtaining
+//a copy of this software and associated documentation files (the
+//"Software"), to deal in the Software without restriction, including
+//without limitation the rights to use, copy, modify, merge, publish,
+//distribute, sublicense, and/or sell copies of the Software, and to
+//permit persons to whom the Software is furnished to do so, subject to
+//the following conditions:
+//
+//The above copyright notice and this permission notice shall be included
+//in all copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+//EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+//MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+//IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+//CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+//TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+//SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+package net.kenevans.android.misc;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Summary of the SMS and MMS conversations, by thread_id. It is built with
+ * one pass over each table that reads only the numeric columns, unsorted,
+ * aggregating the message count, last date, and last SMS and MMS ids per
+ * thread in primitive arrays indexed through a LongIntHashMap. Then only
+ * the last messages are queried for the address and snippet, a batch at a
+ * time.
+ */
+public class ConversationSummary implements IConstants {
+    /**
+     * The number of ids in each IN selection.
+     */
+    private static final int BATCH_SIZE = 256;
+
+    /**
+     * The maximum length of a snippet.
+     */
+    private static final int SNIPPET_LENGTH = 80;
+
+    /**
+     * The number of bits used for the thread index when sorting. The rest
+     * hold the date in s.
+     */
+    private static final int INDEX_BITS = 22;
+
+    private final Context mContext;
+
+    /**
+     * Map from thread_id to the index in the arrays.
+     */
+    private final LongIntHashMap mMap = new LongIntHashMap(256);
+
+    private long[] mThreadIds = new long[256];
+    private int[] mCounts = new int[256];
+    private long[] mSmsIds = new long[256];
+    private long[] mSmsDates = new long[256];
+    private long[] mMmsIds = new long[256];
+    private long[] mMmsDates = new long[256];
+    private String[] mAddresses;
+    private String[] mSnippets;
+    private int mSize;
+
+    /**
+     * The indices, in order of the last date, newest first.
+     */
+    private int[] mOrder;
+
+    private ConversationSummary(Context context) {
+        mContext = context;
+    }
+
+    /**
+     * Builds the summary. Called on a worker thread.
+     *
+     * @param context The calling context.
+     * @return The summary.
+     */
+    static ConversationSummary build(Context context) {
+        ConversationSummary summary = new ConversationSummary(context);
+        long start = System.currentTimeMillis();
+        int nSms = summary.aggregate(SMS_URI, false);
+        int nMms = summary.aggregate(MMS_URI, true);
+        long aggregated = System.currentTimeMillis();
+        summary.getSmsDetails();
+        summary.getMmsDetails();
+        summary.sort();
+        Log.d(TAG, ConversationSummary.class.getSimpleName() + ".build: "
+                + summary.mSize + " threads from nSMS=" + nSms + " nMMS="
+                + nMms + " aggregate=" + (aggregated - start) + " ms total="
+                + (System.currentTimeMillis() - start) + " ms");
+        return summary;
+    }
+
+    /**
+     * @return The number of conversations.
+     */
+    int size() {
+        return mSize;
+    }
+
+    /**
+     * The getters take the position in the list, newest first.
+     */
+    long getThreadId(int position) {
+        return mThreadIds[mOrder[position]];
+    }
+
+    int getCount(int position) {
+        return mCounts[mOrder[position]];
+    }
+
+    long getDate(int position) {
+        int i = mOrder[position];
+        return Math.max(mSmsDates[i], mMmsDates[i]);
+    }
+
+    String getAddress(int position) {
+        return mAddresses[mOrder[position]];
+    }
+
+    String getSnippet(int position) {
+        return mSnippets[mOrder[position]];
+    }
+
+    /**
+     * Adds the messages in one table.
+     *
+     * @param uri   The Uri of the table.
+     * @param isMms Whether it is the MMS table, whose dates are in s.
+     * @return The number of messages.
+     */
+    private int aggregate(Uri uri, boolean isMms) {
+        Cursor cursor = null;
+        int nRows = 0;
+        try {
+            cursor = mContext.getContentResolver().query(uri,
+                    new String[]{COL_ID, COL_THREAD_ID, COL_DATE}, null,
+                    null, null);
+            if (cursor == null) return 0;
+            int indexId = cursor.getColumnIndex(COL_ID);
+            int indexThreadId = cursor.getColumnIndex(COL_THREAD_ID);
+            int indexDate = cursor.getColumnIndex(COL_DATE);
+            long multiplier = isMms ? MMS_DATE_MULTIPLIER : 1L;
+            long[] ids = isMms ? mMmsIds : mSmsIds;
+            long[] dates = isMms ? mMmsDates : mSmsDates;
+            long threadId;
+            long date;
+            int i;
+            while (cursor.moveToNext()) {
+                nRows++;
+                threadId = cursor.getLong(indexThreadId);
+                date = cursor.getLong(indexDate) * multiplier;
+                i = mMap.get(threadId, -1);
+                if (i < 0) {
+                    i = add(threadId);
+                    // The arrays may have been reallocated
+                    ids = isMms ? mMmsIds : mSmsIds;
+                    dates = isMms ? mMmsDates : mSmsDates;
+                }
+                mCounts[i]++;
+                if (date > dates[i]) {
+                    dates[i] = date;
+                    ids[i] = cursor.getLong(indexId);
+                }
+            }
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+        return nRows;
+    }
+
+    /**
+     * Adds a thread.
+     *
+     * @param threadId The thread_id.
+     * @return The index.
+     */
+    private int add(long threadId) {
+        if (mSize == mThreadIds.length) {
+            int capacity = mSize << 1;
+            mThreadIds = Arrays.copyOf(mThreadIds, capacity);
+            mCounts = Arrays.copyOf(mCounts, capacity);
+            mSmsIds = Arrays.copyOf(mSmsIds, capacity);
+            mSmsDates = Arrays.copyOf(mSmsDates, capacity);
+            mMmsIds = Arrays.copyOf(mMmsIds, capacity);
+            mMmsDates = Arrays.copyOf(mMmsDates, capacity);
+        }
+        int i = mSize++;
+        mThreadIds[i] = threadId;
+        mSmsIds[i] = -1;
+        mSmsDates[i] = -1;
+        mMmsIds[i] = -1;
+        mMmsDates[i] = -1;
+        mMap.put(threadId, i);
+        return i;
+    }
+
+    /**
+     * Gets the address and body of the last SMS message in each thread that
+     * has one. The body is only used as the snippet if it is also the last
+     * message.
+     */
+    private void getSmsDetails() {
+        mAddresses = new String[mSize];
+        mSnippets = new String[mSize];
+        ContentResolver cr = mContext.getContentResolver();
+        LongIntHashMap indices = new LongIntHashMap(mSize);
+        long[] ids = new long[BATCH_SIZE];
+        int count = 0;
+        for (int i = 0; i <= mSize; i++) {
+            if (i < mSize && mSmsIds[i] >= 0) {
+                ids[count++] = mSmsIds[i];
+                indices.put(mSmsIds[i], i);
+            }
+            if (count == 0 || (count < BATCH_SIZE && i < mSize)) continue;
+            Cursor cursor = null;
+            try {
+                cursor = cr.query(SMS_URI, new String[]{COL_ID, COL_ADDRESS,
+                                COL_BODY},
+                        MessageUtils.inSelection(COL_ID, ids, count), null,
+                        null);
+                if (cursor != null) {
+                    int indexId = cursor.getColumnIndex(COL_ID);
+                    int indexAddress = cursor.getColumnIndex(COL_ADDRESS);
+                    int indexBody = cursor.getColumnIndex(COL_BODY);
+                    int index;
+                    while (cursor.moveToNext()) {
+                        index = indices.get(cursor.getLong(indexId), -1);
+                        if (index < 0) continue;
+                        mAddresses[index] = cursor.getString(indexAddress);
+                        if (mSmsDates[index] >= mMmsDates[index]) {
+                            mSnippets[index] = makeSnippet(
+                                    cursor.getString(indexBody));
+                        }
+                    }
+                }
+            } finally {
+                if (cursor != null) cursor.close();
+            }
+            count = 0;
+        }
+    }
+
+    /**
+     * Gets the subject of the last MMS message in each thread where it is
+     * the last message, and the address for threads with no SMS messages.
+     */
+    private void getMmsDetails() {
+        ContentResolver cr = mContext.getContentResolver();
+        LongIntHashMap indices = new LongIntHashMap(mSize);
+        long[] ids = new long[BATCH_SIZE];
+        long[] addressIds = new long[BATCH_SIZE];
+        int count = 0;
+        int nAddressIds = 0;
+        for (int i = 0; i <= mSize; i++) {
+            if (i < mSize && mMmsIds[i] >= 0
+                    && (mMmsDates[i] > mSmsDates[i] || mAddresses[i] == null)) {
+                ids[count++] = mMmsIds[i];
+                indices.put(mMmsIds[i], i);
+                if (mAddresses[i] == null) {
+                    addressIds[nAddressIds++] = mMmsIds[i];
+                }
+            }
+            if (count == 0 || (count < BATCH_SIZE && i < mSize)) continue;
+            Cursor cursor = null;
+            try {
+                cursor = cr.query(MMS_URI, new String[]{COL_ID, COL_SUB},
+                        MessageUtils.inSelection(COL_ID, ids, count), null,
+                        null);
+                if (cursor != null) {
+                    int indexId = cursor.getColumnIndex(COL_ID);
+                    int indexSub = cursor.getColumnIndex(COL_SUB);
+                    int index;
+                    String sub;
+                    while (cursor.moveToNext()) {
+                        index = indices.get(cursor.getLong(indexId), -1);
+                        if (index < 0 || mMmsDates[index] <= mSmsDates[index]) {
+                            continue;
+                        }
+                        sub = indexSub > -1 ? cursor.getString(indexSub)
+                                : null;
+                        mSnippets[index] = sub == null || sub.length() == 0 ?
+                                "<MMS>" : "<MMS> " + makeSnippet(sub);
+                    }
+                }
+            } finally {
+                if (cursor != null) cursor.close();
+            }
+            Map<Long, String[]> addresses = MessageUtils.getMmsAddresses(
+                    mContext, addressIds, nAddressIds);
+            for (Map.Entry<Long, String[]> entry : addresses.entrySet()) {
+                int index = indices.get(entry.getKey(), -1);
+                if (index < 0) continue;
+                String[] fromTo = entry.getValue();
+                mAddresses[index] = fromTo[0].equals(
+                        MessageUtils.MMS_ADDR_INSERT_TOKEN) ?
+                        fromTo[1] : fromTo[0];
+            }
+            count = 0;
+            nAddressIds = 0;
+        }
+    }
+
+    /**
+     * Sorts the threads by the last date, newest first. The date in s and
+     * the index are packed in a long so a primitive array is sorted.
+     */
+    private void sort() {
+        long[] keys = new long[mSize];
+        long date;
+        for (int i = 0; i < mSize; i++) {
+            date = Math.max(0, Math.max(mSmsDates[i], mMmsDates[i])) / 1000;
+            keys[i] = date << INDEX_BITS | i;
+        }
+        Arrays.sort(keys);
+        mOrder = new int[mSize];
+        long mask = (1L << INDEX_BITS) - 1;
+        for (int i = 0; i < mSize; i++) {
+            mOrder[i] = (int) (keys[mSize - 1 - i] & mask);
+        }
+    }
+
+    /**
+     * Makes a snippet from the text, on one line and not too long.
+     *
+     * @param text The text.
+     * @return The snippet.
+     */
+    private static String makeSnippet(String text) {
+        if (text == null) return "";
+        text = text.replace('\n', ' ').trim();
+        if (text.length() > SNIPPET_LENGTH) {
+            text = text.substring(0, SNIPPET_LENGTH) + "...";
+        }
+        return text;
+    }
+
+}
@@ -0,0 +1,247 @@
+//Copyright (c) 2011 Kenneth Evans
+//
+//Permission is hereby granted, free of charge, to any person obtaining
+//a copy of this software and associated documentation files (the
+//"Software"), to deal in the Software without restriction, including
+//without limitation the rights to use, copy, modify, merge, publish,
+//distribute, sublicense, and/or sell copies of the Software, and to
+//permit persons to whom the Software is furnished to do so, subject to
+//the following conditions:
+//
+//The above copyright notice and this permission notice shall be included
+//in all copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+//EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+//MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+//IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+//CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+//TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+//SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+package net.kenevans.android.misc;
+
+import android.content.Intent;
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.Menu;
+import android.view.MenuInflater;
+import android.view.MenuItem;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AdapterView;
+import android.widget.BaseAdapter;
+import android.widget.ListView;
+import android.widget.TextView;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import static net.kenevans.android.misc.MessageUtils.formatDate;
+
+/**
+ * Manages a ListView of the SMS and MMS conversations, newest first, with
+ * the message count, last date, and a snippet of the last message for each.
+ * Selecting one shows its messages in MMSSMSActivity.
+ */
+public class ConversationsActivity extends AppCompatActivity implements
+        IConstants {
+    private ListView mListView;
+    private CustomListAdapter mListAdapter;
+    private RefreshTask mRefreshTask;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.list_view);
+        mListView = findViewById(R.id.mainListView);
+        mListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+            @Override
+            public void onItemClick(AdapterView<?> parent, View view,
+                                    int position, long id) {
+                onListItemClick(position);
+            }
+        });
+
+        // Set fast scroll
+        mListView.setFastScrollEnabled(true);
+
+        // Start building the contact index while the list is loading
+        ContactIndex.prefetch(this);
+        refresh();
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        MenuInflater inflater = getMenuInflater();
+        inflater.inflate(R.menu.conversationsmenu, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        int id = item.getItemId();
+        if (id == R.id.refresh) {
+            refresh();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    protected void onDestroy() {
+        if (mRefreshTask != null) {
+            mRefreshTask.cancel(false);
+        }
+        super.onDestroy();
+    }
+
+    private void onListItemClick(int position) {
+        if (mListAdapter == null || position < 0
+                || position >= mListAdapter.getCount()) {
+            return;
+        }
+        long threadId = mListAdapter.mSummary.getThreadId(position);
+        Log.d(TAG, this.getClass().getSimpleName() + ": onListItemClick: "
+                + "position=" + position + " threadId=" + threadId);
+        Intent i = new Intent(this, MMSSMSActivity.class);
+        i.putExtra(COL_THREAD_ID, threadId);
+        startActivity(i);
+    }
+
+    /**
+     * Builds the summary again in the background.
+     */
+    private void refresh() {
+        if (mRefreshTask != null) {
+            mRefreshTask.cancel(false);
+        }
+        mRefreshTask = new RefreshTask();
+        mRefreshTask.execute();
+    }
+
+    /**
+     * An asynchronous task to build the summary and get the contact names.
+     */
+    private class RefreshTask extends AsyncTask<Void, Void,
+            CustomListAdapter> {
+        private Exception mException;
+
+        @Override
+        protected CustomListAdapter doInBackground(Void... params) {
+            try {
+                ConversationSummary summary =
+                        ConversationSummary.build(ConversationsActivity.this);
+                ContactNameCache cache = ContactNameCache.getInstance(
+                        ConversationsActivity.this);
+                String[] names = new String[summary.size()];
+                for (int i = 0; i < names.length; i++) {
+                    if (isCancelled()) return null;
+                    names[i] = cache.getName(summary.getAddress(i));
+                }
+                return new CustomListAdapter(summary, names);
+            } catch (Exception ex) {
+                mException = ex;
+                return null;
+            }
+        }
+
+        @Override
+        protected void onPostExecute(CustomListAdapter adapter) {
+            if (mException != null) {
+                Utils.excMsg(ConversationsActivity.this,
+                        "Error getting conversations", mException);
+                return;
+            }
+            if (adapter == null) return;
+            if (adapter.getCount() == 0) {
+                Utils.infoMsg(ConversationsActivity.this,
+                        "No conversations in database");
+            }
+            mListAdapter = adapter;
+            mListView.setAdapter(mListAdapter);
+        }
+    }
+
+    /**
+     * ListView adapter class for this activity.
+     */
+    private class CustomListAdapter extends BaseAdapter {
+        private final ConversationSummary mSummary;
+        private final String[] mNames;
+        private final LayoutInflater mInflator;
+
+        private CustomListAdapter(ConversationSummary summary,
+                                  String[] names) {
+            super();
+            mSummary = summary;
+            mNames = names;
+            mInflator = getLayoutInflater();
+        }
+
+        @Override
+        public int getCount() {
+            return mSummary.size();
+        }
+
+        @Override
+        public Object getItem(int i) {
+            if (i < 0 || i >= getCount()) {
+                return null;
+            }
+            return mSummary.getThreadId(i);
+        }
+
+        @Override
+        public long getItemId(int i) {
+            return i;
+        }
+
+        @Override
+        public View getView(int i, View view, ViewGroup viewGroup) {
+            ViewHolder viewHolder;
+            // General ListView optimization code.
+            if (view == null) {
+                view = mInflator.inflate(R.layout.list_row, viewGroup,
+                        false);
+                viewHolder = new ViewHolder();
+                viewHolder.title = view.findViewById(R.id.title);
+                viewHolder.subTitle = view.findViewById(R.id.subtitle);
+                view.setTag(viewHolder);
+            } else {
+                viewHolder = (ViewHolder) view.getTag();
+            }
+
+            // Check if index is OK.
+            if (i < 0 || i >= getCount()) {
+                viewHolder.title.setText("Error");
+                viewHolder.subTitle.setText("Bad view index" + i
+                        + " (Should be 0 to " + getCount() + ")");
+                return view;
+            }
+            String titleText = MessageUtils.formatAddress(
+                    mSummary.getAddress(i));
+            String name = mNames[i];
+            if (name != null && !name.equals("Unknown")) {
+                titleText += " " + name;
+            }
+            titleText += " (" + mSummary.getCount(i) + ")";
+            String subTitleText = formatDate(mSummary.getDate(i)) + "\n"
+                    + mSummary.getSnippet(i);
+            viewHolder.title.setText(titleText);
+            viewHolder.subTitle.setText(subTitleText);
+            return view;
+        }
+    }
+
+    /**
+     * Convenience class for managing views for a ListView row.
+     */
+    private static class ViewHolder {
+        TextView title;
+        TextView subTitle;
+    }
+
+}
@@ -0,0 +1,442 @@
+//Copyright (c) 2011 Kenneth Evans
+//
+//Permission is hereby granted, free of charge, to any person obtaining
+//a copy of this software and associated documentation files (the
+//"Software"), to deal in the Software without restriction, including
+//without limitation the rights to use, copy, modify, merge, publish,
+//distribute, sublicense, and/or sell copies of the Software, and to
+//permit persons to whom the Software is furnished to do so, subject to
+//the following conditions:
+//
+//The above copyright notice and this permission notice shall be included
+//in all copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+//EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+//MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+//IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+//CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+//TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+//SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+package net.kenevans.android.misc;
+
+import android.app.Activity;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Pages through the items of a NavigationList in place in a display
+ * activity. The values for an item are gotten on a worker thread, and those
+ * for the previous and next items are gotten as soon as an item is shown, so
+ * going to them does not wait for the provider. Going past the ends of the
+ * list, or to an item the activity cannot show, falls back to returning to
+ * the list activity or starting the other display activity.
+ * <p>
+ * The list activity is told the current position and id in the result
+ * Intent, using NAV_POSITION_KEY and COL_ID.
+ *
+ * @param <T> The values gotten for an item.
+ */
+public class DetailPager<T> implements IConstants {
+    /**
+     * Used by the activity to get and show the values for an item.
+     *
+     * @param <T> The values gotten for an item.
+     */
+    interface Loader<T> {
+        /**
+         * Gets the values for an item. Called on a worker thread. A loader
+         * that gets the values in stages can show them as they come with
+         * publish, and can stop early, returning null, once isWanted is
+         * false.
+         *
+         * @param id The id.
+         * @return The values or null if the item was not found.
+         * @throws Exception On error.
+         */
+        T load(long id) throws Exception;
+
+        /**
+         * Shows that the item is being gotten.
+         *
+         * @param id The id.
+         */
+        void showLoading(long id);
+
+        /**
+         * Shows the values for an item.
+         *
+         * @param id     The id.
+         * @param values The values or null if not found or on error.
+         * @param ex     The exception if there was an error, otherwise null.
+         */
+        void show(long id, T values, Exception ex);
+    }
+
+    /**
+     * The worker thread shared by all the display activities.
+     */
+    private static final ExecutorService sExecutor =
+            Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "DetailPager");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private final Activity mActivity;
+    private final Loader<T> mLoader;
+    private NavigationList mList;
+
+    /**
+     * The type the activity shows.
+     */
+    private final int mType;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * The values gotten, by id, for the current item and its neighbors.
+     * Only used on the main thread.
+     */
+    private final Map<Long, T> mCache = new HashMap<>();
+
+    /**
+     * The ids being gotten, with the generation of the latest request for
+     * each. Results from older requests, made before a reload, are
+     * ignored. Only used on the main thread.
+     */
+    private final Map<Long, Integer> mPending = new HashMap<>();
+
+    /**
+     * The generation of the last request. Only used on the main thread.
+     */
+    private int mGeneration;
+
+    private int mPosition;
+    private volatile boolean mCancelled;
+
+    /**
+     * The ids of the current item and its neighbors. Read on the worker
+     * thread to skip or stop getting items the user has moved away from.
+     */
+    private volatile long[] mWanted = new long[0];
+
+    /**
+     * Constructor. Uses the current NavigationList if the activity was
+     * started for a position in it, otherwise a list with only the given id.
+     *
+     * @param activity The activity.
+     * @param type     The type of the items the activity shows.
+     * @param id       The id from the Intent.
+     * @param loader   The Loader.
+     */
+    DetailPager(Activity activity, int type, long id, Loader<T> loader) {
+        mActivity = activity;
+        mType = type;
+        mLoader = loader;
+        int position = activity.getIntent().getIntExtra(NAV_POSITION_KEY,
+                -1);
+        NavigationList list = NavigationList.getCurrent();
+        if (list != null && position >= 0 && list.getId(position) == id) {
+            mList = list;
+            mPosition = position;
+        } else {
+            mList = new NavigationList(new long[]{id}, null);
+            mPosition = 0;
+        }
+    }
+
+    /**
+     * @return The id of the current item.
+     */
+    long getId() {
+        return mList.getId(mPosition);
+    }
+
+    /**
+     * Shows the current item.
+     */
+    void show() {
+        setWanted();
+        long id = getId();
+        T values = mCache.get(id);
+        if (values != null) {
+            mLoader.show(id, values, null);
+        } else {
+            mLoader.showLoading(id);
+            request(id);
+        }
+        prefetch();
+    }
+
+    /**
+     * Gets the values for the current item again and shows them, for
+     * example after it has been changed.
+     */
+    void reload() {
+        mCache.remove(getId());
+        mPending.remove(getId());
+        show();
+    }
+
+    /**
+     * Gets the values for the current item and its neighbors again and
+     * shows the current one, for example after many items have been
+     * changed.
+     */
+    void reloadAll() {
+        mCache.clear();
+        mPending.clear();
+        show();
+    }
+
+    /**
+     * Goes to the previous or next item.
+     *
+     * @param resultCode RESULT_PREV or RESULT_NEXT.
+     */
+    void navigate(int resultCode) {
+        int position = mPosition + (resultCode == RESULT_NEXT ? 1 : -1);
+        if (position < 0 || position >= mList.size()) {
+            // Let the list activity handle it
+            mActivity.setResult(resultCode, makeResult());
+            mActivity.finish();
+            return;
+        }
+        int type = mList.getType(position);
+        if (type != NavigationList.TYPE_ANY && type != mType) {
+            startOther(position, type);
+            return;
+        }
+        mPosition = position;
+        mActivity.setResult(Activity.RESULT_CANCELED, makeResult());
+        show();
+    }
+
+    /**
+     * Drops the current item from the list, for example after it has been
+     * deleted, and goes to the one after it, or to the one before it if it
+     * was the last. If the list is then empty the activity is finished.
+     */
+    void removeCurrent() {
+        mCache.remove(getId());
+        mList = mList.remove(mPosition);
+        // Activities started for other types use this list
+        NavigationList.setCurrent(mList);
+        if (mList.size() == 0) {
+            mActivity.setResult(Activity.RESULT_CANCELED);
+            mActivity.finish();
+            return;
+        }
+        if (mPosition >= mList.size()) {
+            mPosition = mList.size() - 1;
+        }
+        int type = mList.getType(mPosition);
+        if (type != NavigationList.TYPE_ANY && type != mType) {
+            startOther(mPosition, type);
+            return;
+        }
+        mActivity.setResult(Activity.RESULT_CANCELED, makeResult());
+        show();
+    }
+
+    /**
+     * Stops showing items. Values still being gotten are discarded.
+     */
+    void cancel() {
+        mCancelled = true;
+        mCache.clear();
+    }
+
+    /**
+     * @return An Intent with the current position and id.
+     */
+    private Intent makeResult() {
+        Intent intent = new Intent();
+        intent.putExtra(NAV_POSITION_KEY, mPosition);
+        intent.putExtra(COL_ID, getId());
+        return intent;
+    }
+
+    /**
+     * Starts the display activity for an item of another type in place of
+     * this one. The result goes to the list activity.
+     *
+     * @param position The position.
+     * @param type     The type.
+     */
+    private void startOther(int position, int type) {
+        Intent intent;
+        if (type == NavigationList.TYPE_SMS) {
+            intent = new Intent(mActivity, DisplaySMSActivity.class);
+            intent.putExtra(URI_KEY, SMS_URI.toString());
+        } else if (type == NavigationList.TYPE_MMS) {
+            intent = new Intent(mActivity, DisplayMMSActivity.class);
+            intent.putExtra(URI_KEY, MMS_URI.toString());
+        } else {
+            Utils.errMsg(mActivity, "Invalid message type: " + type);
+            return;
+        }
+        intent.putExtra(COL_ID, mList.getId(position));
+        intent.putExtra(NAV_POSITION_KEY, position);
+        intent.addFlags(Intent.FLAG_ACTIVITY_FORWARD_RESULT);
+        mActivity.startActivity(intent);
+        mActivity.finish();
+    }
+
+    /**
+     * Whether the values for an item are still wanted, that is, whether it is
+     * the current item or one of its neighbors. May be called on any thread.
+     *
+     * @param id The id.
+     * @return If the values are wanted.
+     */
+    boolean isWanted(long id) {
+        if (mCancelled) return false;
+        for (long wanted : mWanted) {
+            if (wanted == id) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Shows values for an item before load returns, for a Loader that gets
+     * them in stages. May be called on the worker thread. Nothing is done
+     * unless the item is still the current one when the values get to the
+     * main thread. The values should not be changed after this is called.
+     *
+     * @param id     The id.
+     * @param values The values so far.
+     */
+    void publish(final long id, final T values) {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mCancelled || id != getId() || mCache.containsKey(id)) {
+                    return;
+                }
+                mLoader.show(id, values, null);
+            }
+        });
+    }
+
+    /**
+     * Sets mWanted to the ids of the current item and its neighbors.
+     */
+    private void setWanted() {
+        long[] wanted = new long[3];
+        int nWanted = 0;
+        long id;
+        for (int position = mPosition - 1; position <= mPosition + 1;
+             position++) {
+            id = mList.getId(position);
+            if (id >= 0) {
+                wanted[nWanted++] = id;
+            }
+        }
+        mWanted = Arrays.copyOf(wanted, nWanted);
+    }
+
+    /**
+     * Gets the values for the neighbors of the current item and discards
+     * those for items that are no longer neighbors.
+     */
+    private void prefetch() {
+        Set<Long> keep = new HashSet<>();
+        long id;
+        for (int position = mPosition - 1; position <= mPosition + 1;
+             position++) {
+            id = mList.getId(position);
+            if (id < 0) continue;
+            keep.add(id);
+            int type = mList.getType(position);
+            if (type != NavigationList.TYPE_ANY && type != mType) continue;
+            if (!mCache.containsKey(id)) {
+                request(id);
+            }
+        }
+        Iterator<Long> iterator = mCache.keySet().iterator();
+        while (iterator.hasNext()) {
+            if (!keep.contains(iterator.next())) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Gets the values for an item on the worker thread, showing them if it
+     * is the current item when they arrive. Items the user has moved away
+     * from by the time the worker gets to them, or while they are being
+     * gotten, are dropped, as are the values from a request made before the
+     * item was reloaded.
+     *
+     * @param id The id.
+     */
+    private void request(final long id) {
+        if (mPending.containsKey(id)) return;
+        final int generation = ++mGeneration;
+        mPending.put(id, generation);
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                T values = null;
+                Exception exception = null;
+                try {
+                    if (isWanted(id)) {
+                        values = mLoader.load(id);
+                    }
+                } catch (Exception ex) {
+                    Log.d(TAG, DetailPager.class.getSimpleName()
+                            + ".request: Error getting id=" + id, ex);
+                    exception = ex;
+                }
+                final boolean stale = !isWanted(id);
+                final T result = values;
+                final Exception resultException = exception;
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        Integer pending = mPending.get(id);
+                        if (pending == null || pending != generation) {
+                            // Reloaded since, a newer request owns the id
+                            return;
+                        }
+                        mPending.remove(id);
+                        if (mCancelled) return;
+                        if (stale) {
+                            // The user may have come back to it
+                            if (isWanted(id) && !mCache.containsKey(id)) {
+                                request(id);
+                            }
+                            return;
+                        }
+                        if (result != null) {
+                            mCache.put(id, result);
+                        }
+                        if (id == getId()) {
+                            mLoader.show(id, result, resultException);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+}
@@ -56,11 +56,17 @@ public class DisplayCallActivity extends AppCompatActivity implements IConstants
 
     private TextView mTitleTextView;
     private TextView mSubtitleTextView;
+    private FieldDump mFieldDump;
     private TextView mContactTextView;
     private TextView mInfoTextView;
     private ImageView mImageView;
     private Long mRowId;
 
+    /**
+     * Shows the calls in the list in place.
+     */
+    private DetailPager<Call> mPager;
+
     /**
      * Called when the activity is first created.
      */
@@ -75,6 +81,14 @@ public class DisplayCallActivity extends AppCompatActivity implements IConstants
 
         mTitleTextView = findViewById(R.id.titleview);
         mSubtitleTextView = findViewById(R.id.subtitleview);
+        mFieldDump = new FieldDump(mSubtitleTextView,
+                new FieldDump.Dumper() {
+                    @Override
+                    public void dump(long id, StringBuilder sb) {
+                        FieldDump.appendRow(getContentResolver(), mUri, id,
+                                sb);
+                    }
+                });
         mContactTextView = findViewById(R.id.contactview);
         mInfoTextView = findViewById(R.id.infoview);
         mImageView = findViewById(R.id.imageview);
@@ -121,8 +135,39 @@ public class DisplayCallActivity extends AppCompatActivity implements IConstants
         }
         mRowId = extras != null ? extras.getLong(COL_ID) : null;
 
-        // Call refresh to set the contents
-        refresh();
+        // Show the call and get its neighbors in the list
+        mPager = new DetailPager<>(this, NavigationList.TYPE_ANY,
+                mRowId == null ? -1 : mRowId,
+                new DetailPager.Loader<Call>() {
+                    @Override
+                    public Call load(long id) throws Exception {
+                        return loadCall(id);
+                    }
+
+                    @Override
+                    public void showLoading(long id) {
+                        mRowId = id;
+                        mTitleTextView.setText(id + ": Loading...");
+                    }
+
+                    @Override
+                    public void show(long id, Call call, Exception ex) {
+                        mRowId = id;
+                        showCall(call, ex);
+                    }
+                });
+        mPager.show();
+    }
+
+    @Override
+    protected void onDestroy() {
+        if (mPager != null) {
+            mPager.cancel();
+        }
+        if (mFieldDump != null) {
+            mFieldDump.cancel();
+        }
+        super.onDestroy();
     }
 
     @Override
@@ -142,6 +187,10 @@ public class DisplayCallActivity extends AppCompatActivity implements IConstants
             case R.id.next:
                 navigate(RESULT_NEXT);
                 return true;
+            case R.id.all_fields:
+                item.setChecked(!item.isChecked());
+                mFieldDump.setExpanded(item.isChecked());
+                return true;
             case R.id.delete:
                 deleteCall();
                 return true;
@@ -179,8 +228,12 @@ public class DisplayCallActivity extends AppCompatActivity implements IConstants
      * @param resultCode The result code to send.
      */
     private void navigate(int resultCode) {
-        setResult(resultCode);
-        finish();
+        if (mPager != null) {
+            mPager.navigate(resultCode);
+        } else {
+            setResult(resultCode);
+            finish();
+        }
     }
 
     /**
@@ -236,140 +289,155 @@ public class DisplayCallActivity extends AppCompatActivity implements IConstants
     }
 
     /**
-     * Gets a new cursor and redraws the view. Closes the cursor after it is
-     * done with it.
+     * Gets the values to show for a call. Called on a worker thread. Closes
+     * the cursor after it is done with it.
+     *
+     * @param rowId The _id.
+     * @return The values or null if not found.
      */
-    private void refresh() {
+    private Call loadCall(long rowId) {
+        Cursor cursor = null;
         try {
-            // Only get the row with mRowId
-            String selection = COL_ID + "=" + mRowId;
+            // Only get the row with rowId
+            String selection = COL_ID + "=" + rowId;
 
-            // First get the names of all the columns in the database
-            Cursor cursor = getContentResolver().query(mUri, null, selection,
-                    null, null);
-            String[] columns = cursor.getColumnNames();
-            cursor.close();
+            // Get the names of all the columns, which is cached for the
+            // process
+            String[] columns = ProviderSchema.getColumns(getContentResolver(),
+                    mUri);
 
             // Then get the columns for this row
             String sort = COL_DATE + " DESC";
-            cursor = getContentResolver().query(mUri, columns, selection, null,
-                    sort);
+            cursor = getContentResolver().query(mUri, columns,
+                    selection, null, sort);
             int indexId = cursor.getColumnIndex(COL_ID);
             int indexDate = cursor.getColumnIndex(COL_DATE);
             int indexNumber = cursor.getColumnIndex(COL_NUMBER);
             int indexDuration = cursor.getColumnIndex(COL_DURATION);
             int indexType = cursor.getColumnIndex(COL_TYPE);
             int indexName = cursor.getColumnIndex(COL_NAME);
-            Log.d(TAG, this.getClass().getSimpleName() + ".refresh: "
-                    + " mRowId=" + mRowId + " mUri=" + mUri.toString());
+            Log.d(TAG, this.getClass().getSimpleName() + ".loadCall: "
+                    + " rowId=" + rowId + " mUri=" + mUri.toString());
 
             // There should only be one row returned, the last will be the most
             // recent if more are returned owing to the sort above
             boolean found = cursor.moveToFirst();
             if (!found) {
-                mTitleTextView.setText("<Error>");
-                mSubtitleTextView.setText("");
-            } else {
-                String id = cursor.getString(indexId);
-                String number = "<Number NA>";
-                if (indexNumber > -1) {
-                    number = cursor.getString(indexNumber);
-                }
-                long dateNum = -1L;
-                if (indexDate > -1) {
-                    dateNum = cursor.getLong(indexDate);
-                }
-                String duration = "<Duration NA>";
-                if (indexDuration > -1) {
-                    duration = cursor.getString(indexDuration);
-                }
-                int type = -1;
-                if (indexType > -1) {
-                    type = cursor.getInt(indexType);
-                }
-                String name = "Unknown";
-                if (indexName > -1) {
-                    name = cursor.getString(indexName);
-                    if (name == null) {
-                        name = "Unknown";
-                    }
+                return null;
+            }
+            String id = cursor.getString(indexId);
+            String number = "<Number NA>";
+            if (indexNumber > -1) {
+                number = cursor.getString(indexNumber);
+            }
+            long dateNum = -1L;
+            if (indexDate > -1) {
+                dateNum = cursor.getLong(indexDate);
+            }
+            String duration = "<Duration NA>";
+            if (indexDuration > -1) {
+                duration = cursor.getString(indexDuration);
+            }
+            int type = -1;
+            if (indexType > -1) {
+                type = cursor.getInt(indexType);
+            }
+            String name = "Unknown";
+            if (indexName > -1) {
+                name = cursor.getString(indexName);
+                if (name == null) {
+                    name = "Unknown";
                 }
+            }
 
-                String title = id;
-                // Indicate if more than one found
-                if (cursor.getCount() > 1) {
-                    title += " [1/" + cursor.getCount() + "]";
-                }
-                title += ": "
-                        + MessageUtils.formatAddress(number)
-                        + " ("
-                        + CallHistoryActivity.formatType(type)
-                        + ") "
-                        + name
-                        + "\n"
-                        + MessageUtils.formatDate(MessageUtils.mediumFormatter,
-                        dateNum) + " Duration: "
-                        + CallHistoryActivity.formatDuration(duration);
-                String subTitle = "";
-                Log.d(TAG, getClass().getSimpleName() + ".refresh" + " id="
-                        + id + " address=" + number + " dateNum=" + dateNum);
-
-                // Add all the fields in the database
-                subTitle += MessageUtils.getColumnNamesAndValues(cursor);
-
-                // Set the TextViews
-                mTitleTextView.setText(title);
-                mSubtitleTextView.setText(subTitle);
-
-                // Set the info view
-                String info = MessageUtils.formatDate(
-                        MessageUtils.shortFormatter, dateNum) + "\n" + name;
-                mInfoTextView.setText(info);
-
-                // Set the contact view
-                if (mContactTextView != null) {
-                    String contactInfo;
-                    if (name.length() > 0) {
-                        contactInfo = MessageUtils.getContactInfo(this, name);
-                    } else {
-                        contactInfo = "Unknown Contact";
-                    }
-                    if (contactInfo != null) {
-                        mContactTextView.setText(contactInfo);
-                    }
-                }
+            Call call = new Call();
+            String title = id;
+            // Indicate if more than one found
+            if (cursor.getCount() > 1) {
+                title += " [1/" + cursor.getCount() + "]";
+            }
+            title += ": "
+                    + MessageUtils.formatAddress(number)
+                    + " ("
+                    + CallHistoryActivity.formatType(type)
+                    + ") "
+                    + name
+                    + "\n"
+                    + MessageUtils.formatDate(MessageUtils.mediumFormatter,
+                    dateNum) + " Duration: "
+                    + CallHistoryActivity.formatDuration(duration);
+            call.title = title;
+            Log.d(TAG, getClass().getSimpleName() + ".loadCall" + " id="
+                    + id + " address=" + number + " dateNum=" + dateNum);
 
-                // Set the image view
-                if (mImageView != null) {
-                    long contactId = MessageUtils.getContactIdFromName(this,
-                            name);
-                    Bitmap bitmap = MessageUtils.loadContactPhoto(
-                            getContentResolver(), contactId);
-                    if (bitmap == null) {
-                        // DEBUG
-                        // bitmap =
-                        // BitmapFactory.decodeFile
-                        // ("/sdcard/Pictures/Art/Wildcat.jpg");
-                        bitmap = BitmapFactory.decodeResource(getResources(),
-                                R.drawable.android_icon);
-                    }
-                    if (bitmap != null) {
-                        mImageView.setImageBitmap(bitmap);
-                    }
-                }
+            // The info view
+            call.info = MessageUtils.formatDate(
+                    MessageUtils.shortFormatter, dateNum) + "\n" + name;
+
+            // The contact view
+            if (name.length() > 0) {
+                call.contactInfo = MessageUtils.getContactInfo(this, name);
+            } else {
+                call.contactInfo = "Unknown Contact";
             }
 
+            // The image view
+            long contactId = MessageUtils.getContactIdFromName(this, name);
+            Bitmap bitmap = MessageUtils.loadContactPhoto(
+                    getContentResolver(), contactId);
+            if (bitmap == null) {
+                // DEBUG
+                // bitmap =
+                // BitmapFactory.decodeFile
+                // ("/sdcard/Pictures/Art/Wildcat.jpg");
+                bitmap = BitmapFactory.decodeResource(getResources(),
+                        R.drawable.android_icon);
+            }
+            call.photo = bitmap;
+            return call;
+        } finally {
             // We are through with the cursor
-            cursor.close();
-        } catch (Exception ex) {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    /**
+     * Redraws the view for a call.
+     *
+     * @param call The values or null if not found or on error.
+     * @param ex   The exception if there was an error, otherwise null.
+     */
+    private void showCall(Call call, Exception ex) {
+        if (ex != null) {
             Utils.excMsg(this, "Error finding call", ex);
-            if (mTitleTextView != null) {
-                mTitleTextView.setText("<Error>");
-            }
-            if (mSubtitleTextView != null) {
-                mSubtitleTextView.setText("");
-            }
         }
+        if (call == null) {
+            mTitleTextView.setText("<Error>");
+            mFieldDump.clear();
+            return;
+        }
+
+        // Set the TextViews
+        mTitleTextView.setText(call.title);
+        mFieldDump.show(mRowId == null ? -1 : mRowId, null);
+        mInfoTextView.setText(call.info);
+        if (mContactTextView != null) {
+            mContactTextView.setText(call.contactInfo != null ?
+                    call.contactInfo : "");
+        }
+        if (mImageView != null && call.photo != null) {
+            mImageView.setImageBitmap(call.photo);
+        }
+    }
+
+    /**
+     * The values shown for a call.
+     */
+    private static class Call {
+        private String title;
+        private String info;
+        private String contactInfo;
+        private Bitmap photo;
     }
 
 }
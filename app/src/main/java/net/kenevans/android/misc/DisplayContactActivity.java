@@ -56,11 +56,17 @@ public class DisplayContactActivity extends AppCompatActivity implements IConsta
 
     private TextView mTitleTextView;
     private TextView mSubtitleTextView;
+    private FieldDump mFieldDump;
     private TextView mContactTextView;
     private TextView mInfoTextView;
     private ImageView mImageView;
     private Long mRowId;
 
+    /**
+     * Shows the contacts in the list in place.
+     */
+    private DetailPager<Contact> mPager;
+
     /**
      * Called when the activity is first created.
      */
@@ -75,6 +81,14 @@ public class DisplayContactActivity extends AppCompatActivity implements IConsta
 
         mTitleTextView = findViewById(R.id.titleview);
         mSubtitleTextView = findViewById(R.id.subtitleview);
+        mFieldDump = new FieldDump(mSubtitleTextView,
+                new FieldDump.Dumper() {
+                    @Override
+                    public void dump(long id, StringBuilder sb) {
+                        FieldDump.appendRow(getContentResolver(), mUri, id,
+                                sb);
+                    }
+                });
         mContactTextView = findViewById(R.id.contactview);
         mInfoTextView = findViewById(R.id.infoview);
         mImageView = findViewById(R.id.imageview);
@@ -121,8 +135,40 @@ public class DisplayContactActivity extends AppCompatActivity implements IConsta
         }
         mRowId = extras != null ? extras.getLong(COL_ID) : null;
 
-        // Call refresh to set the contents
-        refresh();
+        // Show the contact and get its neighbors in the list
+        mPager = new DetailPager<>(this, NavigationList.TYPE_ANY,
+                mRowId == null ? -1 : mRowId,
+                new DetailPager.Loader<Contact>() {
+                    @Override
+                    public Contact load(long id) throws Exception {
+                        return loadContact(id);
+                    }
+
+                    @Override
+                    public void showLoading(long id) {
+                        mRowId = id;
+                        mTitleTextView.setText(id + ": Loading...");
+                    }
+
+                    @Override
+                    public void show(long id, Contact contact,
+                                     Exception ex) {
+                        mRowId = id;
+                        showContact(contact, ex);
+                    }
+                });
+        mPager.show();
+    }
+
+    @Override
+    protected void onDestroy() {
+        if (mPager != null) {
+            mPager.cancel();
+        }
+        if (mFieldDump != null) {
+            mFieldDump.cancel();
+        }
+        super.onDestroy();
     }
 
     @Override
@@ -143,6 +189,10 @@ public class DisplayContactActivity extends AppCompatActivity implements IConsta
             case R.id.next:
                 navigate(RESULT_NEXT);
                 return true;
+            case R.id.all_fields:
+                item.setChecked(!item.isChecked());
+                mFieldDump.setExpanded(item.isChecked());
+                return true;
             case R.id.delete:
                 deleteContacts();
                 return true;
@@ -180,8 +230,12 @@ public class DisplayContactActivity extends AppCompatActivity implements IConsta
      * @param resultCode The result code to send.
      */
     private void navigate(int resultCode) {
-        setResult(resultCode);
-        finish();
+        if (mPager != null) {
+            mPager.navigate(resultCode);
+        } else {
+            setResult(resultCode);
+            finish();
+        }
     }
 
     /**
@@ -326,119 +380,136 @@ public class DisplayContactActivity extends AppCompatActivity implements IConsta
     }
 
     /**
-     * Gets a new cursor and redraws the view. Closes the cursor after it is
-     * done with it.
+     * Gets the contact again and redraws the view.
      */
     private void refresh() {
+        if (mPager != null) {
+            mPager.reload();
+        }
+    }
+
+    /**
+     * Gets the values to show for a contact. Called on a worker thread.
+     * Closes the cursor after it is done with it.
+     *
+     * @param rowId The _id.
+     * @return The values or null if not found.
+     */
+    private Contact loadContact(long rowId) {
+        Cursor cursor = null;
         try {
-            // Only get the row with mRowId
-            String selection = COL_ID + "=" + mRowId;
+            // Only get the row with rowId
+            String selection = COL_ID + "=" + rowId;
 
-            // First get the names of all the columns in the database
-            Cursor cursor = getContentResolver().query(mUri, null, selection,
-                    null, null);
-            String[] columns = cursor.getColumnNames();
-            cursor.close();
+            // Get the names of all the columns, which is cached for the
+            // process
+            String[] columns = ProviderSchema.getColumns(getContentResolver(),
+                    mUri);
 
             // Then get the columns for this row
             String sort = ContactsContract.Contacts.DISPLAY_NAME + " ASC";
-            cursor = getContentResolver().query(mUri, columns, selection, null,
-                    sort);
+            cursor = getContentResolver().query(mUri, columns,
+                    selection, null, sort);
             int indexId = cursor.getColumnIndex(COL_ID);
             int indexName = cursor
                     .getColumnIndex(ContactsContract.Contacts.DISPLAY_NAME);
-            Log.d(TAG, this.getClass().getSimpleName() + ".refresh: "
-                    + " mRowId=" + mRowId + " mUri=" + mUri.toString());
+            Log.d(TAG, this.getClass().getSimpleName() + ".loadContact: "
+                    + " rowId=" + rowId + " mUri=" + mUri.toString());
 
             // There should only be one row returned, the last will be the most
             // recent if more are returned owing to the sort above
             boolean found = cursor.moveToFirst();
             if (!found) {
-                mTitleTextView.setText("<Error>");
-                mSubtitleTextView.setText("");
-                mInfoTextView.setText("");
-                mContactTextView.setText("");
-            } else {
-                String id = cursor.getString(indexId);
-                String name = "Unknown";
-                if (indexName > -1) {
-                    name = cursor.getString(indexName);
-                    if (name == null) {
-                        name = "Unknown";
-                    }
-                }
-
-                String title = id;
-                // Indicate if more than one found
-                if (cursor.getCount() > 1) {
-                    title += " [1/" + cursor.getCount() + "]";
-                }
-                title += ": " + name;
-                String subTitle = "";
-                Log.d(TAG, getClass().getSimpleName() + ".refresh" + " id="
-                        + id + " name=" + name);
-
-                // Add all the fields in the database
-                subTitle += MessageUtils.getColumnNamesAndValues(cursor);
-
-                // Set the TextViews
-                mTitleTextView.setText(title);
-                mSubtitleTextView.setText(subTitle);
-
-                // Set the info view
-                String info = name;
-                mInfoTextView.setText(info);
-
-                // Set the contact view
-                if (mContactTextView != null) {
-                    String contactInfo;
-                    if (name.length() > 0) {
-                        contactInfo = MessageUtils.getContactInfo(this, name);
-                    } else {
-                        contactInfo = "Unknown Contact";
-                    }
-                    if (contactInfo != null) {
-                        mContactTextView.setText(contactInfo);
-                    }
-                }
-
-                // Set the image
-                if (mImageView != null) {
-                    long contactId = MessageUtils.getContactIdFromName(this,
-                            name);
-                    Bitmap bitmap = MessageUtils.loadContactPhoto(
-                            getContentResolver(), contactId);
-                    if (bitmap == null) {
-                        // DEBUG
-                        // bitmap =
-                        // BitmapFactory.decodeFile
-                        // ("/sdcard/Pictures/Art/Wildcat.jpg");
-                        bitmap = BitmapFactory.decodeResource(getResources(),
-                                R.drawable.android_icon);
-                    }
-                    if (bitmap != null) {
-                        mImageView.setImageBitmap(bitmap);
-                    }
+                return null;
+            }
+            String id = cursor.getString(indexId);
+            String name = "Unknown";
+            if (indexName > -1) {
+                name = cursor.getString(indexName);
+                if (name == null) {
+                    name = "Unknown";
                 }
             }
-            cursor.close();
-        } catch (Exception ex) {
-            Utils.excMsg(this, "Error finding contact", ex);
-            if (mTitleTextView != null) {
-                mTitleTextView.setText("<Error>");
+
+            Contact contact = new Contact();
+            String title = id;
+            // Indicate if more than one found
+            if (cursor.getCount() > 1) {
+                title += " [1/" + cursor.getCount() + "]";
             }
-            if (mSubtitleTextView != null) {
-                mSubtitleTextView.setText("");
+            contact.title = title + ": " + name;
+            Log.d(TAG, getClass().getSimpleName() + ".loadContact" + " id="
+                    + id + " name=" + name);
+
+            // The info view
+            contact.info = name;
+
+            // The contact view
+            if (name.length() > 0) {
+                contact.contactInfo = MessageUtils.getContactInfo(this, name);
+            } else {
+                contact.contactInfo = "Unknown Contact";
             }
-            if (mInfoTextView != null) {
-                mInfoTextView.setText("");
+
+            // The image
+            long contactId = MessageUtils.getContactIdFromName(this, name);
+            Bitmap bitmap = MessageUtils.loadContactPhoto(
+                    getContentResolver(), contactId);
+            if (bitmap == null) {
+                bitmap = BitmapFactory.decodeResource(getResources(),
+                        R.drawable.android_icon);
             }
+            contact.photo = bitmap;
+            return contact;
+        } finally {
+            // We are through with the cursor
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    /**
+     * Redraws the view for a contact.
+     *
+     * @param contact The values or null if not found or on error.
+     * @param ex      The exception if there was an error, otherwise null.
+     */
+    private void showContact(Contact contact, Exception ex) {
+        if (ex != null) {
+            Utils.excMsg(this, "Error finding contact", ex);
+        }
+        if (contact == null) {
+            mTitleTextView.setText("<Error>");
+            mFieldDump.clear();
+            mInfoTextView.setText("");
             if (mContactTextView != null) {
                 mContactTextView.setText("");
             }
+            return;
+        }
+
+        // Set the TextViews
+        mTitleTextView.setText(contact.title);
+        mFieldDump.show(mRowId == null ? -1 : mRowId, null);
+        mInfoTextView.setText(contact.info);
+        if (mContactTextView != null) {
+            mContactTextView.setText(contact.contactInfo != null ?
+                    contact.contactInfo : "");
+        }
+        if (mImageView != null && contact.photo != null) {
+            mImageView.setImageBitmap(contact.photo);
         }
     }
 
+    /**
+     * The values shown for a contact.
+     */
+    private static class Contact {
+        private String title;
+        private String info;
+        private String contactInfo;
+        private Bitmap photo;
+    }
+
     /***
      * Class to manage a raw contact
      */
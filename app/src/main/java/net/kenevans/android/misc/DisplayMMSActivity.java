@@ -26,9 +26,8 @@ import android.content.ContentValues;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.SharedPreferences;
+import android.content.res.ColorStateList;
 import android.database.Cursor;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Environment;
@@ -45,14 +44,9 @@ import android.widget.ScrollView;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
@@ -88,11 +82,27 @@ public class DisplayMMSActivity extends AppCompatActivity implements IConstants
 
     private TextView mTitleTextView;
     private TextView mSubtitleTextView;
+    private FieldDump mFieldDump;
     private TextView mBodyTextView;
     private TextView mInfoTextView;
     private ImageView mImageView;
     private Long mRowId;
 
+    /**
+     * The body text colors, restored after showing an error.
+     */
+    private ColorStateList mBodyTextColors;
+
+    /**
+     * The part id of the image being shown, or -1 if there is none.
+     */
+    private long mImagePartId = -1;
+
+    /**
+     * Shows the messages in the list in place.
+     */
+    private DetailPager<Message> mPager;
+
     /**
      * Called when the activity is first created.
      */
@@ -115,9 +125,17 @@ public class DisplayMMSActivity extends AppCompatActivity implements IConstants
         mTitleTextView = findViewById(R.id.titleview);
         mSubtitleTextView = findViewById(R.id.subtitleview);
         mSubtitleTextView.setMovementMethod(new ScrollingMovementMethod());
+        mFieldDump = new FieldDump(mSubtitleTextView,
+                new FieldDump.Dumper() {
+                    @Override
+                    public void dump(long id, StringBuilder sb) {
+                        appendFields(id, sb);
+                    }
+                });
         mInfoTextView = findViewById(R.id.infoview);
         mBodyTextView = findViewById(R.id.bodyview);
         mBodyTextView.setMovementMethod(new ScrollingMovementMethod());
+        mBodyTextColors = mBodyTextView.getTextColors();
         mImageView = findViewById(R.id.imageview);
 
         // Swipe
@@ -163,14 +181,50 @@ public class DisplayMMSActivity extends AppCompatActivity implements IConstants
         }
         mRowId = extras != null ? extras.getLong(COL_ID) : null;
 
-        // Call refresh to set the contents
-        refresh();
+        // Show the message and get its neighbors in the list
+        mPager = new DetailPager<>(this, NavigationList.TYPE_MMS,
+                mRowId == null ? -1 : mRowId,
+                new DetailPager.Loader<Message>() {
+                    @Override
+                    public Message load(long id) throws Exception {
+                        return loadMessage(id);
+                    }
+
+                    @Override
+                    public void showLoading(long id) {
+                        mRowId = id;
+                        mTitleTextView.setText(id + ": Loading...");
+                        mBodyTextView.setText("");
+                        mInfoTextView.setText("");
+                        mFieldDump.clear();
+                        clearImage();
+                    }
+
+                    @Override
+                    public void show(long id, Message message,
+                                     Exception ex) {
+                        mRowId = id;
+                        showMessage(id, message, ex);
+                    }
+                });
+        mPager.show();
+    }
+
+    @Override
+    protected void onDestroy() {
+        if (mPager != null) {
+            mPager.cancel();
+        }
+        if (mFieldDump != null) {
+            mFieldDump.cancel();
+        }
+        super.onDestroy();
     }
 
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         MenuInflater inflater = getMenuInflater();
-        inflater.inflate(R.menu.displaymessagemenu, menu);
+        inflater.inflate(R.menu.displaymmsmenu, menu);
         return true;
     }
 
@@ -187,6 +241,9 @@ public class DisplayMMSActivity extends AppCompatActivity implements IConstants
             case R.id.fixtime:
                 fixTime();
                 return true;
+            case R.id.bulk_fixtime:
+                fixTimeRange();
+                return true;
             case R.id.dryrun:
                 toggleDryRun();
                 return true;
@@ -199,9 +256,16 @@ public class DisplayMMSActivity extends AppCompatActivity implements IConstants
             case R.id.cleartext:
                 saveToTextFile(true);
                 return true;
+            case R.id.all_fields:
+                item.setChecked(!item.isChecked());
+                mFieldDump.setExpanded(item.isChecked());
+                return true;
             case R.id.delete:
                 deleteMessage();
                 return true;
+            case R.id.extract_attachments:
+                MmsAttachmentExtractor.requestFolder(this);
+                return true;
             case R.id.help:
                 showHelp();
                 return true;
@@ -321,6 +385,81 @@ public class DisplayMMSActivity extends AppCompatActivity implements IConstants
         }
     }
 
+    /**
+     * Prompts the user for a range of messages, starting with the current
+     * one, and a time offset, then changes the time of all the messages in
+     * the range in the background. In dry run mode only the number of
+     * messages and the change for the first one are shown.
+     */
+    private void fixTimeRange() {
+        if (mRowId == null) return;
+        try {
+            String[] columns = {COL_DATE};
+            // Only get the row with mRowId
+            String selection = COL_ID + "=" + mRowId;
+            Cursor cursor = getContentResolver().query(mUri, columns, selection,
+                    null, null);
+            if (cursor == null || !cursor.moveToFirst()) {
+                if (cursor != null) cursor.close();
+                Utils.errMsg(this, "Did not find message");
+                return;
+            }
+            long curDate = cursor.getLong(0) * mDateMultiplier;
+            cursor.close();
+
+            final BulkFixTimeDialog dialog = new BulkFixTimeDialog(this,
+                    mLastTimeOffset, mRowId, curDate);
+            dialog.setTitle(R.string.bulkfixtime_dialog_title);
+            final Button okButton = dialog.getOkButton();
+            okButton.setOnClickListener(new OnClickListener() {
+                @Override
+                public void onClick(View v) {
+                    Integer offset = dialog.getTimeOffset();
+                    String rangeSelection =
+                            dialog.getSelection(mDateMultiplier);
+                    if (offset == null) {
+                        Utils.errMsg(DisplayMMSActivity.this,
+                                "Got invalid value for the time offset");
+                        return;
+                    }
+                    if (rangeSelection == null) {
+                        Utils.errMsg(DisplayMMSActivity.this,
+                                "Got invalid values for the range");
+                        return;
+                    }
+                    // Save this value as the default
+                    mLastTimeOffset = offset;
+                    dialog.dismiss();
+                    new BulkFixTimeTask(DisplayMMSActivity.this, mUri,
+                            rangeSelection, offset, mDateMultiplier,
+                            mDryRun) {
+                        @Override
+                        protected void onChanged(long[] ids, int count) {
+                            if (mPager != null) {
+                                mPager.reloadAll();
+                            }
+                        }
+                    }.execute();
+                }
+            });
+            final Button cancelButton = dialog.getCancelButton();
+            cancelButton.setOnClickListener(new OnClickListener() {
+                @Override
+                public void onClick(View v) {
+                    dialog.dismiss();
+                    // Save the current offset even if the user cancelled
+                    Integer offset = dialog.getTimeOffset();
+                    if (offset != null) {
+                        mLastTimeOffset = offset;
+                    }
+                }
+            });
+            dialog.show();
+        } catch (Exception ex) {
+            Utils.excMsg(this, "Error finding MMS message", ex);
+        }
+    }
+
     /**
      * Sets the result code to send back to the calling Activity. One of:
      * <ul>
@@ -331,8 +470,12 @@ public class DisplayMMSActivity extends AppCompatActivity implements IConstants
      * @param resultCode The result code to send.
      */
     private void navigate(int resultCode) {
-        setResult(resultCode);
-        finish();
+        if (mPager != null) {
+            mPager.navigate(resultCode);
+        } else {
+            setResult(resultCode);
+            finish();
+        }
     }
 
     /**
@@ -346,7 +489,13 @@ public class DisplayMMSActivity extends AppCompatActivity implements IConstants
             try {
                 // The following change the database
                 getContentResolver().delete(mUri, "_id = " + mRowId, null);
-                navigate(RESULT_NEXT);
+                if (mPager != null) {
+                    // Go on without the deleted message
+                    mPager.removeCurrent();
+                } else {
+                    setResult(RESULT_NEXT);
+                    finish();
+                }
             } catch (Exception ex) {
                 Utils.excMsg(this, "Problem deleting message", ex);
             }
@@ -394,7 +543,12 @@ public class DisplayMMSActivity extends AppCompatActivity implements IConstants
         Log.d(TAG, this.getClass().getSimpleName()
                 + ".onActivityResult: requestCode=" + requestCode
                 + " resultCode=" + resultCode);
-        if (requestCode == SPAM_MESSAGE) {
+        if (requestCode == OPEN_DOCUMENT_TREE) {
+            if (resultCode == RESULT_OK && intent != null
+                    && mRowId != null) {
+                MmsAttachmentExtractor.start(this, intent.getData(), mRowId);
+            }
+        } else if (requestCode == SPAM_MESSAGE) {
             // Handle activity to send spam message finished
             // Can't check if it was cancelled since it always seems to return 0
             // Now, send the number
@@ -540,259 +694,305 @@ public class DisplayMMSActivity extends AppCompatActivity implements IConstants
      * @return The text.
      */
     public String getMmsText(String id) {
-        Uri partURI = Uri.parse("content://mms/part/" + id);
-        StringBuilder sb = new StringBuilder();
-        try (InputStream is =
-                     getContentResolver().openInputStream(partURI)) {
-            if (is != null) {
-                InputStreamReader isr = new InputStreamReader(is,
-                        StandardCharsets.UTF_8);
-                BufferedReader reader = new BufferedReader(isr);
-                String temp = reader.readLine();
-                while (temp != null) {
-                    sb.append(temp);
-                    temp = reader.readLine();
-                }
-            }
-        } catch (IOException ex) {
-            Log.e(TAG, getClass().getSimpleName() + ".getMmsText Exception: "
-                    + ex.getMessage());
-        }
-        return sb.toString();
+        return MessageUtils.getMmsText(this, id);
     }
 
     /**
-     * Gets the MMS bitmap for the given id.
-     *
-     * @param _id The id.
-     * @return The bitmap.
+     * Gets the message again and redraws the view.
      */
-    public Bitmap getMmsImage(String _id) {
-        Uri partURI = Uri.parse("content://mms/part/" + _id);
-        InputStream is = null;
-        Bitmap bitmap = null;
-        try {
-            is = getContentResolver().openInputStream(partURI);
-            bitmap = BitmapFactory.decodeStream(is);
-        } catch (IOException ex) {
-            Log.e(TAG, getClass().getSimpleName() + ".getMmsImage Exception: "
-                    + ex.getMessage());
-        } finally {
-            if (is != null) {
-                try {
-                    is.close();
-                } catch (IOException ignored) {
-                }
-            }
+    private void refresh() {
+        if (mPager != null) {
+            mPager.reload();
         }
-        return bitmap;
     }
 
     /**
-     * Gets a new cursor and redraws the view. Closes the cursor after it is
-     * done with it.
+     * Gets the values to show for a message. Called on a worker thread.
+     * The values are gotten in stages, and each stage is published as soon
+     * as it is done, so the title and date show first, then the body and
+     * image, then the addresses. The rest is skipped if the user moves away
+     * from the message. Closes the cursors after it is done with them.
+     *
+     * @param rowId The _id.
+     * @return The values or null if not found or no longer wanted.
      */
-    private void refresh() {
+    private Message loadMessage(long rowId) {
+        Cursor cursor = null;
+        Cursor partCursor = null;
         try {
-            // Only get the row with mRowId
-            String selection = COL_ID + "=" + mRowId;
+            // Only get the row with rowId
+            String selection = COL_ID + "=" + rowId;
 
-            // First get the names of all the columns in the database
-            Cursor cursor = getContentResolver().query(mUri, null, selection,
-                    null, null);
-            String[] columns = cursor.getColumnNames();
-            cursor.close();
+            // Only the id and date are needed. The fields are gotten when
+            // they are expanded, see appendFields.
+            String[] columns = ProviderSchema.getAvailableColumns(
+                    getContentResolver(), mUri, COL_ID, COL_DATE);
 
             // Then get the columns for this row
             String sort = COL_DATE + " DESC";
-            cursor = getContentResolver().query(mUri, columns, selection, null,
-                    sort);
+            cursor = getContentResolver().query(mUri, columns,
+                    selection, null, sort);
             int indexId = cursor.getColumnIndex(COL_ID);
             int indexDate = cursor.getColumnIndex(COL_DATE);
             // The address and body are not in this database.
             // There is no SMS type.
-            Log.d(TAG, this.getClass().getSimpleName() + ".refresh: "
-                    + " mRowId=" + mRowId + " mUri=" + mUri.toString());
+            Log.d(TAG, this.getClass().getSimpleName() + ".loadMessage: "
+                    + " rowId=" + rowId + " mUri=" + mUri.toString());
 
-            List<String> mimeList = new ArrayList<>();
-            Bitmap bitmap = null;
+            Message message = new Message();
 
             // There should only be one row returned, the last will be the most
             // recent if more are returned owing to the sort above
             boolean found = cursor.moveToFirst();
             if (!found) {
-                mTitleTextView.setText("<Error>");
-                mSubtitleTextView.setText("");
-                mBodyTextView.setText("Failed to find message " + mRowId);
-            } else {
-                String id = cursor.getString(indexId);
-                long dateNum = -1L;
-                if (indexDate > -1) {
-                    dateNum = cursor.getLong(indexDate) * mDateMultiplier;
-                }
+                return null;
+            }
+            String id = cursor.getString(indexId);
+            long dateNum = -1L;
+            if (indexDate > -1) {
+                dateNum = cursor.getLong(indexDate) * mDateMultiplier;
+            }
+            int count = cursor.getCount();
+            cursor.close();
+            cursor = null;
 
-                // Determine if From or To
-                String address = "<Address NA>";
-                String fromAddr = MessageUtils.getMmsAddress(this, 137, id);
-                String toAddr = MessageUtils.getMmsAddress(this, 151, id);
-                if (fromAddr != null) {
-                    if (!fromAddr.equals("insert-address-token")) {
-                        address = "From: " + fromAddr;
-                    } else {
-                        // Is outgoing
-                        if (toAddr != null) {
-                            address = "To: " + toAddr;
-                        }
+            // Stage 1: The title and date
+
+            // Determine if From or To
+            String address = "<Address NA>";
+            String fromAddr = MessageUtils.getMmsAddress(this, 137, id);
+            String toAddr = MessageUtils.getMmsAddress(this, 151, id);
+            if (fromAddr != null) {
+                if (!fromAddr.equals("insert-address-token")) {
+                    address = "From: " + fromAddr;
+                } else {
+                    // Is outgoing
+                    if (toAddr != null) {
+                        address = "To: " + toAddr;
                     }
                 }
+            }
 
-                // We need to get the body from the part
-                String body = "<Body NA>";
-                String partSelection = "mid=" + id;
-                Cursor partCursor = getContentResolver().query(MMS_PART_URI,
-                        null,
-                        partSelection, null, null);
-                // DEBUG
-                String debugString = "";
-                int nPart = 0;
-
-                if (partCursor.moveToFirst()) {
-                    String data;
-                    do {
-                        // DEBUG
-                        debugString += "\n\nPart " + nPart++;
-                        debugString +=
-                                MessageUtils.getColumnNamesAndValues
-                                        (partCursor);
-
-                        // Get the part ID
-                        String partId = partCursor.getString(partCursor
-                                .getColumnIndex(COL_ID));
-
-                        // Determine the attachment type
-                        String cType = partCursor.getString(partCursor
-                                .getColumnIndex(COL_CT));
-                        if (cType != null) {
-                            mimeList.add(cType);
+            String title = id;
+            // Indicate if more than one found
+            if (count > 1) {
+                title += " [1/" + count + "]";
+            }
+            title += ": " + MessageUtils.formatAddress(address) + "\n"
+                    + MessageUtils.formatDate(dateNum);
+            message.title = title;
+            String info = MessageUtils.formatDate(
+                    MessageUtils.shortFormatter, dateNum)
+                    + "\n"
+                    + MessageUtils.formatAddress(address);
+            message.info = info;
+            Log.d(TAG, getClass().getSimpleName() + ".loadMessage" + " id="
+                    + id + " address=" + address + " dateNum=" + dateNum);
+            mPager.publish(rowId, message.copy());
+            if (!mPager.isWanted(rowId)) return null;
+
+            // Stage 2: The body, which is in the parts, and the image
+            List<String> mimeList = new ArrayList<>();
+            StringBuilder body = null;
+            String partSelection = "mid=" + id;
+            partCursor = getContentResolver().query(MMS_PART_URI, null,
+                    partSelection, null, null);
+            if (partCursor.moveToFirst()) {
+                int indexPartId = partCursor.getColumnIndex(COL_ID);
+                int indexCt = partCursor.getColumnIndex(COL_CT);
+                int indexData = partCursor.getColumnIndex(COL_DATA);
+                int indexText = partCursor.getColumnIndex(COL_TEXT);
+                String data;
+                do {
+                    // Get the part ID
+                    String partId = partCursor.getString(indexPartId);
+
+                    // Determine the attachment type
+                    String cType = partCursor.getString(indexCt);
+                    if (cType != null) {
+                        mimeList.add(cType);
+                    }
+                    String text;
+                    if ("text/plain".equals(cType)) {
+                        data = partCursor.getString(indexData);
+                        if (data != null) {
+                            text = getMmsText(partId);
+                        } else {
+                            text = partCursor.getString(indexText);
                         }
-                        String text;
-                        if ("text/plain".equals(cType)) {
-                            data = partCursor.getString(partCursor
-                                    .getColumnIndex(COL_DATA));
-                            if (data != null) {
-                                text = getMmsText(partId);
-                            } else {
-                                text = partCursor.getString(partCursor
-                                        .getColumnIndex(COL_TEXT));
-                            }
-                            if (text != null) {
-                                if (body.equals("<Body NA>")) {
-                                    body = "";
-                                }
-                                body += text + "\n";
-                            }
-                        } else if ("image/jpeg".equals(cType)
-                                || "image/bmp".equals(cType)
-                                || "image/gif".equals(cType)
-                                || "image/jpg".equals(cType)
-                                || "image/png".equals(cType)) {
-                            // Use only the first one
-                            if (bitmap == null) {
-                                bitmap = getMmsImage(partId);
+                        if (text != null) {
+                            if (body == null) {
+                                body = new StringBuilder();
                             }
+                            body.append(text).append('\n');
                         }
-                    } while (partCursor.moveToNext());
-                }
-                if (partCursor != null) {
-                    partCursor.close();
-                }
-
-                String title = id;
-                // Indicate if more than one found
-                if (cursor.getCount() > 1) {
-                    title += " [1/" + cursor.getCount() + "]";
-                }
-                title += ": " + MessageUtils.formatAddress(address) + "\n"
-                        + MessageUtils.formatDate(dateNum);
-                String subTitle = "";
-                Log.d(TAG, getClass().getSimpleName() + ".refresh" + " id="
-                        + id + " address=" + address + " dateNum=" + dateNum);
-
-                // Add the mime types
-                subTitle += "Content Types" + "\n";
-                for (String mimeType : mimeList) {
-                    subTitle += "  " + mimeType + "\n";
-                }
-                subTitle += "\n";
+                    } else if ("image/jpeg".equals(cType)
+                            || "image/bmp".equals(cType)
+                            || "image/gif".equals(cType)
+                            || "image/jpg".equals(cType)
+                            || "image/png".equals(cType)) {
+                        // Use only the first one
+                        if (message.imagePartId < 0) {
+                            message.imagePartId = Long.parseLong(partId);
+                        }
+                    }
+                } while (partCursor.moveToNext());
+            }
+            partCursor.close();
+            partCursor = null;
+            message.body = body == null ? "<Body NA>" : body.toString();
+            mPager.publish(rowId, message.copy());
+            if (!mPager.isWanted(rowId)) return null;
+
+            // Stage 3: The addresses and contact names, which take a contact
+            // lookup for each recipient
+            StringBuilder sb = new StringBuilder(256);
+            // Add the mime types
+            sb.append("Content Types\n");
+            for (String mimeType : mimeList) {
+                sb.append("  ").append(mimeType).append('\n');
+            }
+            sb.append('\n');
 
-                // Add all the addresses
-                subTitle += "Associated Addresses\n";
-                String[] addresses = MessageUtils.getAllMmsAddresses(this, id);
+            // Add all the addresses
+            sb.append("Associated Addresses\n");
+            String[] addresses = MessageUtils.getAllMmsAddresses(this, id);
+            if (addresses != null) {
                 for (String addr : addresses) {
-                    subTitle += "  " + addr + "\n";
-                }
-                subTitle += "\n";
-
-                // Add all the fields in the database
-                subTitle += "All Fields\n";
-                subTitle += MessageUtils.getColumnNamesAndValues(cursor);
-                subTitle += "\n\n";
-
-                // DEBUG
-                // Add the part column names
-                subTitle += "Part Data" + debugString + "\n";
-
-                // Add all the fields in the database
-                subTitle += MessageUtils.getColumnNamesAndValues(cursor);
-
-                // Set the TextViews
-                mTitleTextView.setText(title);
-                mSubtitleTextView.setText(subTitle);
-                mBodyTextView.setText(body);
-
-                // Set the info view
-                String info = MessageUtils.formatDate(
-                        MessageUtils.shortFormatter, dateNum)
-                        + "\n"
-                        + MessageUtils.formatAddress(address);
-                String contactName = MessageUtils.getContactNameFromNumber(
-                        this, address);
-                if (!contactName.equals("Unknown")) {
-                    info += "\n" + contactName;
-                }
-                mInfoTextView.setText(info);
-
-                // Set the image view
-                if (mImageView != null && bitmap != null) {
-                    mImageView.setImageBitmap(bitmap);
+                    sb.append("  ").append(addr).append('\n');
                 }
+            }
+            sb.append('\n');
+            message.subTitle = sb.toString();
+
+            // The info view
+            String contactName = MessageUtils.getContactNameFromNumber(
+                    this, address);
+            if (!contactName.equals("Unknown")) {
+                message.info = info + "\n" + contactName;
+            }
+            return message;
+        } finally {
+            // We are through with the cursors
+            if (partCursor != null) partCursor.close();
+            if (cursor != null) cursor.close();
+        }
+    }
 
-                // DEBUG
-                // if (id.equals(new Integer(76).toString())) {
-                // SMSActivity.test(3, this.getClass(), this, cursor, id, mUri);
-                // SMSActivity.test(4, this.getClass(), this, null, id, mUri);
-                // }
+    /**
+     * Appends all the fields of a message and of its parts. Called on a
+     * worker thread when the fields are expanded.
+     *
+     * @param rowId The _id.
+     * @param sb    The StringBuilder to append to.
+     */
+    private void appendFields(long rowId, StringBuilder sb) {
+        sb.append("All Fields\n");
+        FieldDump.appendRow(getContentResolver(), mUri, rowId, sb);
+        sb.append("\n\nPart Data");
+        Cursor partCursor = null;
+        try {
+            partCursor = getContentResolver().query(MMS_PART_URI, null,
+                    "mid=" + rowId, null, null);
+            int nPart = 0;
+            if (partCursor != null && partCursor.moveToFirst()) {
+                do {
+                    sb.append("\n\nPart ").append(nPart++).append('\n');
+                    MessageUtils.appendColumnNamesAndValues(sb, partCursor);
+                } while (partCursor.moveToNext());
             }
-            // We are through with the cursor
-            cursor.close();
-        } catch (Exception ex) {
+        } finally {
+            if (partCursor != null) partCursor.close();
+        }
+    }
+
+    /**
+     * Redraws the view for a message.
+     *
+     * @param rowId   The _id.
+     * @param message The values or null if not found or on error.
+     * @param ex      The exception if there was an error, otherwise null.
+     */
+    private void showMessage(long rowId, Message message, Exception ex) {
+        if (ex != null) {
             String msg = "Error finding MMS message:\n" + ex.getMessage();
             Utils.excMsg(this, "Error finding MMS message", ex);
             String stackTrace = Utils.getStackTraceString(ex);
             Log.d(TAG,
-                    getClass().getSimpleName() + ".refresh " + ex.getMessage()
-                            + "\n" + stackTrace);
+                    getClass().getSimpleName() + ".showMessage "
+                            + ex.getMessage() + "\n" + stackTrace);
+            mBodyTextView.setTextColor(0xffff0000);
+            mBodyTextView.setText(msg);
+            mTitleTextView.setText("<Error>");
+            mFieldDump.clear();
+            clearImage();
+            return;
+        }
+        mBodyTextView.setTextColor(mBodyTextColors);
+        if (message == null) {
+            mTitleTextView.setText("<Error>");
+            mFieldDump.clear();
+            mBodyTextView.setText("Failed to find message " + rowId);
+            clearImage();
+            return;
+        }
 
-            if (mBodyTextView != null) {
-                mBodyTextView.setTextColor(0xffff0000);
-                mBodyTextView.setText(msg);
-            }
-            if (mTitleTextView != null) {
-                mTitleTextView.setText("<Error>");
-            }
-            if (mSubtitleTextView != null) {
-                mSubtitleTextView.setText("");
-            }
+        // Set the TextViews. The message may only be partly gotten, see
+        // loadMessage.
+        mTitleTextView.setText(message.title);
+        mBodyTextView.setText(message.body != null ? message.body
+                : "Loading...");
+        mInfoTextView.setText(message.info);
+        if (message.subTitle != null) {
+            mFieldDump.show(rowId, message.subTitle);
+        } else {
+            mFieldDump.clear();
+        }
+
+        // Set the image view. It is decoded to fit in the background.
+        if (message.imagePartId < 0) {
+            clearImage();
+        } else if (message.imagePartId != mImagePartId) {
+            mImagePartId = message.imagePartId;
+            MmsImageLoader.getInstance(this).load(message.imagePartId,
+                    mImageView);
+        }
+    }
+
+    /**
+     * Clears the image view.
+     */
+    private void clearImage() {
+        mImagePartId = -1;
+        MmsImageLoader.getInstance(this).clear(mImageView);
+    }
+
+    /**
+     * The values shown for a message. The body and subTitle are null until
+     * they have been gotten.
+     */
+    private static class Message {
+        private String title;
+        private String subTitle;
+        private String body;
+        private String info;
+        /**
+         * The id of the first image part or -1 if there is none.
+         */
+        private long imagePartId = -1;
+
+        /**
+         * @return A copy of the values so far, to be published while the
+         * rest are gotten.
+         */
+        private Message copy() {
+            Message message = new Message();
+            message.title = title;
+            message.subTitle = subTitle;
+            message.body = body;
+            message.info = info;
+            message.imagePartId = imagePartId;
+            return message;
         }
     }
 
@@ -26,6 +26,7 @@ import android.content.ContentValues;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.SharedPreferences;
+import android.content.res.ColorStateList;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
@@ -78,10 +79,21 @@ public class DisplaySMSActivity extends AppCompatActivity implements IConstants
 
     private TextView mTitleTextView;
     private TextView mSubtitleTextView;
+    private FieldDump mFieldDump;
     private TextView mBodyTextView;
     private TextView mInfoTextView;
     private Long mRowId;
 
+    /**
+     * The body text colors, restored after showing an error.
+     */
+    private ColorStateList mBodyTextColors;
+
+    /**
+     * Shows the messages in the list in place.
+     */
+    private DetailPager<Message> mPager;
+
     /**
      * Called when the activity is first created.
      */
@@ -104,9 +116,18 @@ public class DisplaySMSActivity extends AppCompatActivity implements IConstants
         mTitleTextView = findViewById(R.id.titleview);
         mSubtitleTextView = findViewById(R.id.subtitleview);
         mSubtitleTextView.setMovementMethod(new ScrollingMovementMethod());
+        mFieldDump = new FieldDump(mSubtitleTextView,
+                new FieldDump.Dumper() {
+                    @Override
+                    public void dump(long id, StringBuilder sb) {
+                        FieldDump.appendRow(getContentResolver(), mUri, id,
+                                sb);
+                    }
+                });
         mInfoTextView = findViewById(R.id.infoview);
         mBodyTextView = findViewById(R.id.bodyview);
         mBodyTextView.setMovementMethod(new ScrollingMovementMethod());
+        mBodyTextColors = mBodyTextView.getTextColors();
 
         // Swipe
         View.OnTouchListener listener =
@@ -151,8 +172,40 @@ public class DisplaySMSActivity extends AppCompatActivity implements IConstants
         // TODO Note this is inconsistent with what is done above
         mRowId = extras != null ? extras.getLong(COL_ID) : null;
 
-        // Call refresh to set the contents
-        refresh();
+        // Show the message and get its neighbors in the list
+        mPager = new DetailPager<>(this, NavigationList.TYPE_SMS,
+                mRowId == null ? -1 : mRowId,
+                new DetailPager.Loader<Message>() {
+                    @Override
+                    public Message load(long id) throws Exception {
+                        return loadMessage(id);
+                    }
+
+                    @Override
+                    public void showLoading(long id) {
+                        mRowId = id;
+                        mTitleTextView.setText(id + ": Loading...");
+                    }
+
+                    @Override
+                    public void show(long id, Message message,
+                                     Exception ex) {
+                        mRowId = id;
+                        showMessage(id, message, ex);
+                    }
+                });
+        mPager.show();
+    }
+
+    @Override
+    protected void onDestroy() {
+        if (mPager != null) {
+            mPager.cancel();
+        }
+        if (mFieldDump != null) {
+            mFieldDump.cancel();
+        }
+        super.onDestroy();
     }
 
     @Override
@@ -175,6 +228,9 @@ public class DisplaySMSActivity extends AppCompatActivity implements IConstants
             case R.id.fixtime:
                 fixTime();
                 return true;
+            case R.id.bulk_fixtime:
+                fixTimeRange();
+                return true;
             case R.id.dryrun:
                 toggleDryRun();
                 return true;
@@ -187,6 +243,10 @@ public class DisplaySMSActivity extends AppCompatActivity implements IConstants
             case R.id.cleartext:
                 saveToTextFile(true);
                 return true;
+            case R.id.all_fields:
+                item.setChecked(!item.isChecked());
+                mFieldDump.setExpanded(item.isChecked());
+                return true;
             case R.id.delete:
                 deleteMessage();
                 return true;
@@ -309,6 +369,81 @@ public class DisplaySMSActivity extends AppCompatActivity implements IConstants
         }
     }
 
+    /**
+     * Prompts the user for a range of messages, starting with the current
+     * one, and a time offset, then changes the time of all the messages in
+     * the range in the background. In dry run mode only the number of
+     * messages and the change for the first one are shown.
+     */
+    private void fixTimeRange() {
+        if (mRowId == null) return;
+        try {
+            String[] columns = {COL_DATE};
+            // Only get the row with mRowId
+            String selection = COL_ID + "=" + mRowId;
+            Cursor cursor = getContentResolver().query(mUri, columns, selection,
+                    null, null);
+            if (cursor == null || !cursor.moveToFirst()) {
+                if (cursor != null) cursor.close();
+                Utils.errMsg(this, "Did not find message");
+                return;
+            }
+            long curDate = cursor.getLong(0) * mDateMultiplier;
+            cursor.close();
+
+            final BulkFixTimeDialog dialog = new BulkFixTimeDialog(this,
+                    mLastTimeOffset, mRowId, curDate);
+            dialog.setTitle(R.string.bulkfixtime_dialog_title);
+            final Button okButton = dialog.getOkButton();
+            okButton.setOnClickListener(new OnClickListener() {
+                @Override
+                public void onClick(View v) {
+                    Integer offset = dialog.getTimeOffset();
+                    String rangeSelection =
+                            dialog.getSelection(mDateMultiplier);
+                    if (offset == null) {
+                        Utils.errMsg(DisplaySMSActivity.this,
+                                "Got invalid value for the time offset");
+                        return;
+                    }
+                    if (rangeSelection == null) {
+                        Utils.errMsg(DisplaySMSActivity.this,
+                                "Got invalid values for the range");
+                        return;
+                    }
+                    // Save this value as the default
+                    mLastTimeOffset = offset;
+                    dialog.dismiss();
+                    new BulkFixTimeTask(DisplaySMSActivity.this, mUri,
+                            rangeSelection, offset, mDateMultiplier,
+                            mDryRun) {
+                        @Override
+                        protected void onChanged(long[] ids, int count) {
+                            if (mPager != null) {
+                                mPager.reloadAll();
+                            }
+                        }
+                    }.execute();
+                }
+            });
+            final Button cancelButton = dialog.getCancelButton();
+            cancelButton.setOnClickListener(new OnClickListener() {
+                @Override
+                public void onClick(View v) {
+                    dialog.dismiss();
+                    // Save the current offset even if the user cancelled
+                    Integer offset = dialog.getTimeOffset();
+                    if (offset != null) {
+                        mLastTimeOffset = offset;
+                    }
+                }
+            });
+            dialog.show();
+        } catch (Exception ex) {
+            Utils.excMsg(this, "Error finding SMS message", ex);
+        }
+    }
+
     /**
      * Sets the result code to send back to the calling Activity. One of:
      * <ul>
@@ -319,8 +454,12 @@ public class DisplaySMSActivity extends AppCompatActivity implements IConstants
      * @param resultCode The result code to send.
      */
     private void navigate(int resultCode) {
-        setResult(resultCode);
-        finish();
+        if (mPager != null) {
+            mPager.navigate(resultCode);
+        } else {
+            setResult(resultCode);
+            finish();
+        }
     }
 
     /**
@@ -334,7 +473,13 @@ public class DisplaySMSActivity extends AppCompatActivity implements IConstants
             try {
                 // The following change the database
                 getContentResolver().delete(mUri, "_id = " + mRowId, null);
-                navigate(RESULT_NEXT);
+                if (mPager != null) {
+                    // Go on without the deleted message
+                    mPager.removeCurrent();
+                } else {
+                    setResult(RESULT_NEXT);
+                    finish();
+                }
             } catch (Exception ex) {
                 Utils.excMsg(this, "Problem deleting message", ex);
             }
@@ -563,111 +708,137 @@ public class DisplaySMSActivity extends AppCompatActivity implements IConstants
     }
 
     /**
-     * Gets a new cursor and redraws the view. Closes the cursor after it is
-     * done with it.
+     * Gets the message again and redraws the view.
      */
     private void refresh() {
+        if (mPager != null) {
+            mPager.reload();
+        }
+    }
+
+    /**
+     * Gets the values to show for a message. Called on a worker thread.
+     * Closes the cursor after it is done with it.
+     *
+     * @param rowId The _id.
+     * @return The values or null if not found.
+     */
+    private Message loadMessage(long rowId) {
+        Cursor cursor = null;
         try {
-            // Only get the row with mRowId
-            String selection = COL_ID + "=" + mRowId;
+            // Only get the row with rowId
+            String selection = COL_ID + "=" + rowId;
 
-            // First get the names of all the columns in the database
-            Cursor cursor = getContentResolver().query(mUri, null, selection,
-                    null, null);
-            String[] columns = cursor.getColumnNames();
-            cursor.close();
+            // Get the names of all the columns, which is cached for the
+            // process
+            String[] columns = ProviderSchema.getColumns(getContentResolver(),
+                    mUri);
 
             // Then get the columns for this row
             String sort = COL_DATE + " DESC";
-            cursor = getContentResolver().query(mUri, columns, selection, null,
-                    sort);
+            cursor = getContentResolver().query(mUri, columns,
+                    selection, null, sort);
             int indexId = cursor.getColumnIndex(COL_ID);
             int indexDate = cursor.getColumnIndex(COL_DATE);
             int indexAddress = cursor.getColumnIndex(COL_ADDRESS);
             int indexType = cursor.getColumnIndex(COL_TYPE);
             int indexBody = cursor.getColumnIndex(COL_BODY);
-            Log.d(TAG, this.getClass().getSimpleName() + ".refresh: "
-                    + " mRowId=" + mRowId + " mUri=" + mUri.toString());
+            Log.d(TAG, this.getClass().getSimpleName() + ".loadMessage: "
+                    + " rowId=" + rowId + " mUri=" + mUri.toString());
 
             // There should only be one row returned, the last will be the most
             // recent if more are returned owing to the sort above
             boolean found = cursor.moveToFirst();
             if (!found) {
-                mTitleTextView.setText("<Error>");
-                mSubtitleTextView.setText("");
-                mBodyTextView.setText("Failed to find message " + mRowId);
-            } else {
-                String id = cursor.getString(indexId);
-                long dateNum = -1L;
-                if (indexDate > -1) {
-                    dateNum = cursor.getLong(indexDate) * mDateMultiplier;
-                }
-                String address = "<Address NA>";
-                if (indexAddress > -1) {
-                    address = cursor.getString(indexAddress);
-                }
-                int type = -1;
-                if (indexType > -1) {
-                    type = cursor.getInt(indexType);
-                }
-                String body = "<Body NA>";
-                if (indexBody > -1) {
-                    body = cursor.getString(indexBody);
-                }
-                String title = id;
-                // Indicate if more than one found
-                if (cursor.getCount() > 1) {
-                    title += " [1/" + cursor.getCount() + "]";
-                }
-                title += ": " + MessageUtils.formatAddress(address) + "\n"
-                        + MessageUtils.formatDate(dateNum);
-                String subTitle = "";
-                Log.d(TAG, getClass().getSimpleName() + ".refresh" + " id="
-                        + id + " address=" + address + " dateNum=" + dateNum);
-
-                // Add all the fields in the database
-                subTitle += MessageUtils.getColumnNamesAndValues(cursor);
-
-                // Set the TextViews
-                mTitleTextView.setText(title);
-                mSubtitleTextView.setText(subTitle);
-                mBodyTextView.setText(body);
-
-                // Set the info view
-                String info = MessageUtils.formatDate(
-                        MessageUtils.shortFormatter, dateNum)
-                        + "\n"
-                        + MessageUtils.formatSmsType(type)
-                        + MessageUtils.formatAddress(address);
-                String contactName = MessageUtils.getContactNameFromNumber(
-                        this, address);
-                if (!contactName.equals("Unknown")) {
-                    info += "\n" + contactName;
-                }
-                mInfoTextView.setText(info);
-
-                // Debug
-                // if (id.equals(new Integer(76).toString())) {
-                // SMSActivity.test(3, this.getClass(), this, cursor, id, mUri);
-                // SMSActivity.test(4, this.getClass(), this, null, id, mUri);
-                // }
+                return null;
             }
-            // We are through with the cursor
-            cursor.close();
-        } catch (Exception ex) {
-            String msg = "Error finding SMS message:\n" + ex.getMessage();
-            Utils.excMsg(this, "Error finding SMS message", ex);
-            if (mBodyTextView != null) {
-                mBodyTextView.setTextColor(0xffff0000);
-                mBodyTextView.setText(msg);
+            String id = cursor.getString(indexId);
+            long dateNum = -1L;
+            if (indexDate > -1) {
+                dateNum = cursor.getLong(indexDate) * mDateMultiplier;
+            }
+            String address = "<Address NA>";
+            if (indexAddress > -1) {
+                address = cursor.getString(indexAddress);
             }
-            if (mTitleTextView != null) {
-                mTitleTextView.setText("<Error>");
+            int type = -1;
+            if (indexType > -1) {
+                type = cursor.getInt(indexType);
             }
-            if (mSubtitleTextView != null) {
-                mSubtitleTextView.setText("");
+            Message message = new Message();
+            message.body = "<Body NA>";
+            if (indexBody > -1) {
+                message.body = cursor.getString(indexBody);
             }
+            String title = id;
+            // Indicate if more than one found
+            if (cursor.getCount() > 1) {
+                title += " [1/" + cursor.getCount() + "]";
+            }
+            title += ": " + MessageUtils.formatAddress(address) + "\n"
+                    + MessageUtils.formatDate(dateNum);
+            message.title = title;
+            Log.d(TAG, getClass().getSimpleName() + ".loadMessage" + " id="
+                    + id + " address=" + address + " dateNum=" + dateNum);
+
+            // The info view
+            String info = MessageUtils.formatDate(
+                    MessageUtils.shortFormatter, dateNum)
+                    + "\n"
+                    + MessageUtils.formatSmsType(type)
+                    + MessageUtils.formatAddress(address);
+            String contactName = ContactNameCache.getInstance(
+                    this).getName(address);
+            if (!contactName.equals("Unknown")) {
+                info += "\n" + contactName;
+            }
+            message.info = info;
+            return message;
+        } finally {
+            // We are through with the cursor
+            if (cursor != null) cursor.close();
         }
     }
 
+    /**
+     * Redraws the view for a message.
+     *
+     * @param rowId   The _id.
+     * @param message The values or null if not found or on error.
+     * @param ex      The exception if there was an error, otherwise null.
+     */
+    private void showMessage(long rowId, Message message, Exception ex) {
+        if (ex != null) {
+            String msg = "Error finding SMS message:\n" + ex.getMessage();
+            Utils.excMsg(this, "Error finding SMS message", ex);
+            mBodyTextView.setTextColor(0xffff0000);
+            mBodyTextView.setText(msg);
+            mTitleTextView.setText("<Error>");
+            mFieldDump.clear();
+            return;
+        }
+        mBodyTextView.setTextColor(mBodyTextColors);
+        if (message == null) {
+            mTitleTextView.setText("<Error>");
+            mFieldDump.clear();
+            mBodyTextView.setText("Failed to find message " + rowId);
+            return;
+        }
+
+        // Set the TextViews
+        mTitleTextView.setText(message.title);
+        mFieldDump.show(rowId, null);
+        mBodyTextView.setText(message.body);
+        mInfoTextView.setText(message.info);
+    }
+
+    /**
+     * The values shown for a message.
+     */
+    private static class Message {
+        private String title;
+        private String body;
+        private String info;
+    }
+
 }
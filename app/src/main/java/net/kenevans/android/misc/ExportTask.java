@@ -0,0 +1,84 @@
+//Copyright (c) 2011 Kenneth Evans
+//
+//Permission is hereby granted, free of charge, to any person obtaining
+//a copy of this software and associated documentation files (the
+//"Software"), to deal in the Software without restriction, including
+//without limitation the rights to use, copy, modify, merge, publish,
+//distribute, sublicense, and/or sell copies of the Software, and to
+//permit persons to whom the Software is furnished to do so, subject to
+//the following conditions:
+//
+//The above copyright notice and this permission notice shall be included
+//in all copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+//EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+//MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+//IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+//CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+//TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+//SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+package net.kenevans.android.misc;
+
+import android.app.Activity;
+
+/**
+ * Base class for exports that run in the background. It shows a progress
+ * dialog with the number of rows written out of the total and a Cancel
+ * button. Subclasses do the writing in export and call publishRows as they
+ * go, checking isCancelled to stop early.
+ */
+public abstract class ExportTask extends ProgressTask {
+    /**
+     * The number of rows between progress updates.
+     */
+    private static final int PROGRESS_INTERVAL = 100;
+
+    /**
+     * Constructor.
+     *
+     * @param activity The activity.
+     * @param title    The title for the progress dialog.
+     */
+    protected ExportTask(Activity activity, String title) {
+        super(activity, title);
+    }
+
+    /**
+     * Does the export. Called on a worker thread.
+     *
+     * @return The message to show when done.
+     * @throws Exception On error.
+     */
+    protected abstract String export() throws Exception;
+
+    /**
+     * Reports progress, at most every PROGRESS_INTERVAL rows.
+     *
+     * @param rows  The number of rows written.
+     * @param total The total number of rows.
+     */
+    protected void publishRows(int rows, int total) {
+        if (rows % PROGRESS_INTERVAL == 0 || rows == total) {
+            publishProgress(rows, total);
+        }
+    }
+
+    @Override
+    protected String doWork() throws Exception {
+        return export();
+    }
+
+    @Override
+    protected String getErrorMessage() {
+        return "Error exporting";
+    }
+
+    @Override
+    protected String getCancelledMessage() {
+        return "Export cancelled. The file is incomplete.";
+    }
+
+}
@@ -0,0 +1,127 @@
+//Copyright (c) 2011 Kenneth Evans
+//
+//Permission is hereby granted, free of charge, to any person obtaining
+//a copy of this software and associated documentation files (the
+//"Software"), to deal in the Software without restriction, including
+//without limitation the rights to use, copy, modify, merge, publish,
+//distribute, sublicense, and/or sell copies of the Software, and to
+//permit persons to whom the Software is furnished to do so, subject to
+//the following conditions:
+//
+//The above copyright notice and this permission notice shall be included
+//in all copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+//EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+//MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+//IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+//CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+//TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+//SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+package net.kenevans.android.misc;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.Locale;
+
+/**
+ * Keeps the highest _id and date exported from a source so the next export
+ * can write only newer rows. The values are stored in SharedPreferences.
+ * The dates are the raw values from the provider, seconds for MMS and ms
+ * for the others. A row is newer if either its _id or its date is higher,
+ * so rows restored with old ids but new dates are not missed.
+ */
+public class ExportWatermarks implements IConstants {
+    static final String SOURCE_SMS = "sms";
+    static final String SOURCE_MMS = "mms";
+    static final String SOURCE_CALLS = "calls";
+
+    private static final String PREFS_NAME = "ExportWatermarks";
+
+    private final SharedPreferences mPrefs;
+    private final String mSource;
+    private final long mId;
+    private final long mDate;
+
+    /**
+     * The highest values seen during the current export. For a full export
+     * they start from nothing, so the stored values are replaced rather
+     * than only raised, for example when the ids have restarted after a
+     * restore.
+     */
+    private long mMaxId;
+    private long mMaxDate;
+
+    /**
+     * Constructor. Reads the stored values.
+     *
+     * @param context The context.
+     * @param source  The source, for example SOURCE_SMS.
+     * @param full    Whether the export writes all the rows rather than
+     *                only the newer ones.
+     */
+    ExportWatermarks(Context context, String source, boolean full) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME,
+                Context.MODE_PRIVATE);
+        mSource = source;
+        mId = mPrefs.getLong(source + ".id", -1L);
+        mDate = mPrefs.getLong(source + ".date", -1L);
+        mMaxId = full ? -1L : mId;
+        mMaxDate = full ? -1L : mDate;
+    }
+
+    /**
+     * @return If there are stored values from an earlier export.
+     */
+    boolean isSet() {
+        return mId >= 0;
+    }
+
+    /**
+     * Gets the selection for rows newer than the stored values.
+     *
+     * @return The selection or null if there are no stored values.
+     */
+    String getSelection() {
+        if (!isSet()) return null;
+        return String.format(Locale.US, "(%s>%d OR %s>%d)", COL_ID, mId,
+                COL_DATE, mDate);
+    }
+
+    /**
+     * Records a row that was exported.
+     *
+     * @param id   The _id.
+     * @param date The raw date.
+     */
+    void update(long id, long date) {
+        if (id > mMaxId) mMaxId = id;
+        if (date > mMaxDate) mMaxDate = date;
+    }
+
+    /**
+     * Stores the highest values seen. Call only when the export has
+     * finished.
+     */
+    void commit() {
+        mPrefs.edit().putLong(mSource + ".id", mMaxId)
+                .putLong(mSource + ".date", mMaxDate).apply();
+    }
+
+    /**
+     * Combines two selections with AND.
+     *
+     * @param selection1 The first selection, may be null.
+     * @param selection2 The second selection, may be null.
+     * @return The combined selection, null if both are null.
+     */
+    static String and(String selection1, String selection2) {
+        if (selection1 == null) return selection2;
+        if (selection2 == null) return selection1;
+        return "(" + selection1 + ") AND " + selection2;
+    }
+
+}
@@ -0,0 +1,210 @@
+//Copyright (c) 2011 Kenneth Evans
+//
+//Permission is hereby granted, free of charge, to any person obtaining
+//a copy of this software and associated documentation files (the
+//"Software"), to deal in the Software without restriction, including
+//without limitation the rights to use, copy, modify, merge, publish,
+//distribute, sublicense, and/or sell copies of the Software, and to
+//permit persons to whom the Software is furnished to do so, subject to
+//the following conditions:
+//
+//The above copyright notice and this permission notice shall be included
+//in all copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+//EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+//MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+//IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+//CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+//TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+//SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+package net.kenevans.android.misc;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.widget.TextView;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Manages the All Fields text for the item in a display activity. The text
+ * lists every column of the item and is rarely read, so it is only made
+ * when the user expands it, and then on a worker thread into a single
+ * StringBuilder. Until then the view only shows the header the activity
+ * gives it.
+ */
+public class FieldDump implements IConstants {
+    /**
+     * Used by the activity to make the text for an item.
+     */
+    interface Dumper {
+        /**
+         * Appends the fields for an item. Called on a worker thread.
+         *
+         * @param id The id.
+         * @param sb The StringBuilder to append to.
+         * @throws Exception On error.
+         */
+        void dump(long id, StringBuilder sb) throws Exception;
+    }
+
+    /**
+     * The initial capacity of the StringBuilder. Enough for a message with
+     * a few parts.
+     */
+    private static final int CAPACITY = 4096;
+
+    /**
+     * The worker thread shared by all the display activities.
+     */
+    private static final ExecutorService sExecutor =
+            Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "FieldDump");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private final TextView mView;
+    private final Dumper mDumper;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private boolean mExpanded;
+    private long mId = -1;
+    private String mHeader = "";
+
+    /**
+     * Incremented for each request, so that the text for an item that is no
+     * longer shown is discarded. Only used on the main thread.
+     */
+    private int mGeneration;
+    private volatile boolean mCancelled;
+
+    /**
+     * Constructor.
+     *
+     * @param view   The TextView for the text.
+     * @param dumper The Dumper.
+     */
+    FieldDump(TextView view, Dumper dumper) {
+        mView = view;
+        mDumper = dumper;
+    }
+
+    /**
+     * Sets whether the fields are shown.
+     *
+     * @param expanded Whether the fields are shown.
+     */
+    void setExpanded(boolean expanded) {
+        if (mExpanded == expanded) return;
+        mExpanded = expanded;
+        update();
+    }
+
+    /**
+     * Shows the text for an item.
+     *
+     * @param id     The id.
+     * @param header Text that is shown before the fields, whether they are
+     *               expanded or not. May be null.
+     */
+    void show(long id, String header) {
+        mId = id;
+        mHeader = header == null ? "" : header;
+        update();
+    }
+
+    /**
+     * Clears the text, for example when the item is not found.
+     */
+    void clear() {
+        show(-1, null);
+    }
+
+    /**
+     * Stops making the text. Text still being made is discarded.
+     */
+    void cancel() {
+        mCancelled = true;
+    }
+
+    /**
+     * Sets the view for the current item, getting the fields on the worker
+     * thread if they are expanded.
+     */
+    private void update() {
+        final int generation = ++mGeneration;
+        final long id = mId;
+        final String header = mHeader;
+        if (!mExpanded || id < 0) {
+            mView.setText(header);
+            return;
+        }
+        mView.setText(header + "Loading...");
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (mCancelled) return;
+                StringBuilder sb = new StringBuilder(header.length()
+                        + CAPACITY);
+                sb.append(header);
+                try {
+                    mDumper.dump(id, sb);
+                } catch (Exception ex) {
+                    Log.d(TAG, FieldDump.class.getSimpleName()
+                            + ": Error getting fields for " + id, ex);
+                    sb.setLength(header.length());
+                    sb.append("Error getting fields: ")
+                            .append(ex.getMessage());
+                }
+                final String text = sb.toString();
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!mCancelled && generation == mGeneration) {
+                            mView.setText(text);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Appends the fields of the row with the given id, using all the columns
+     * of the provider.
+     *
+     * @param resolver The ContentResolver.
+     * @param uri      The Uri of the provider.
+     * @param id       The _id.
+     * @param sb       The StringBuilder to append to.
+     */
+    static void appendRow(ContentResolver resolver, Uri uri, long id,
+                          StringBuilder sb) {
+        Cursor cursor = null;
+        try {
+            cursor = resolver.query(uri,
+                    ProviderSchema.getColumns(resolver, uri),
+                    COL_ID + "=" + id, null, null);
+            if (cursor != null && cursor.moveToFirst()) {
+                MessageUtils.appendColumnNamesAndValues(sb, cursor);
+            } else {
+                sb.append("Not found");
+            }
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+}
@@ -60,6 +60,10 @@ public interface IConstants {
      * The key for the URI used.
      */
     String URI_KEY = "URI";
+    /**
+     * The key for the position of the item in the NavigationList.
+     */
+    String NAV_POSITION_KEY = "NavPosition";
     /**
      * The key for the date multiplier used.
      */
@@ -121,6 +125,22 @@ public interface IConstants {
      * MMS database column for the text.
      */
     String COL_TEXT = "text";
+    /**
+     * MMS part database column for the message id.
+     */
+    String COL_MID = "mid";
+    /**
+     * MMS part database column for the content location (file name).
+     */
+    String COL_CL = "cl";
+    /**
+     * MMS database column for the message box (inbox, sent, etc.).
+     */
+    String COL_MSG_BOX = "msg_box";
+    /**
+     * MMS database column for the subject.
+     */
+    String COL_SUB = "sub";
     /**
      * MMS database column for the message_type.
      */
@@ -229,6 +249,10 @@ public interface IConstants {
      * Result code for creating a document.
      */
     int CREATE_DOCUMENT = 10;
+    /**
+     * Result code for choosing a folder with ACTION_OPEN_DOCUMENT_TREE.
+     */
+    int OPEN_DOCUMENT_TREE = 11;
     /**
      * Result code for DISPLAY_MESSAGE indicating the previous message.
      */
@@ -0,0 +1,126 @@
+//Copyright (c) 2011 Kenneth Evans
+//
+//Permission is hereby granted, free of charge, to any person obtaining
+//a copy of this software and associated documentation files (the
+//"Software"), to deal in the Software without restriction, including
+//without limitation the rights to use, copy, modify, merge, publish,
+//distribute, sublicense, and/or sell copies of the Software, and to
+//permit persons to whom the Software is furnished to do so, subject to
+//the following conditions:
+//
+//The above copyright notice and this permission notice shall be included
+//in all copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+//EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+//MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+//IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+//CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+//TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+//SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+package net.kenevans.android.misc;
+
+import android.util.SparseBooleanArray;
+import android.view.ActionMode;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.AbsListView;
+import android.widget.ListView;
+
+/**
+ * Lets the user select rows of a list, starting with a long press, and
+ * delete them together from the contextual action bar. The ids of the
+ * selected rows are gotten from the callback when Delete is chosen.
+ */
+public class ListSelectionMode implements AbsListView.MultiChoiceModeListener,
+        IConstants {
+    /**
+     * Used by the activity to get the ids and delete the rows.
+     */
+    interface Callback {
+        /**
+         * @param position The list position.
+         * @return The _id of the row or -1 if not found.
+         */
+        long getRowId(int position);
+
+        /**
+         * Deletes the rows.
+         *
+         * @param ids   The ids of the rows.
+         * @param count The number of ids to use.
+         */
+        void deleteRows(long[] ids, int count);
+    }
+
+    private final ListView mListView;
+    private final Callback mCallback;
+
+    /**
+     * Constructor.
+     *
+     * @param listView The ListView.
+     * @param callback The Callback.
+     */
+    private ListSelectionMode(ListView listView, Callback callback) {
+        mListView = listView;
+        mCallback = callback;
+    }
+
+    /**
+     * Lets the user select rows of the ListView.
+     *
+     * @param listView The ListView.
+     * @param callback The Callback.
+     */
+    static void install(ListView listView, Callback callback) {
+        listView.setChoiceMode(ListView.CHOICE_MODE_MULTIPLE_MODAL);
+        listView.setMultiChoiceModeListener(new ListSelectionMode(listView,
+                callback));
+    }
+
+    @Override
+    public void onItemCheckedStateChanged(ActionMode mode, int position,
+                                          long id, boolean checked) {
+        mode.setTitle(mListView.getCheckedItemCount() + " selected");
+    }
+
+    @Override
+    public boolean onCreateActionMode(ActionMode mode, Menu menu) {
+        mode.getMenuInflater().inflate(R.menu.listselectionmenu, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onPrepareActionMode(ActionMode mode, Menu menu) {
+        return false;
+    }
+
+    @Override
+    public boolean onActionItemClicked(ActionMode mode, MenuItem item) {
+        if (item.getItemId() != R.id.delete) return false;
+        SparseBooleanArray checked = mListView.getCheckedItemPositions();
+        long[] ids = new long[checked == null ? 0 : checked.size()];
+        int count = 0;
+        long id;
+        for (int i = 0; i < ids.length; i++) {
+            if (!checked.valueAt(i)) continue;
+            id = mCallback.getRowId(checked.keyAt(i));
+            if (id >= 0) {
+                ids[count++] = id;
+            }
+        }
+        mode.finish();
+        if (count > 0) {
+            mCallback.deleteRows(ids, count);
+        }
+        return true;
+    }
+
+    @Override
+    public void onDestroyActionMode(ActionMode mode) {
+    }
+
+}
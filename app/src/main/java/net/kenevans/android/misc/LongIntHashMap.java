@@ -0,0 +1,152 @@
+//Copyright (c) 2011 Kenneth Evans
+//
+//Permission is hereby granted, free of charge, to any person obtaining
+//a copy of this software and associated documentation files (the
+//"Software"), to deal in the Software without restriction, including
+//without limitation the rights to use, copy, modify, merge, publish,
+//distribute, sublicense, and/or sell copies of the Software, and to
+//permit persons to whom the Software is furnished to do so, subject to
+//the following conditions:
+//
+//The above copyright notice and this permission notice shall be included
+//in all copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+//EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+//MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+//IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+//CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+//TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+//SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+package net.kenevans.android.misc;
+
+import java.util.Arrays;
+
+/**
+ * Hash map from long keys to int values using open addressing with linear
+ * probing. Unlike a HashMap&lt;Long, Integer&gt;, it does not box the keys or
+ * values or allocate an entry per mapping. Long.MIN_VALUE is reserved and
+ * cannot be used as a key. It is not synchronized.
+ */
+public class LongIntHashMap {
+    /**
+     * Marks an unused slot.
+     */
+    private static final long FREE = Long.MIN_VALUE;
+
+    private long[] mKeys;
+    private int[] mValues;
+    private int mSize;
+    /**
+     * The size at which the arrays are doubled, 3/4 of the capacity.
+     */
+    private int mThreshold;
+
+    /**
+     * Constructor.
+     *
+     * @param expectedSize The number of mappings expected.
+     */
+    public LongIntHashMap(int expectedSize) {
+        int capacity = 8;
+        while (capacity * 3 / 4 <= expectedSize) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        mKeys = new long[capacity];
+        Arrays.fill(mKeys, FREE);
+        mValues = new int[capacity];
+        mThreshold = capacity * 3 / 4;
+    }
+
+    /**
+     * Mixes the bits of the key so nearby keys spread over the table.
+     */
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Gets the slot holding the key or the free slot where it would go.
+     */
+    private int slot(long key) {
+        int mask = mKeys.length - 1;
+        int i = hash(key) & mask;
+        while (mKeys[i] != FREE && mKeys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /**
+     * Gets the value for the key.
+     *
+     * @param key          The key.
+     * @param missingValue The value to return if there is no mapping.
+     * @return The value or missingValue.
+     */
+    public int get(long key, int missingValue) {
+        if (key == FREE) {
+            return missingValue;
+        }
+        int i = slot(key);
+        return mKeys[i] == FREE ? missingValue : mValues[i];
+    }
+
+    /**
+     * @param key The key.
+     * @return If there is a mapping for the key.
+     */
+    public boolean containsKey(long key) {
+        return key != FREE && mKeys[slot(key)] != FREE;
+    }
+
+    /**
+     * Sets the value for the key, replacing any existing value.
+     *
+     * @param key   The key.
+     * @param value The value.
+     */
+    public void put(long key, int value) {
+        if (key == FREE) {
+            throw new IllegalArgumentException("Invalid key: " + key);
+        }
+        int i = slot(key);
+        if (mKeys[i] == FREE) {
+            if (mSize >= mThreshold) {
+                rehash(mKeys.length << 1);
+                i = slot(key);
+            }
+            mKeys[i] = key;
+            mSize++;
+        }
+        mValues[i] = value;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = mKeys;
+        int[] oldValues = mValues;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                int j = slot(oldKeys[i]);
+                mKeys[j] = oldKeys[i];
+                mValues[j] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * @return The number of mappings.
+     */
+    public int size() {
+        return mSize;
+    }
+
+}
@@ -40,8 +40,10 @@ import android.widget.ListView;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 import androidx.appcompat.app.AppCompatActivity;
 
@@ -80,6 +82,13 @@ public class MMSActivity extends AppCompatActivity implements IConstants {
      */
     private static final Long DATE_MULTIPLIER = 1000L;
 
+    /**
+     * The number of rows whose values are gotten together when one of them
+     * is needed. This is smaller than for the other lists since the
+     * addresses may take a query per row.
+     */
+    private static final int PAGE_SIZE = 32;
+
     /**
      * Enum to specify the sort order.
      */
@@ -98,6 +107,11 @@ public class MMSActivity extends AppCompatActivity implements IConstants {
     private Order mSortOrder = Order.TIME;
 
     private CustomListAdapter mListAdapter;
+
+    /**
+     * Gets the row values for mListAdapter in the background.
+     */
+    private RowBinder mRowBinder;
     private ListView mListView;
 
     @Override
@@ -115,12 +129,31 @@ public class MMSActivity extends AppCompatActivity implements IConstants {
 
         // Set fast scroll
         mListView.setFastScrollEnabled(true);
+
+        // Let the user select messages to delete with a long press
+        ListSelectionMode.install(mListView, new ListSelectionMode.Callback() {
+            @Override
+            public long getRowId(int position) {
+                return mListAdapter == null ? -1
+                        : mListAdapter.getRowId(position);
+            }
+
+            @Override
+            public void deleteRows(long[] ids, int count) {
+                deleteMessages(MessageUtils.inSelection(COL_ID, ids, count));
+            }
+        });
+
+        // Start building the contact index while the list is loading
+        ContactIndex.prefetch(this);
     }
 
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         MenuInflater inflater = getMenuInflater();
         inflater.inflate(R.menu.smsmenu, menu);
+        // The addresses are in another table
+        menu.findItem(R.id.delete_from_address).setVisible(false);
         return true;
     }
 
@@ -142,12 +175,12 @@ public class MMSActivity extends AppCompatActivity implements IConstants {
             id) {
         Log.d(TAG, this.getClass().getSimpleName() + ": onListItemClick: " +
                 "position=" + position + " id=" + id);
-        Data data = mListAdapter.getData(position);
-        if (data == null) return;
-        Log.d(TAG, "data: id=" + data.getId() + " " + data.getAddress());
+        long dataId = mListAdapter.getRowId(position);
+        if (dataId < 0) return;
+        Log.d(TAG, "data: id=" + dataId);
         // Save the position when starting the activity
         mCurrentPosition = position;
-        mCurrentId = data.getId();
+        mCurrentId = dataId;
         mIncrement = 0;
         displayMessage();
     }
@@ -162,6 +195,12 @@ public class MMSActivity extends AppCompatActivity implements IConstants {
                 + " resultCode=" + resultCode + " mCurrentPosition="
                 + mCurrentPosition);
         if (requestCode == DISPLAY_MESSAGE) {
+            // The display activity may have moved through the list itself
+            if (intent != null && intent.hasExtra(NAV_POSITION_KEY)) {
+                mCurrentPosition = intent.getIntExtra(NAV_POSITION_KEY,
+                        mCurrentPosition);
+                mCurrentId = intent.getLongExtra(COL_ID, mCurrentId);
+            }
             mIncrement = 0;
             // Note that earlier items are at higher positions in the list
             if (resultCode == RESULT_PREV) {
@@ -192,9 +231,19 @@ public class MMSActivity extends AppCompatActivity implements IConstants {
                 + ".onPause: mCurrentPosition=" + mCurrentPosition);
         Log.d(TAG, this.getClass().getSimpleName() + ".onPause: mCurrentId="
                 + mCurrentId);
+        Log.d(TAG, this.getClass().getSimpleName() + ".onPause: names "
+                + ContactNameCache.getInstance(this).getStats());
         super.onPause();
     }
 
+    @Override
+    protected void onDestroy() {
+        if (mRowBinder != null) {
+            mRowBinder.cancel();
+        }
+        super.onDestroy();
+    }
+
     /**
      * Bring up a dialog to change the sort order.
      */
@@ -215,6 +264,24 @@ public class MMSActivity extends AppCompatActivity implements IConstants {
         alert.show();
     }
 
+    /**
+     * Deletes the messages matching the selection after asking the user,
+     * then removes them from the list.
+     *
+     * @param selection The selection.
+     */
+    private void deleteMessages(String selection) {
+        BulkDeleteTask.start(this, "messages", URI, selection,
+                new BulkDeleteTask.Listener() {
+                    @Override
+                    public void onDeleted(long[] ids, int count) {
+                        if (mListAdapter != null) {
+                            mListAdapter.removeRows(ids, count);
+                        }
+                    }
+                });
+    }
+
     /**
      * Displays the message at the current position plus the current mIncrement,
      * adjusting for being within range. Resets the mIncrement to 0 after.
@@ -238,13 +305,13 @@ public class MMSActivity extends AppCompatActivity implements IConstants {
             if (mCurrentPosition > count - 1 || mCurrentPosition < 0) {
                 changed = true;
             } else {
-                Data data = mListAdapter.getData(mCurrentPosition);
-                if (data == null) {
+                long dataId = mListAdapter.getRowId(mCurrentPosition);
+                if (dataId < 0) {
                     Utils.errMsg(this, "Error displaying message: Missing " +
                             "data for position " + mCurrentPosition);
                     return;
                 }
-                id = data.getId();
+                id = dataId;
                 if (id != mCurrentId) {
                     changed = true;
                 }
@@ -254,18 +321,9 @@ public class MMSActivity extends AppCompatActivity implements IConstants {
                     + ".displayMessage: position=" + mCurrentPosition + " id="
                     + id + " changed=" + changed);
             if (changed) {
-                for (int i = 0; i < count; i++) {
-                    Data data = mListAdapter.getData(mCurrentPosition);
-                    if (data == null) {
-                        Utils.errMsg(this, "Error displaying message: Missing" +
-                                " " + "data for position " + mCurrentPosition);
-                        return;
-                    }
-                    id = data.getId();
-                    if (id == mCurrentId) {
-                        mCurrentPosition = i;
-                        break;
-                    }
+                int position = mListAdapter.getPosition(mCurrentId);
+                if (position >= 0) {
+                    mCurrentPosition = position;
                 }
             }
             // mCurrentPosition may still be invalid, check it is in range
@@ -295,19 +353,21 @@ public class MMSActivity extends AppCompatActivity implements IConstants {
             }
 
             // Request the new message
-            Data data = mListAdapter.getData(mCurrentPosition);
-            if (data == null) {
+            long dataId = mListAdapter.getRowId(mCurrentPosition);
+            if (dataId < 0) {
                 Utils.errMsg(this, "Error displaying message: Missing " +
                         "data for position " + mCurrentPosition);
                 return;
             }
-            mCurrentId = data.getId();
+            mCurrentId = dataId;
             Intent i = new Intent(this, DisplayMMSActivity.class);
             i.putExtra(COL_ID, mCurrentId);
             i.putExtra(URI_KEY, URI.toString());
             Log.d(TAG, this.getClass().getSimpleName()
                     + ".displayMessage: position=" + mCurrentPosition
                     + " mCurrentId=" + mCurrentId);
+            i.putExtra(NAV_POSITION_KEY, mCurrentPosition);
+            NavigationList.setCurrent(mListAdapter.getNavigationList());
             startActivityForResult(i, DISPLAY_MESSAGE);
         } catch (Exception ex) {
             Utils.excMsg(this, "Error displaying message", ex);
@@ -322,52 +382,35 @@ public class MMSActivity extends AppCompatActivity implements IConstants {
      */
     private void refresh() {
         // Initialize the list view mListAdapter
+        if (mRowBinder != null) {
+            mRowBinder.cancel();
+        }
         mListAdapter = new CustomListAdapter();
+        mRowBinder = new RowBinder(mListView, mListAdapter,
+                RowBinder.DEFAULT_PREFETCH_WINDOW);
         mListView.setAdapter(mListAdapter);
     }
 
     /**
-     * Class to manage the data needed for an item in the ListView.
+     * The values kept in the RowStore for a row, besides the id, date, and
+     * type.
      */
-    private static class Data {
-        private final long id;
-        private String address;
-        private long dateNum = -1;
-        private boolean invalid = true;
-
-        private Data(long id) {
-            this.id = id;
-        }
-
-        private void setValues(String address, long dateNum) {
-            this.address = address;
-            this.dateNum = dateNum;
-            invalid = false;
-        }
-
-        private long getId() {
-            return id;
-        }
-
-        private String getAddress() {
-            return address;
-        }
-
-        private long getDateNum() {
-            return dateNum;
-        }
-
-        private boolean isInvalid() {
-            return invalid;
-        }
-    }
+    private static final int FIELD_ADDRESS = 0;
+    private static final int FIELD_CONTACT_NAME = 1;
+    private static final int N_FIELDS = 2;
 
     /**
      * ListView adapter class for this activity.
      */
-    private class CustomListAdapter extends BaseAdapter {
+    private class CustomListAdapter extends BaseAdapter implements
+            RowBinder.Loader, PagedRowLoader.Callback {
         private String[] mDesiredColumns;
-        private Data[] mDataArray;
+        private RowStore mRows;
+        private PagedRowLoader mPager;
+        /**
+         * The positions found in the page being loaded.
+         */
+        private final Set<Integer> mPageFound = new HashSet<>();
         private final LayoutInflater mInflator;
         private int mIndexId;
         private int mIndexDate;
@@ -381,30 +424,11 @@ public class MMSActivity extends AppCompatActivity implements IConstants {
             Cursor cursor = null;
             int nItems = 0;
             try {
-                // First get the names of all the columns in the database
-                String[] availableColumns;
-                cursor = getContentResolver().query(URI, null, null,
-                        null, null);
-                if (cursor == null) {
-                    availableColumns = new String[0];
-                } else {
-                    availableColumns = cursor.getColumnNames();
-                    cursor.close();
-                }
-
-                // Make an array of the desired ones that are available
+                // Get the desired columns that are available, which is cached
+                // for the process
                 String[] desiredColumns = {COL_ID, COL_DATE};
-                ArrayList<String> list = new ArrayList<>();
-                for (String col : desiredColumns) {
-                    for (String col1 : availableColumns) {
-                        if (col.equals(col1)) {
-                            list.add(col);
-                            break;
-                        }
-                    }
-                }
-                mDesiredColumns = new String[list.size()];
-                list.toArray(mDesiredColumns);
+                mDesiredColumns = ProviderSchema.getAvailableColumns(
+                        getContentResolver(), URI, desiredColumns);
 
                 // Get the available columns from all rows
                 cursor = getContentResolver().query(URI, mDesiredColumns,
@@ -420,7 +444,7 @@ public class MMSActivity extends AppCompatActivity implements IConstants {
                 mIndexDate = cursor.getColumnIndex(COL_DATE);
 
                 int count = cursor.getCount();
-                mDataArray = new Data[count];
+                mRows = new RowStore(count, N_FIELDS);
 
                 if (count <= 0) {
                     Utils.infoMsg(MMSActivity.this, "No items in database");
@@ -429,12 +453,20 @@ public class MMSActivity extends AppCompatActivity implements IConstants {
                     if (cursor.moveToFirst()) {
                         while (!cursor.isAfterLast()) {
                             long id = cursor.getLong(mIndexId);
-                            mDataArray[nItems] = new Data(id);
+                            long dateNum = -1L;
+                            if (mIndexDate > -1) {
+                                dateNum = cursor.getLong(mIndexDate) *
+                                        DATE_MULTIPLIER;
+                            }
+                            mRows.add(id, dateNum, 0);
                             nItems++;
                             cursor.moveToNext();
                         }
                     }
                 }
+                mPager = new PagedRowLoader(getContentResolver(), URI,
+                        mDesiredColumns, count, PAGE_SIZE,
+                        PagedRowLoader.DEFAULT_MAX_PAGES, this);
             } catch (Exception ex) {
                 Utils.excMsg(MMSActivity.this,
                         "ListAdapter: Error getting data", ex);
@@ -452,24 +484,111 @@ public class MMSActivity extends AppCompatActivity implements IConstants {
             Log.d(TAG, "Data list created with " + nItems + " items");
         }
 
-        private Data getData(int i) {
-            if (mDataArray == null || i < 0 || i >= mDataArray.length) {
-                return null;
+        @Override
+        public boolean isLoaded(int i) {
+            return mRows == null || mRows.isLoaded(i);
+        }
+
+        @Override
+        public void load(int i) {
+            if (mPager != null) {
+                mPager.load(i);
+            }
+        }
+
+        /**
+         * Removes rows that have been deleted from the list, keeping the
+         * rest without querying for them again.
+         *
+         * @param ids   The ids of the rows.
+         * @param count The number of ids to use.
+         */
+        private void removeRows(long[] ids, int count) {
+            if (mRows == null || mPager == null) return;
+            synchronized (mPager) {
+                mRows.remove(ids, null, count);
+                mPager.reset(mRows.size());
+            }
+            notifyDataSetChanged();
+        }
+
+        /**
+         * @return The ids of the rows in the list.
+         */
+        private NavigationList getNavigationList() {
+            return new NavigationList(mRows == null ? new long[0]
+                    : mRows.copyIds(), null);
+        }
+
+        @Override
+        public long getRowId(int position) {
+            return mRows == null ? -1 : mRows.getId(position);
+        }
+
+        /**
+         * @param id The _id.
+         * @return The position of the row with the given id or -1 if it is
+         * not in the list.
+         */
+        private int getPosition(long id) {
+            return mRows == null ? -1 : mRows.getPosition(id);
+        }
+
+        @Override
+        public void onRowLoaded(int position, Cursor cursor) {
+            if (cursor != null) {
+                mPageFound.add(position);
             }
-            return mDataArray[i];
+        }
+
+        /**
+         * Gets the addresses for the page from the addr table, using one
+         * query for the page rather than two per row. Rows that were not
+         * found are marked valid with no values.
+         */
+        @Override
+        public void onPageLoaded(int start, int end) {
+            long[] ids = new long[end - start];
+            int nIds = 0;
+            for (int j = start; j < end; j++) {
+                if (mPageFound.contains(j)) {
+                    ids[nIds++] = mRows.getId(j);
+                }
+            }
+            // We need to get the addresses from another provider
+            Map<Long, String[]> addresses =
+                    MessageUtils.getMmsAddresses(MMSActivity.this, ids, nIds);
+            ContactNameCache names =
+                    ContactNameCache.getInstance(MMSActivity.this);
+            String address;
+            for (int j = start; j < end; j++) {
+                if (mPageFound.contains(j)) {
+                    address = MessageUtils.formatMmsListAddress(
+                            addresses.get(mRows.getId(j)));
+                    mRows.setLoaded(j, address, names.getName(address));
+                } else {
+                    mRows.setLoaded(j);
+                }
+            }
+            mPageFound.clear();
+        }
+
+        @Override
+        public void onPageEvicted(int start, int end) {
+            mRows.unload(start, end);
         }
 
         @Override
         public int getCount() {
-            return mDataArray == null ? 0 : mDataArray.length;
+            return mRows == null ? 0 : mRows.size();
         }
 
         @Override
         public Object getItem(int i) {
-            if (mDataArray == null || i < 0 || i >= mDataArray.length) {
+            if (i < 0 || i >= getCount()) {
                 return null;
             }
-            return mDataArray[i];
+            return mRows.getId(i);
         }
 
         @Override
@@ -497,67 +616,29 @@ public class MMSActivity extends AppCompatActivity implements IConstants {
             String subTitleText;
 
             // Check if index is OK.
-            if (i < 0 || i >= mDataArray.length) {
+            if (i < 0 || i >= getCount()) {
                 titleText = "Error";
                 subTitleText = "Bad view index" + i + " (Should be 0 to "
-                        + mDataArray.length + ")";
-                viewHolder.title.setText(titleText);
-                viewHolder.subTitle.setText(subTitleText);
-                return view;
-            }
-            Data data = mDataArray[i];
-            if (data == null) {
-                titleText = "Error";
-                subTitleText = "Cannot find data for i=" + i;
+                        + getCount() + ")";
                 viewHolder.title.setText(titleText);
                 viewHolder.subTitle.setText(subTitleText);
                 return view;
             }
+            long id = mRows.getId(i);
 
-            // Only calculate what is needed (i.e visible)
-            // Speeds up tremendously over calculating everything before
-            if (data.isInvalid()) {
-                // Get the values for this item
-                Cursor cursor = getContentResolver().query(URI,
-                        mDesiredColumns,
-                        COL_ID + "=" + mDataArray[i].getId(), null, mSortOrder
-                                .sqlCommand);
-                if (cursor != null && cursor.moveToFirst()) {
-                    String id = cursor.getString(mIndexId);
-                    // We need to get the address from another provider
-                    String address = "<Address NA>";
-                    // Determine if From or To
-                    String fromAddr =
-                            MessageUtils.getMmsAddress(MMSActivity.this, 137,
-                                    id);
-                    String toAddr =
-                            MessageUtils.getMmsAddress(MMSActivity.this, 151,
-                                    id);
-                    if (fromAddr != null) {
-                        if (!fromAddr.equals("insert-address-token")) {
-                            address = "From: " + fromAddr;
-                        } else {
-                            // Is outgoing
-                            if (toAddr != null) {
-                                address = "To: " + toAddr;
-                            }
-                        }
-                    }
-                    long dateNum = -1L;
-                    if (mIndexDate > -1) {
-                        dateNum = cursor.getLong(mIndexDate) *
-                                DATE_MULTIPLIER;
-                    }
-                    data.setValues(address, dateNum);
-                }
-                if (cursor != null) cursor.close();
+            // Only calculate what is needed (i.e visible), in the background
+            if (!mRowBinder.bind(view, i)) {
+                viewHolder.title.setText(String.format(Locale.US, "%d",
+                        id) + ": Loading...");
+                viewHolder.subTitle.setText("");
+                return view;
             }
 
-            titleText = String.format(Locale.US, "%d", data.getId()) +
-                    ": " + MessageUtils.formatAddress(data.getAddress());
-            subTitleText = formatDate(data.getDateNum());
-            String contactName = MessageUtils.getContactNameFromNumber(
-                    MMSActivity.this, data.getAddress());
+            titleText = String.format(Locale.US, "%d", id) +
+                    ": " + MessageUtils.formatAddress(
+                    mRows.getString(i, FIELD_ADDRESS));
+            subTitleText = formatDate(mRows.getDate(i));
+            String contactName = mRows.getString(i, FIELD_CONTACT_NAME);
             if (contactName != null && !contactName.equals("Unknown")) {
                 titleText += " " + contactName;
             }
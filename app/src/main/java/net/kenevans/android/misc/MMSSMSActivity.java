@@ -18,13 +18,15 @@ import android.widget.ListView;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
-import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 
 /**
@@ -43,6 +45,12 @@ public class MMSSMSActivity extends AppCompatActivity implements IConstants {
      */
     private long mCurrentId;
 
+    /**
+     * The MessageType ordinal for mCurrentId, since an SMS and an MMS
+     * message may have the same id.
+     */
+    private int mCurrentType;
+
     /**
      * The mIncrement for displaying the next message.
      */
@@ -55,6 +63,12 @@ public class MMSSMSActivity extends AppCompatActivity implements IConstants {
      */
     private static final Long DATE_MULTIPLIER = 1000L;
 
+    /**
+     * The number of rows whose values are gotten together when one of them
+     * is needed.
+     */
+    private static final int PAGE_SIZE = 32;
+
     /**
      * Enum to specify message type
      */
@@ -78,12 +92,40 @@ public class MMSSMSActivity extends AppCompatActivity implements IConstants {
     private Order mSortOrder = Order.TIME;
 
     private CustomListAdapter mListAdapter;
+
+    /**
+     * Gets the row values for mListAdapter in the background.
+     */
+    private RowBinder mRowBinder;
     private ListView mListView;
 
+    /**
+     * Template for the name of the archive file.
+     */
+    private static final String ARCHIVE_FILE_NAME = "Messages.%s.msgarch";
+
+    /**
+     * Whether the archive being requested is to be compressed.
+     */
+    private boolean mArchiveCompress;
+
+    /**
+     * Whether the archive being requested is to have only the messages newer
+     * than the last export.
+     */
+    private boolean mArchiveIncremental;
+
+    /**
+     * The thread_id of the conversation to show, or -1 for all messages. Set
+     * from the intent.
+     */
+    private long mThreadId = -1;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.list_view);
+        mThreadId = getIntent().getLongExtra(COL_THREAD_ID, -1);
         mListView = findViewById(R.id.mainListView);
         mListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
             @Override
@@ -95,12 +137,52 @@ public class MMSSMSActivity extends AppCompatActivity implements IConstants {
 
         // Set fast scroll
         mListView.setFastScrollEnabled(true);
+
+        // Let the user select messages to delete with a long press. An SMS
+        // and an MMS message may have the same id, so the ids passed
+        // through ListSelectionMode are the _id times 2 plus the
+        // MessageType ordinal.
+        ListSelectionMode.install(mListView, new ListSelectionMode.Callback() {
+            @Override
+            public long getRowId(int position) {
+                if (mListAdapter == null) return -1;
+                long id = mListAdapter.getRowId(position);
+                MessageType type = mListAdapter.getRowType(position);
+                return id < 0 || type == null ? -1
+                        : 2 * id + type.ordinal();
+            }
+
+            @Override
+            public void deleteRows(long[] ids, int count) {
+                long[] smsIds = new long[count];
+                long[] mmsIds = new long[count];
+                int nSms = 0;
+                int nMms = 0;
+                for (int i = 0; i < count; i++) {
+                    if (MESSAGE_TYPES[(int) (ids[i] & 1)]
+                            == MessageType.SMS) {
+                        smsIds[nSms++] = ids[i] >> 1;
+                    } else {
+                        mmsIds[nMms++] = ids[i] >> 1;
+                    }
+                }
+                if (nSms > 0) {
+                    deleteMessages(MessageType.SMS, smsIds, nSms);
+                }
+                if (nMms > 0) {
+                    deleteMessages(MessageType.MMS, mmsIds, nMms);
+                }
+            }
+        });
+
+        // Start building the contact index while the list is loading
+        ContactIndex.prefetch(this);
     }
 
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         MenuInflater inflater = getMenuInflater();
-        inflater.inflate(R.menu.smsmenu, menu);
+        inflater.inflate(R.menu.mmssmsmenu, menu);
         return true;
     }
 
@@ -113,6 +195,18 @@ public class MMSSMSActivity extends AppCompatActivity implements IConstants {
         } else if (id == R.id.order) {
             setOrder();
             return true;
+        } else if (id == R.id.export_archive) {
+            exportArchive(false, false);
+            return true;
+        } else if (id == R.id.export_archive_gzip) {
+            exportArchive(true, false);
+            return true;
+        } else if (id == R.id.export_archive_new) {
+            exportArchive(true, true);
+            return true;
+        } else if (id == R.id.extract_attachments) {
+            MmsAttachmentExtractor.requestFolder(this);
+            return true;
         }
         return false;
     }
@@ -122,13 +216,13 @@ public class MMSSMSActivity extends AppCompatActivity implements IConstants {
                                            id) {
         Log.d(TAG, this.getClass().getSimpleName() + ": onListItemClick: " +
                 "position=" + position + " id=" + id);
-        Data data = mListAdapter.getData(position);
-        if (data == null) return;
-        Log.d(TAG,
-                "data: id=" + data.getId() + " " + data.getAddress());
+        long dataId = mListAdapter.getRowId(position);
+        if (dataId < 0) return;
+        Log.d(TAG, "data: id=" + dataId);
         // Save the position when starting the activity
         mCurrentPosition = position;
-        mCurrentId = data.getId();
+        mCurrentId = dataId;
+        mCurrentType = mListAdapter.getRowType(position).ordinal();
         mIncrement = 0;
         displayMessage();
     }
@@ -143,6 +237,17 @@ public class MMSSMSActivity extends AppCompatActivity implements IConstants {
                 + " resultCode=" + resultCode + " mCurrentPosition="
                 + mCurrentPosition);
         if (requestCode == DISPLAY_MESSAGE) {
+            // The display activity may have moved through the list itself
+            if (intent != null && intent.hasExtra(NAV_POSITION_KEY)) {
+                mCurrentPosition = intent.getIntExtra(NAV_POSITION_KEY,
+                        mCurrentPosition);
+                mCurrentId = intent.getLongExtra(COL_ID, mCurrentId);
+                NavigationList list = NavigationList.getCurrent();
+                if (list != null && list.getType(mCurrentPosition)
+                        != NavigationList.TYPE_ANY) {
+                    mCurrentType = list.getType(mCurrentPosition);
+                }
+            }
             mIncrement = 0;
             // Note that earlier items are at higher positions in the list
             if (resultCode == RESULT_PREV) {
@@ -150,6 +255,69 @@ public class MMSSMSActivity extends AppCompatActivity implements IConstants {
             } else if (resultCode == RESULT_NEXT) {
                 mIncrement = +1;
             }
+        } else if (requestCode == CREATE_DOCUMENT
+                && resultCode == RESULT_OK && intent != null) {
+            new MessageArchiveTask(this, intent.getData(),
+                    mArchiveCompress, mArchiveIncremental).execute();
+        } else if (requestCode == OPEN_DOCUMENT_TREE
+                && resultCode == RESULT_OK && intent != null) {
+            MmsAttachmentExtractor.start(this, intent.getData(), -1);
+        }
+    }
+
+    /**
+     * Deletes the messages of one type after asking the user, then removes
+     * them from the list. SMS and MMS messages are in different providers,
+     * so each type is confirmed and deleted separately.
+     *
+     * @param type  The MessageType.
+     * @param ids   The ids of the messages.
+     * @param count The number of ids to use.
+     */
+    private void deleteMessages(final MessageType type, long[] ids,
+                                int count) {
+        BulkDeleteTask.start(this, type + " messages",
+                type == MessageType.SMS ? SMS_URI : MMS_URI,
+                MessageUtils.inSelection(COL_ID, ids, count),
+                new BulkDeleteTask.Listener() {
+                    @Override
+                    public void onDeleted(long[] deleted, int nDeleted) {
+                        if (mListAdapter != null) {
+                            mListAdapter.removeRows(deleted, nDeleted, type);
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Asks for the name of the archive file. The archive is written when
+     * the result is returned.
+     *
+     * @param compress    Whether to gzip the archive.
+     * @param incremental Whether to write only the messages newer than the
+     *                    last export. A full export also sets the starting
+     *                    point for the next incremental one.
+     */
+    private void exportArchive(boolean compress, boolean incremental) {
+        try {
+            mArchiveCompress = compress;
+            mArchiveIncremental = incremental;
+            SimpleDateFormat formatter = new SimpleDateFormat(
+                    "yyyy-MM-dd-HHmmss", Locale.US);
+            String fileName = String.format(ARCHIVE_FILE_NAME,
+                    formatter.format(new Date()));
+            Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
+            intent.addCategory(Intent.CATEGORY_OPENABLE);
+            if (compress) {
+                intent.setType("application/gzip");
+                fileName += ".gz";
+            } else {
+                intent.setType("application/octet-stream");
+            }
+            intent.putExtra(Intent.EXTRA_TITLE, fileName);
+            startActivityForResult(intent, CREATE_DOCUMENT);
+        } catch (Exception ex) {
+            Utils.excMsg(this, "Error requesting archive file", ex);
         }
     }
 
@@ -172,9 +340,22 @@ public class MMSSMSActivity extends AppCompatActivity implements IConstants {
                 + ".onPause: mCurrentPosition=" + mCurrentPosition);
         Log.d(TAG, this.getClass().getSimpleName() + ".onPause: mCurrentId="
                 + mCurrentId);
+        Log.d(TAG, this.getClass().getSimpleName() + ".onPause: names "
+                + ContactNameCache.getInstance(this).getStats());
         super.onPause();
     }
 
+    @Override
+    protected void onDestroy() {
+        if (mRowBinder != null) {
+            mRowBinder.cancel();
+        }
+        if (mListAdapter != null) {
+            mListAdapter.close();
+        }
+        super.onDestroy();
+    }
+
     /**
      * Bring up a dialog to change the sort order.
      */
@@ -220,15 +401,17 @@ public class MMSSMSActivity extends AppCompatActivity implements IConstants {
             if (mCurrentPosition > count - 1 || mCurrentPosition < 0) {
                 changed = true;
             } else {
-                Data data = mListAdapter.getData(mCurrentPosition);
-                if (data == null) {
+                long dataId = mListAdapter.getRowId(mCurrentPosition);
+                if (dataId < 0) {
                     Utils.errMsg(this, "Error displaying message: Missing" +
                             " " +
                             "data for position " + mCurrentPosition);
                     return;
                 }
-                id = data.getId();
-                if (id != mCurrentId) {
+                id = dataId;
+                MessageType type = mListAdapter.getRowType(mCurrentPosition);
+                if (id != mCurrentId || type == null
+                        || type.ordinal() != mCurrentType) {
                     changed = true;
                 }
             }
@@ -238,19 +421,10 @@ public class MMSSMSActivity extends AppCompatActivity implements IConstants {
                     " id="
                     + id + " changed=" + changed);
             if (changed) {
-                for (int i = 0; i < count; i++) {
-                    Data data = mListAdapter.getData(mCurrentPosition);
-                    if (data == null) {
-                        Utils.errMsg(this, "Error displaying message: " +
-                                "Missing" +
-                                " " + "data for position " + mCurrentPosition);
-                        return;
-                    }
-                    id = data.getId();
-                    if (id == mCurrentId) {
-                        mCurrentPosition = i;
-                        break;
-                    }
+                int position = mListAdapter.getPosition(mCurrentId,
+                        mCurrentType);
+                if (position >= 0) {
+                    mCurrentPosition = position;
                 }
             }
             // mCurrentPosition may still be invalid, check it is in range
@@ -282,29 +456,36 @@ public class MMSSMSActivity extends AppCompatActivity implements IConstants {
             }
 
             // Request the new message
-            Data data = mListAdapter.getData(mCurrentPosition);
-            if (data == null) {
+            long dataId = mListAdapter.getRowId(mCurrentPosition);
+            if (dataId < 0) {
                 Utils.errMsg(this, "Error displaying message: Missing " +
                         "data for position " + mCurrentPosition);
                 return;
             }
-            mCurrentId = data.getId();
+            mCurrentId = dataId;
+            MessageType type = mListAdapter.getRowType(mCurrentPosition);
+            if (type != null) {
+                mCurrentType = type.ordinal();
+            }
             Intent i;
-            if (data.getType() == MessageType.SMS) {
+            if (type == MessageType.SMS) {
                 i = new Intent(this, DisplaySMSActivity.class);
                 i.putExtra(URI_KEY, SMS_URI.toString());
-            } else if (data.getType() == MessageType.MMS) {
+            } else if (type == MessageType.MMS) {
                 i = new Intent(this, DisplayMMSActivity.class);
                 i.putExtra(URI_KEY, MMS_URI.toString());
             } else {
                 Utils.errMsg(MMSSMSActivity.this,
-                        "Invalid message type: " + data.getType());
+                        "Invalid message type: " + type);
                 return;
             }
             i.putExtra(COL_ID, mCurrentId);
             Log.d(TAG, this.getClass().getSimpleName()
                     + ".displayMessage: position=" + mCurrentPosition
                     + " mCurrentId=" + mCurrentId);
+            i.putExtra(NAV_POSITION_KEY, mCurrentPosition);
+            NavigationList.setCurrent(mListAdapter.getNavigationList(
+                    mCurrentPosition));
             startActivityForResult(i, DISPLAY_MESSAGE);
         } catch (Exception ex) {
             Utils.excMsg(this, "Error displaying message", ex);
@@ -319,224 +500,444 @@ public class MMSSMSActivity extends AppCompatActivity implements IConstants {
      */
     private void refresh() {
         // Initialize the list view mListAdapter
+        if (mRowBinder != null) {
+            mRowBinder.cancel();
+        }
+        if (mListAdapter != null) {
+            mListAdapter.close();
+        }
         mListAdapter = new CustomListAdapter();
+        mRowBinder = new RowBinder(mListView, mListAdapter,
+                RowBinder.DEFAULT_PREFETCH_WINDOW);
         mListView.setAdapter(mListAdapter);
     }
 
     /**
-     * Class to manage the data needed for an item in the ListView.
+     * The values kept in the RowStore for a row, besides the id, date, and
+     * type, which is the MessageType ordinal.
      */
-    private static class Data {
-        private long id;
-        private String address;
-        private long dateNum;
-        private MessageType type;
-        private boolean invalid = true;
+    private static final int FIELD_ADDRESS = 0;
+    private static final int FIELD_CONTACT_NAME = 1;
+    private static final int N_FIELDS = 2;
 
-        /**
-         * Constructor.
-         *
-         * @param id The message id.
-         */
-        private Data(long id, long dateNum, MessageType type) {
-            this.id = id;
-            this.dateNum = dateNum;
-            this.type = type;
-        }
+    /**
+     * The message types by ordinal.
+     */
+    private static final MessageType[] MESSAGE_TYPES = MessageType.values();
 
+    /**
+     * ListView adapter class for this activity.
+     */
+    private class CustomListAdapter extends BaseAdapter implements
+            RowBinder.Loader {
         /**
-         * Sets the values for these parameters..
-         *
-         * @param address The address.
+         * The rows merged so far from the two cursors. Rows are added as
+         * positions are requested.
          */
-        private void setValues(String address) {
-            this.address = address;
-            invalid = false;
-        }
+        private RowStore mRows;
 
-        @NonNull
-        @Override
-        public String toString() {
-            return "Data {id=" + id + ", dateNum=" + dateNum + ", type=" + type + "}";
-        }
-
-        public long getId() {
-            return id;
-        }
-
-        private String getAddress() {
-            return address;
-        }
+        private final LayoutInflater mInflator;
 
-        private long getDateNum() {
-            return dateNum;
-        }
+        /**
+         * Whether to merge by id rather than by date.
+         */
+        private final boolean mById;
 
-        private boolean isInvalid() {
-            return invalid;
-        }
+        private Cursor mSmsCursor;
+        private Cursor mMmsCursor;
+        private int mSmsIndexId;
+        private int mSmsIndexDate;
+        private int mMmsIndexId;
+        private int mMmsIndexDate;
 
-        public MessageType getType() {
-            return type;
-        }
+        /**
+         * Whether the cursors are at a row not yet merged.
+         */
+        private boolean mSmsHasRow;
+        private boolean mMmsHasRow;
 
-        public void setType(MessageType type) {
-            this.type = type;
-        }
-    }
+        /**
+         * The total number of rows in the two cursors. It is only changed
+         * on the UI thread, together with notifying the ListView.
+         */
+        private volatile int mCount;
 
-    /**
-     * ListView adapter class for this activity.
-     */
-    private class CustomListAdapter extends BaseAdapter {
-        private List<Data> mDataList;
+        /**
+         * Whether the cursors have been found to have fewer rows than they
+         * said and the new count has been posted.
+         */
+        private boolean mEndedEarly;
 
-        private final LayoutInflater mInflator;
+        /**
+         * Used so that only one page of values is loaded at a time.
+         */
+        private final Object mLoadLock = new Object();
 
+        /**
+         * Constructor. Opens the SMS and MMS cursors, both sorted in
+         * descending order, which are then merged as rows are needed
+         * rather than all being read and sorted here.
+         */
         private CustomListAdapter() {
             super();
             // DEBUG
             Log.d(TAG, this.getClass().getSimpleName() + " Start");
             mInflator = getLayoutInflater();
-            mDataList = new ArrayList<>();
-            Cursor cursor = null;
-            long id = -1;
-            int indexId;
-            int indexDate = -1;
-            long dateNum;
-            int nSMS = 0;
-            int nItems = 0;
-            MessageType type;
+            mById = mSortOrder == Order.ID;
+            String sortOrder = mById ? COL_ID + " DESC" : COL_DATE + " DESC";
             String[] projection = new String[]{COL_ID, COL_DATE};
-            // First do SMS
-            type = MessageType.SMS;
+            String selection = mThreadId < 0 ? null
+                    : COL_THREAD_ID + "=" + mThreadId;
+            int nSms = 0;
+            int nMms = 0;
+            MessageType type = MessageType.SMS;
             try {
-                cursor = getContentResolver().query(SMS_URI, projection,
-                        null, null, null);
-                if (cursor == null) {
+                // SMS
+                mSmsCursor = getContentResolver().query(SMS_URI, projection,
+                        selection, null, sortOrder);
+                if (mSmsCursor == null) {
                     Utils.errMsg(MMSSMSActivity.this,
                             "ListAdapter: Error getting data: No SMS " +
                                     "items in" +
                                     " database");
-
                 } else {
-                    indexId = cursor.getColumnIndex(COL_ID);
-                    indexDate = cursor.getColumnIndex(COL_DATE);
-                    int count = cursor.getCount();
-                    if (count <= 0) {
-                        Utils.infoMsg(MMSSMSActivity.this, "No items in " +
-                                "database");
-                    } else {
-                        // Loop over items
-                        if (cursor.moveToFirst()) {
-                            while (!cursor.isAfterLast()) {
-                                id = cursor.getLong(indexId);
-                                dateNum = -1L;
-                                if (indexDate > -1) {
-                                    dateNum = cursor.getLong(indexDate);
-                                }
-                                mDataList.add(new Data(id, dateNum, type));
-                                nItems++;
-                                cursor.moveToNext();
-                            }
-                        }
-                    }
+                    mSmsIndexId = mSmsCursor.getColumnIndex(COL_ID);
+                    mSmsIndexDate = mSmsCursor.getColumnIndex(COL_DATE);
+                    nSms = mSmsCursor.getCount();
+                    mSmsHasRow = mSmsCursor.moveToFirst();
                 }
-                nSMS = nItems;
-                if (cursor != null) cursor.close();
 
-                // Then do MMS
+                // MMS
                 type = MessageType.MMS;
-                cursor = getContentResolver().query(MMS_URI, projection,
-                        null, null, null);
-                if (cursor == null) {
+                mMmsCursor = getContentResolver().query(MMS_URI, projection,
+                        selection, null, sortOrder);
+                if (mMmsCursor == null) {
                     Utils.errMsg(MMSSMSActivity.this,
-                            "ListAdapter: Error getting data: No items in" +
-                                    " " +
-                                    "database");
+                            "ListAdapter: Error getting data: No MMS " +
+                                    "items in" +
+                                    " database");
+                } else {
+                    mMmsIndexId = mMmsCursor.getColumnIndex(COL_ID);
+                    mMmsIndexDate = mMmsCursor.getColumnIndex(COL_DATE);
+                    nMms = mMmsCursor.getCount();
+                    mMmsHasRow = mMmsCursor.moveToFirst();
                 }
-                indexId = cursor.getColumnIndex(COL_ID);
-                int count = cursor.getCount();
-                if (count <= 0) {
-                    Utils.infoMsg(MMSSMSActivity.this, "No items in MMS " +
+                mCount = nSms + nMms;
+                mRows = new RowStore(mCount, N_FIELDS, true);
+                if (mCount <= 0) {
+                    Utils.infoMsg(MMSSMSActivity.this, "No items in " +
                             "database");
-                } else {
-                    // Loop over items
-                    if (cursor.moveToFirst()) {
-                        while (!cursor.isAfterLast()) {
-                            id = cursor.getLong(indexId);
-                            dateNum = -1L;
-                            if (indexDate > -1) {
-                                // Date multiplier needed for MMS, not SMS
-                                dateNum =
-                                        cursor.getLong(indexDate) * DATE_MULTIPLIER;
-                            }
-                            mDataList.add(new Data(id, dateNum, type));
-                            nItems++;
-                            cursor.moveToNext();
-                        }
-                    }
                 }
-                if (cursor != null) cursor.close();
-
-                // Sort them
-                Collections.sort(mDataList, new Comparator<Data>() {
-                    @Override
-                    public int compare(Data data1, Data data2) {
-//                        if (data1 == null && data2 == null) {
-//                            return 0;
-//                        } else if (data1 == null) {
-//                            return -1;
-//                        } else if (data2 == null) {
-//                            return 1;
-//                        }
-                        // Note these are in reverse order
-                        if (mSortOrder == Order.ID) {
-                            return Long.compare(data2.getId(),
-                                    data1.getId());
-                        } else {
-                            return Long.compare(data2.getDateNum(),
-                                    data1.getDateNum());
-                        }
-                    }
-                });
             } catch (Exception ex) {
                 Utils.excMsg(MMSSMSActivity.this,
-                        "ListAdapter: Error getting " + type
-                                + " data at id=" + id, ex);
-                String stackTrace = Log.getStackTraceString(ex);
-                Log.e(TAG, "ListAdapter: Error getting " + type
-                        + " data at id=" + id, ex);
-            } finally {
-                try {
-                    if (cursor != null) cursor.close();
-                } catch (Exception ex) {
-                    // Do nothing
+                        "ListAdapter: Error getting " + type + " data", ex);
+                Log.e(TAG, "ListAdapter: Error getting " + type + " data",
+                        ex);
+                close();
+                mCount = 0;
+                mRows = new RowStore(0, N_FIELDS, true);
+            }
+            Log.d(TAG, "Data list opened: nSMS=" + nSms + " nMMS=" + nMms);
+        }
+
+        /**
+         * Closes the cursors. Rows already merged remain available.
+         */
+        private synchronized void close() {
+            mSmsHasRow = mMmsHasRow = false;
+            if (mSmsCursor != null) {
+                mSmsCursor.close();
+                mSmsCursor = null;
+            }
+            if (mMmsCursor != null) {
+                mMmsCursor.close();
+                mMmsCursor = null;
+            }
+        }
+
+        /**
+         * Merges rows from the cursors until the given position is in the
+         * list. At each step the row with the larger date (or id) is taken,
+         * SMS first for ties, which gives the same order as sorting the
+         * combined list.
+         *
+         * @param position The position.
+         */
+        private void mergeTo(int position) {
+            long smsKey;
+            long mmsKey;
+            boolean useSms;
+            Cursor cursor;
+            long id;
+            long dateNum;
+            while (mRows.size() <= position) {
+                if (!mSmsHasRow && !mMmsHasRow) {
+                    if (mEndedEarly) return;
+                    // The cursors had fewer rows than they said. This may
+                    // be on a worker thread, so the count the ListView
+                    // sees is changed when it is notified.
+                    mEndedEarly = true;
+                    final int count = mRows.size();
+                    Log.d(TAG, "Data list ended early at " + count
+                            + " of " + mCount);
+                    mListView.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            mCount = count;
+                            notifyDataSetChanged();
+                        }
+                    });
+                    return;
+                }
+                if (mSmsHasRow && mMmsHasRow) {
+                    smsKey = mById ? mSmsCursor.getLong(mSmsIndexId)
+                            : getDate(mSmsCursor, mSmsIndexDate, 1);
+                    mmsKey = mById ? mMmsCursor.getLong(mMmsIndexId)
+                            : getDate(mMmsCursor, mMmsIndexDate,
+                            DATE_MULTIPLIER);
+                    useSms = smsKey >= mmsKey;
+                } else {
+                    useSms = mSmsHasRow;
+                }
+                if (useSms) {
+                    cursor = mSmsCursor;
+                    id = cursor.getLong(mSmsIndexId);
+                    dateNum = getDate(cursor, mSmsIndexDate, 1);
+                    mRows.add(id, dateNum, MessageType.SMS.ordinal());
+                    mSmsHasRow = cursor.moveToNext();
+                } else {
+                    cursor = mMmsCursor;
+                    id = cursor.getLong(mMmsIndexId);
+                    // Date multiplier needed for MMS, not SMS
+                    dateNum = getDate(cursor, mMmsIndexDate, DATE_MULTIPLIER);
+                    mRows.add(id, dateNum, MessageType.MMS.ordinal());
+                    mMmsHasRow = cursor.moveToNext();
                 }
             }
-            Log.d(TAG, "Data list created: processed " + nItems + " items"
-                    + " mDataList.length=" + mDataList.size()
-                    + " nSMS=" + nSMS + " nMMS=" + (nItems - nSMS));
         }
 
-        private Data getData(int i) {
-            if (mDataList == null || i < 0 || i >= mDataList.size()) {
-                return null;
+        /**
+         * Gets the date in ms from the cursor.
+         *
+         * @param cursor     The cursor.
+         * @param indexDate  The date column index.
+         * @param multiplier The multiplier to get ms.
+         * @return The date or -1 if there is no date column.
+         */
+        private long getDate(Cursor cursor, int indexDate, long multiplier) {
+            return indexDate > -1 ? cursor.getLong(indexDate) * multiplier
+                    : -1L;
+        }
+
+        /**
+         * Makes sure the given position has been merged.
+         *
+         * @param i The position.
+         * @return If the position is in the list.
+         */
+        private synchronized boolean ensureRow(int i) {
+            if (i < 0 || i >= mCount) {
+                return false;
+            }
+            if (i >= mRows.size()) {
+                mergeTo(i);
             }
-            return mDataList.get(i);
+            return i < mRows.size();
+        }
+
+        /**
+         * @param i The position.
+         * @return The _id or -1 if not found.
+         */
+        private long getRowId(int i) {
+            return ensureRow(i) ? mRows.getId(i) : -1;
+        }
+
+        /**
+         * Removes deleted messages of one type from the rows merged so far.
+         * Called on the UI thread. Selected rows have always been merged.
+         *
+         * @param ids   The ids.
+         * @param count The number of ids to use.
+         * @param type  The MessageType.
+         */
+        private void removeRows(long[] ids, int count, MessageType type) {
+            int[] types = new int[count];
+            Arrays.fill(types, type.ordinal());
+            synchronized (mLoadLock) {
+                synchronized (this) {
+                    int size = mRows.size();
+                    mRows.remove(ids, types, count);
+                    mCount -= size - mRows.size();
+                }
+            }
+            notifyDataSetChanged();
+        }
+
+        /**
+         * Gets the position of a message. Rows are merged a page at a time
+         * only until the message has been added, since RowStore keeps its
+         * id lookup current as rows are added.
+         *
+         * @param id   The _id.
+         * @param type The MessageType ordinal.
+         * @return The position or -1 if the message is not in the list.
+         */
+        private synchronized int getPosition(long id, int type) {
+            int position = mRows.getPosition(id, type);
+            while (position < 0 && mRows.size() < mCount
+                    && (mSmsHasRow || mMmsHasRow)) {
+                mergeTo(Math.min(mRows.size() + PAGE_SIZE, mCount) - 1);
+                position = mRows.getPosition(id, type);
+            }
+            return position;
+        }
+
+        /**
+         * Gets the ids and types of the rows merged so far, after merging
+         * a page past the given position.
+         *
+         * @param position The position.
+         * @return The NavigationList.
+         */
+        private synchronized NavigationList getNavigationList(int position) {
+            ensureRow(Math.min(position + PAGE_SIZE, mCount - 1));
+            return new NavigationList(mRows.copyIds(), mRows.copyTypes());
+        }
+
+        /**
+         * @param i The position.
+         * @return The type or null if not found.
+         */
+        private MessageType getRowType(int i) {
+            return ensureRow(i) ? MESSAGE_TYPES[mRows.getType(i)]
+                    : null;
         }
 
         @Override
         public int getCount() {
-            return mDataList == null ? 0 : mDataList.size();
+            return mCount;
         }
 
         @Override
         public Object getItem(int i) {
-            if (mDataList == null || i < 0 || i >= mDataList.size()) {
-                return null;
+            long id = getRowId(i);
+            return id < 0 ? null : id;
+        }
+
+        @Override
+        public boolean isLoaded(int i) {
+            return !ensureRow(i) || mRows.isLoaded(i);
+        }
+
+        @Override
+        public void load(int i) {
+            loadPage(i);
+        }
+
+        /**
+         * Gets the values for the items that are not yet valid in the page
+         * holding the given position. This takes one query of each message
+         * table and one of the MMS addr table for the page rather than up to
+         * three queries per row. Rows that are not found are marked valid
+         * with no values.
+         *
+         * Called on a worker thread.
+         *
+         * @param i The position.
+         */
+        private void loadPage(int i) {
+            synchronized (mLoadLock) {
+                loadPageLocked(i);
+            }
+        }
+
+        private void loadPageLocked(int i) {
+            int start = i - i % PAGE_SIZE;
+            int end = Math.min(start + PAGE_SIZE, getCount());
+            long[] smsIds = new long[end - start];
+            long[] mmsIds = new long[end - start];
+            int nSms = 0;
+            int nMms = 0;
+            for (int j = start; j < end; j++) {
+                if (isLoaded(j)) continue;
+                if (getRowType(j) == MessageType.SMS) {
+                    smsIds[nSms++] = mRows.getId(j);
+                } else {
+                    mmsIds[nMms++] = mRows.getId(j);
+                }
+            }
+
+            // SMS
+            Map<Long, String> smsAddresses = new HashMap<>();
+            Cursor cursor = null;
+            if (nSms > 0) {
+                try {
+                    cursor = getContentResolver().query(SMS_URI,
+                            new String[]{COL_ID, COL_ADDRESS},
+                            MessageUtils.inSelection(COL_ID, smsIds, nSms),
+                            null, null);
+                    if (cursor != null) {
+                        int indexId = cursor.getColumnIndex(COL_ID);
+                        int indexAddress = cursor.getColumnIndex(COL_ADDRESS);
+                        String address;
+                        while (cursor.moveToNext()) {
+                            address = "<Address NA>";
+                            if (indexAddress > -1) {
+                                address = cursor.getString(indexAddress);
+                            }
+                            smsAddresses.put(cursor.getLong(indexId),
+                                    address);
+                        }
+                    }
+                } finally {
+                    if (cursor != null) cursor.close();
+                }
+            }
+
+            // MMS
+            Map<Long, String[]> mmsAddresses = new HashMap<>();
+            Set<Long> mmsFound = new HashSet<>();
+            cursor = null;
+            if (nMms > 0) {
+                try {
+                    cursor = getContentResolver().query(MMS_URI,
+                            new String[]{COL_ID},
+                            MessageUtils.inSelection(COL_ID, mmsIds, nMms),
+                            null, null);
+                    if (cursor != null) {
+                        int indexId = cursor.getColumnIndex(COL_ID);
+                        while (cursor.moveToNext()) {
+                            mmsFound.add(cursor.getLong(indexId));
+                        }
+                    }
+                } finally {
+                    if (cursor != null) cursor.close();
+                }
+                // We need to get the addresses from another provider
+                mmsAddresses = MessageUtils.getMmsAddresses(
+                        MMSSMSActivity.this, mmsIds, nMms);
+            }
+
+            ContactNameCache names =
+                    ContactNameCache.getInstance(MMSSMSActivity.this);
+            String address;
+            long id;
+            for (int j = start; j < end; j++) {
+                if (isLoaded(j)) continue;
+                id = mRows.getId(j);
+                address = null;
+                if (getRowType(j) == MessageType.SMS) {
+                    if (smsAddresses.containsKey(id)) {
+                        address = smsAddresses.get(id);
+                    }
+                } else if (mmsFound.contains(id)) {
+                    address = MessageUtils.formatMmsListAddress(
+                            mmsAddresses.get(id));
+                }
+                mRows.setLoaded(j, address, address == null ? null
+                        : names.getName(address));
             }
-            return mDataList.get(i);
         }
 
         @Override
@@ -566,17 +967,17 @@ public class MMSSMSActivity extends AppCompatActivity implements IConstants {
                 String subTitleText;
 
                 // Check if index is OK.
-                if (i < 0 || i >= mDataList.size()) {
+                if (i < 0 || i >= getCount()) {
                     titleText = "Error";
                     subTitleText = "Bad view index" + i + " (Should be 0 " +
                             "to "
-                            + mDataList.size() + ")";
+                            + getCount() + ")";
                     viewHolder.title.setText(titleText);
                     viewHolder.subTitle.setText(subTitleText);
                     return view;
                 }
-                Data data = mDataList.get(i);
-                if (data == null) {
+                long id = getRowId(i);
+                if (id < 0) {
                     titleText = "Error";
                     subTitleText = "Cannot find data for i=" + i;
                     viewHolder.title.setText(titleText);
@@ -584,93 +985,29 @@ public class MMSSMSActivity extends AppCompatActivity implements IConstants {
                     return view;
                 }
 
-                // Only calculate what is needed (i.e visible)
-                // Speeds up tremendously over calculating everything before
-                if (data.isInvalid()) {
-                    long id;
-                    String address;
-                    String idStr;
-                    long dateNum;
-                    int indexId;
-                    int indexAddress;
-                    int indexDate = -1;
-                    Cursor cursor;
-                    if (data.getType() == MessageType.SMS) {
-                        // SMS
-//                        Log.d(TAG, "SMS: data.getType()=" + data.getType());
-                        String[] projection = new String[]{COL_ID,
-                                COL_ADDRESS};
-                        cursor = getContentResolver().query(SMS_URI,
-                                projection,
-                                COL_ID + "=" + data.getId(), null, null);
-//                        Log.d(TAG,
-//                                "getView: SMS id=" + data.getId() + "
-//                                cursor" +
-//                                        "=" + cursor);
-                        if (cursor != null && cursor.moveToFirst()) {
-                            indexAddress =
-                                    cursor.getColumnIndex(COL_ADDRESS);
-                            address = "<Address NA>";
-                            if (indexAddress > -1) {
-                                address = cursor.getString(indexAddress);
-                            }
-                            data.setValues(address);
-                        }
-                        if (cursor != null) cursor.close();
-                    } else {
-                        // MMS
-//                        Log.d(TAG, "MMS: data.getType()=" + data.getType());
-                        String[] projection = new String[]{COL_ID};
-                        cursor = getContentResolver().query(MMS_URI,
-                                projection,
-                                COL_ID + "=" + data.getId(), null, null);
-//                        Log.d(TAG,
-//                                "getView: MMS id=" + data.getId() + "
-//                                cursor" +
-//                                        "=" + cursor);
-                        if (cursor != null && cursor.moveToFirst()) {
-                            // We need to get the address from another
-                            // provider
-                            indexId = cursor.getColumnIndex(COL_ID);
-                            address = "<Address NA>";
-                            idStr = cursor.getString(indexId);
-                            Log.d(TAG,
-                                    "indexId=" + indexId + "indexDate=" + indexDate);
-                            // Determine if From or To
-                            String fromAddr =
-                                    MessageUtils.getMmsAddress(MMSSMSActivity.this, 137, idStr);
-                            String toAddr =
-                                    MessageUtils.getMmsAddress(MMSSMSActivity.this, 151, idStr);
-                            if (fromAddr != null) {
-                                if (!fromAddr.equals("insert-address" +
-                                        "-token")) {
-                                    address = "From: " + fromAddr;
-                                } else {
-                                    // Is outgoing
-                                    if (toAddr != null) {
-                                        address = "To: " + toAddr;
-                                    }
-                                }
-                            }
-                            data.setValues(address);
-                        }
-                        if (cursor != null) cursor.close();
-                    }
+                // Only calculate what is needed (i.e visible), in the
+                // background
+                if (!mRowBinder.bind(view, i)) {
+                    viewHolder.title.setText(String.format(Locale.US, "%d",
+                            id) + ": " + getRowType(i) + " Loading...");
+                    viewHolder.subTitle.setText("");
+                    return view;
                 }
 
                 titleText =
-                        String.format(Locale.US, "%d", data.getId()) + ": "
-                                + data.getType() + " "
-                                + MessageUtils.formatAddress(data.getAddress());
+                        String.format(Locale.US, "%d", id) + ": "
+                                + getRowType(i) + " "
+                                + MessageUtils.formatAddress(
+                                mRows.getString(i, FIELD_ADDRESS));
                 subTitleText =
-                        MessageUtils.formatDate(data.getDateNum());
+                        MessageUtils.formatDate(mRows.getDate(i));
 //                try {
-//                    subTitleText = Long.toString(data.getDateNum());
+//                    subTitleText = Long.toString(mRows.getDate(i));
 //                } catch (Exception ex) {
 //                    subTitleText = "<error>";
 //                }
-                String contactName = MessageUtils.getContactNameFromNumber(
-                        MMSSMSActivity.this, data.getAddress());
+                String contactName = mRows.getString(i,
+                        FIELD_CONTACT_NAME);
                 if (contactName != null && !contactName.equals("Unknown")) {
                     titleText += " " + contactName;
                 }
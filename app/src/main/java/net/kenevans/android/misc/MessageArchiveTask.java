@@ -0,0 +1,405 @@
+//Copyright (c) 2011 Kenneth Evans
+//
+//Permission is hereby granted, free of charge, to any person obtaining
+//a copy of this software and associated documentation files (the
+//"Software"), to deal in the Software without restriction, including
+//without limitation the rights to use, copy, modify, merge, publish,
+//distribute, sublicense, and/or sell copies of the Software, and to
+//permit persons to whom the Software is furnished to do so, subject to
+//the following conditions:
+//
+//The above copyright notice and this permission notice shall be included
+//in all copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+//EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+//MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+//IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+//CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+//TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+//SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+package net.kenevans.android.misc;
+
+import android.app.Activity;
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes all the SMS and MMS messages to one archive file in the
+ * background. The messages are streamed from the providers, and MMS part
+ * data is copied as raw bytes through a fixed buffer, so memory use does not
+ * depend on the size of the mailbox.
+ * <p>
+ * The format is big-endian as written by DataOutputStream:
+ * <pre>
+ * header:  "MSGARCH" VERSION(byte)
+ * record:  type(byte) ...
+ *   RECORD_SMS:  id(long) threadId(long) date(long ms) type(int)
+ *                address(str) body(str)
+ *   RECORD_MMS:  id(long) threadId(long) date(long ms) msgBox(int)
+ *                from(str) to(str) subject(str)
+ *   RECORD_PART: id(long) mid(long) contentType(str) name(str) text(str)
+ *                data(chunks)
+ *   RECORD_END
+ * str:     length(int, -1 for null) UTF-8 bytes
+ * chunks:  (length(int) bytes)* end(int)
+ *   end is 0 when all the data was written, -2 when reading it failed
+ *   part way, or -1, with no chunks, if there is no data
+ * </pre>
+ * Parts follow the MMS record they belong to. RECORD_END is written only
+ * when the export finished, so a file that ends without it is incomplete,
+ * for example because the export was cancelled.
+ * <p>
+ * An incremental export writes only the messages newer than those in the
+ * last export, as kept by ExportWatermarks, in the same format. A full
+ * export also sets the starting point for the next incremental one.
+ */
+public class MessageArchiveTask extends ExportTask {
+    static final byte VERSION = 2;
+    static final byte RECORD_END = 0;
+    static final byte RECORD_SMS = 1;
+    static final byte RECORD_MMS = 2;
+    static final byte RECORD_PART = 3;
+
+    static final int CHUNKS_END = 0;
+    static final int CHUNKS_NONE = -1;
+    static final int CHUNKS_FAILED = -2;
+
+    /**
+     * The number of MMS messages for which the addresses are gotten at a
+     * time.
+     */
+    private static final int MMS_BATCH_SIZE = 256;
+
+    /**
+     * The size of the buffer used to copy part data.
+     */
+    private static final int BUFFER_SIZE = 65536;
+
+    private final Uri mSaveUri;
+    private final boolean mCompress;
+    private final boolean mIncremental;
+    private final ExportWatermarks mSmsWatermarks;
+    private final ExportWatermarks mMmsWatermarks;
+    private final ContentResolver mResolver;
+    private final byte[] mBuffer = new byte[BUFFER_SIZE];
+
+    /**
+     * The number of messages written and the total. These are ints, like
+     * the Cursor counts they come from and the progress dialog.
+     */
+    private int mRows;
+    private int mTotal;
+    /**
+     * The number of bytes of part data written, which can exceed an int.
+     */
+    private long mPartBytes;
+    /**
+     * The number of parts whose data could not be read.
+     */
+    private int mFailedParts;
+
+    /**
+     * Constructor.
+     *
+     * @param activity The activity.
+     * @param saveUri  The Uri to write to.
+     * @param compress    Whether to gzip the archive.
+     * @param incremental Whether to write only newer messages.
+     */
+    MessageArchiveTask(Activity activity, Uri saveUri, boolean compress,
+                       boolean incremental) {
+        super(activity, "Exporting Messages");
+        mSaveUri = saveUri;
+        mCompress = compress;
+        mIncremental = incremental;
+        mResolver = activity.getContentResolver();
+        mSmsWatermarks = new ExportWatermarks(activity,
+                ExportWatermarks.SOURCE_SMS, !incremental);
+        mMmsWatermarks = new ExportWatermarks(activity,
+                ExportWatermarks.SOURCE_MMS, !incremental);
+    }
+
+    @Override
+    protected String export() throws Exception {
+        OutputStream os = null;
+        Cursor smsCursor = null;
+        Cursor mmsCursor = null;
+        Cursor partCursor = null;
+        try {
+            os = mResolver.openOutputStream(mSaveUri, "w");
+            if (os == null) {
+                throw new IOException("Cannot open " + mSaveUri);
+            }
+            if (mCompress) {
+                os = new GZIPOutputStream(os, BUFFER_SIZE);
+            }
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(os, BUFFER_SIZE));
+            os = out;
+            out.writeBytes("MSGARCH");
+            out.writeByte(VERSION);
+
+            smsCursor = mResolver.query(SMS_URI, new String[]{COL_ID,
+                            COL_THREAD_ID, COL_DATE, COL_TYPE, COL_ADDRESS,
+                            COL_BODY},
+                    mIncremental ? mSmsWatermarks.getSelection() : null,
+                    null, COL_ID + " ASC");
+            mmsCursor = mResolver.query(MMS_URI, new String[]{COL_ID,
+                            COL_THREAD_ID, COL_DATE, COL_MSG_BOX, COL_SUB},
+                    mIncremental ? mMmsWatermarks.getSelection() : null,
+                    null, COL_ID + " ASC");
+            mTotal = (smsCursor == null ? 0 : smsCursor.getCount())
+                    + (mmsCursor == null ? 0 : mmsCursor.getCount());
+
+            if (smsCursor != null) {
+                writeSms(out, smsCursor);
+            }
+            if (mmsCursor != null && !isCancelled()) {
+                // Only the parts from the lowest message id on, which
+                // skips the ones already exported in an incremental export
+                if (mmsCursor.moveToFirst()) {
+                    partCursor = mResolver.query(MMS_PART_URI,
+                            new String[]{COL_ID, COL_MID, COL_CT, COL_CL,
+                                    COL_TEXT, COL_DATA},
+                            COL_MID + ">=" + mmsCursor.getLong(
+                                    mmsCursor.getColumnIndex(COL_ID)), null,
+                            COL_MID + " ASC, " + COL_ID + " ASC");
+                    writeMms(out, mmsCursor, partCursor);
+                }
+            }
+            // A cancelled export has no end record, so it can be told
+            // from a complete one
+            boolean cancelled = isCancelled();
+            if (!cancelled) {
+                out.writeByte(RECORD_END);
+            }
+            out.flush();
+            // Keep the old watermarks if any part failed, so the next
+            // incremental export writes those messages again
+            if (!cancelled && mFailedParts == 0) {
+                mSmsWatermarks.commit();
+                mMmsWatermarks.commit();
+            }
+        } finally {
+            if (smsCursor != null) smsCursor.close();
+            if (mmsCursor != null) mmsCursor.close();
+            if (partCursor != null) partCursor.close();
+            if (os != null) {
+                try {
+                    // Also finishes the gzip stream
+                    os.close();
+                } catch (Exception ex) {
+                    // Do nothing
+                }
+            }
+        }
+        String msg = "Wrote " + mRows + " messages with " + mPartBytes
+                + " bytes of MMS data to " + mSaveUri.getPath();
+        if (mFailedParts > 0) {
+            msg += "\nThe data for " + mFailedParts + " MMS parts could not"
+                    + " be read and is marked as failed in the file";
+        }
+        return msg;
+    }
+
+    /**
+     * Writes the SMS messages.
+     *
+     * @param out    The stream.
+     * @param cursor The SMS cursor.
+     * @throws IOException On error.
+     */
+    private void writeSms(DataOutputStream out, Cursor cursor)
+            throws IOException {
+        int indexId = cursor.getColumnIndex(COL_ID);
+        int indexThreadId = cursor.getColumnIndex(COL_THREAD_ID);
+        int indexDate = cursor.getColumnIndex(COL_DATE);
+        int indexType = cursor.getColumnIndex(COL_TYPE);
+        int indexAddress = cursor.getColumnIndex(COL_ADDRESS);
+        int indexBody = cursor.getColumnIndex(COL_BODY);
+        while (cursor.moveToNext()) {
+            if (isCancelled()) return;
+            long id = cursor.getLong(indexId);
+            long date = getLong(cursor, indexDate, 1);
+            out.writeByte(RECORD_SMS);
+            out.writeLong(id);
+            out.writeLong(getLong(cursor, indexThreadId, 1));
+            out.writeLong(date < 0 ? date : date * SMS_DATE_MULTIPLIER);
+            out.writeInt(indexType > -1 ? cursor.getInt(indexType) : -1);
+            writeString(out, getString(cursor, indexAddress));
+            writeString(out, getString(cursor, indexBody));
+            mSmsWatermarks.update(id, date);
+            publishRows(++mRows, mTotal);
+        }
+    }
+
+    /**
+     * Writes the MMS messages, each followed by its parts. Both cursors are
+     * in ascending order of message id, so they are merged without a query
+     * per message. The addresses are gotten a batch of messages at a time.
+     *
+     * @param out        The stream.
+     * @param mmsCursor  The MMS cursor.
+     * @param partCursor The part cursor.
+     * @throws IOException On error.
+     */
+    private void writeMms(DataOutputStream out, Cursor mmsCursor,
+                          Cursor partCursor) throws IOException {
+        int indexId = mmsCursor.getColumnIndex(COL_ID);
+        int indexThreadId = mmsCursor.getColumnIndex(COL_THREAD_ID);
+        int indexDate = mmsCursor.getColumnIndex(COL_DATE);
+        int indexMsgBox = mmsCursor.getColumnIndex(COL_MSG_BOX);
+        int indexSub = mmsCursor.getColumnIndex(COL_SUB);
+        boolean hasPart = partCursor != null && partCursor.moveToFirst();
+        int indexMid = hasPart ? partCursor.getColumnIndex(COL_MID) : -1;
+        long[] ids = new long[MMS_BATCH_SIZE];
+        boolean hasRow = mmsCursor.moveToFirst();
+        while (hasRow) {
+            // Get the addresses for the next batch
+            int start = mmsCursor.getPosition();
+            int count = 0;
+            while (hasRow && count < MMS_BATCH_SIZE) {
+                ids[count++] = mmsCursor.getLong(indexId);
+                hasRow = mmsCursor.moveToNext();
+            }
+            Map<Long, String[]> addresses = MessageUtils.getMmsAddresses(
+                    mActivity, ids, count);
+
+            mmsCursor.moveToPosition(start);
+            for (int i = 0; i < count; i++) {
+                if (isCancelled()) return;
+                long id = mmsCursor.getLong(indexId);
+                long date = getLong(mmsCursor, indexDate, 1);
+                String[] fromTo = addresses.get(id);
+                out.writeByte(RECORD_MMS);
+                out.writeLong(id);
+                out.writeLong(getLong(mmsCursor, indexThreadId, 1));
+                out.writeLong(date < 0 ? date : date * MMS_DATE_MULTIPLIER);
+                out.writeInt(indexMsgBox > -1 ?
+                        mmsCursor.getInt(indexMsgBox) : -1);
+                writeString(out, fromTo == null ? null : fromTo[0]);
+                writeString(out, fromTo == null ? null : fromTo[1]);
+                writeString(out, getString(mmsCursor, indexSub));
+
+                // Skip parts for messages that are not in the MMS table
+                while (hasPart && partCursor.getLong(indexMid) < id) {
+                    hasPart = partCursor.moveToNext();
+                }
+                while (hasPart && partCursor.getLong(indexMid) == id) {
+                    writePart(out, partCursor);
+                    hasPart = partCursor.moveToNext();
+                }
+                mMmsWatermarks.update(id, date);
+                publishRows(++mRows, mTotal);
+                mmsCursor.moveToNext();
+            }
+        }
+    }
+
+    /**
+     * Writes the part at the current cursor position. Data stored in a file
+     * is copied as raw bytes in chunks. If the data cannot be read, the
+     * chunks end with CHUNKS_FAILED instead of CHUNKS_END and the part is
+     * counted in mFailedParts. Errors writing are thrown.
+     *
+     * @param out    The stream.
+     * @param cursor The part cursor.
+     * @throws IOException On error.
+     */
+    private void writePart(DataOutputStream out, Cursor cursor)
+            throws IOException {
+        long partId = cursor.getLong(cursor.getColumnIndex(COL_ID));
+        out.writeByte(RECORD_PART);
+        out.writeLong(partId);
+        out.writeLong(cursor.getLong(cursor.getColumnIndex(COL_MID)));
+        writeString(out, getString(cursor, cursor.getColumnIndex(COL_CT)));
+        writeString(out, getString(cursor, cursor.getColumnIndex(COL_CL)));
+        writeString(out, getString(cursor,
+                cursor.getColumnIndex(COL_TEXT)));
+        if (getString(cursor, cursor.getColumnIndex(COL_DATA)) == null) {
+            out.writeInt(CHUNKS_NONE);
+            return;
+        }
+        InputStream is = null;
+        try {
+            is = mResolver.openInputStream(Uri.withAppendedPath(MMS_PART_URI,
+                    Long.toString(partId)));
+        } catch (IOException ex) {
+            Log.e(TAG, getClass().getSimpleName() + ": Cannot open part "
+                    + partId, ex);
+        }
+        if (is == null) {
+            mFailedParts++;
+            out.writeInt(CHUNKS_FAILED);
+            return;
+        }
+        try {
+            int n;
+            while (true) {
+                try {
+                    n = is.read(mBuffer);
+                } catch (IOException ex) {
+                    // Keep what was read, errors writing are not caught
+                    Log.e(TAG, getClass().getSimpleName()
+                            + ": Error reading part " + partId, ex);
+                    mFailedParts++;
+                    out.writeInt(CHUNKS_FAILED);
+                    return;
+                }
+                if (n <= 0) break;
+                out.writeInt(n);
+                out.write(mBuffer, 0, n);
+                mPartBytes += n;
+            }
+        } finally {
+            try {
+                is.close();
+            } catch (Exception ex) {
+                // Do nothing
+            }
+        }
+        out.writeInt(CHUNKS_END);
+    }
+
+    /**
+     * Writes a String as its UTF-8 length and bytes. Unlike writeUTF it has
+     * no 64K limit and allows null.
+     *
+     * @param out The stream.
+     * @param s   The String.
+     * @throws IOException On error.
+     */
+    private static void writeString(DataOutputStream out, String s)
+            throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String getString(Cursor cursor, int index) {
+        return index > -1 ? cursor.getString(index) : null;
+    }
+
+    private static long getLong(Cursor cursor, int index, long multiplier) {
+        return index > -1 ? cursor.getLong(index) * multiplier : -1L;
+    }
+
+}
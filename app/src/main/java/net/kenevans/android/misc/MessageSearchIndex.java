@@ -0,0 +1,559 @@
+//Copyright (c) 2011 Kenneth Evans
+//
+//Permission is hereby granted, free of charge, to any person obtaining
+//a copy of this software and associated documentation files (the
+//"Software"), to deal in the Software without restriction, including
+//without limitation the rights to use, copy, modify, merge, publish,
+//distribute, sublicense, and/or sell copies of the Software, and to
+//permit persons to whom the Software is furnished to do so, subject to
+//the following conditions:
+//
+//The above copyright notice and this permission notice shall be included
+//in all copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+//EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+//MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+//IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+//CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+//TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+//SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+package net.kenevans.android.misc;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * App-private full-text index of the SMS bodies and MMS text parts, kept in
+ * an SQLite FTS4 table. It is updated incrementally from the highest _id
+ * indexed for each table. Deleted messages stay in the index until it is
+ * rebuilt.
+ * <p>
+ * The docid is the message _id times 2, plus 1 for MMS. Searches score the
+ * matches in Java from matchinfo, keep the best ones, and only then get the
+ * snippets for those.
+ */
+public class MessageSearchIndex extends SQLiteOpenHelper implements
+        IConstants {
+    private static final String DB_NAME = "search.db";
+    private static final int DB_VERSION = 1;
+
+    private static final String TABLE_SEARCH = "search";
+    private static final String TABLE_INFO = "info";
+    private static final String TABLE_STATE = "state";
+
+    private static final String SOURCE_SMS = "sms";
+    private static final String SOURCE_MMS = "mms";
+
+    /**
+     * The number of rows inserted per transaction.
+     */
+    private static final int ROWS_PER_TRANSACTION = 1000;
+
+    /**
+     * The number of MMS messages for which the addresses are gotten at a
+     * time.
+     */
+    private static final int MMS_BATCH_SIZE = 256;
+
+    /**
+     * The weights of the columns, body and address, in the score.
+     */
+    private static final double[] COLUMN_WEIGHTS = {1.0, 0.5};
+
+    /**
+     * The single instance for the process.
+     */
+    private static MessageSearchIndex sInstance;
+
+    private final Context mContext;
+
+    private MessageSearchIndex(Context context) {
+        super(context, DB_NAME, null, DB_VERSION);
+        mContext = context;
+    }
+
+    /**
+     * Gets the index.
+     *
+     * @param context The calling context.
+     * @return The index.
+     */
+    static synchronized MessageSearchIndex getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new MessageSearchIndex(
+                    context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE VIRTUAL TABLE " + TABLE_SEARCH
+                + " USING fts4(body, address)");
+        db.execSQL("CREATE TABLE " + TABLE_INFO
+                + " (docid INTEGER PRIMARY KEY, date INTEGER)");
+        db.execSQL("CREATE TABLE " + TABLE_STATE
+                + " (source TEXT PRIMARY KEY, max_id INTEGER)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_SEARCH);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_INFO);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_STATE);
+        onCreate(db);
+    }
+
+    /**
+     * Adds the messages newer than those already indexed. Called on a
+     * worker thread.
+     *
+     * @param rebuild Whether to discard the index and index all messages.
+     * @return The number of messages added.
+     */
+    synchronized int update(boolean rebuild) {
+        SQLiteDatabase db = getWritableDatabase();
+        if (rebuild) {
+            db.beginTransaction();
+            try {
+                db.execSQL("DELETE FROM " + TABLE_SEARCH);
+                db.execSQL("DELETE FROM " + TABLE_INFO);
+                db.execSQL("DELETE FROM " + TABLE_STATE);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+        Inserter inserter = new Inserter(db);
+        try {
+            updateSms(inserter);
+            updateMms(inserter);
+            inserter.commit();
+        } finally {
+            inserter.close();
+        }
+        Log.d(TAG, getClass().getSimpleName() + ".update: added "
+                + inserter.mCount);
+        return inserter.mCount;
+    }
+
+    /**
+     * @return The number of messages in the index.
+     */
+    int getCount() {
+        SQLiteStatement statement = getReadableDatabase().compileStatement(
+                "SELECT COUNT(*) FROM " + TABLE_INFO);
+        try {
+            return (int) statement.simpleQueryForLong();
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Indexes the SMS messages after the highest one indexed.
+     *
+     * @param inserter The Inserter.
+     */
+    private void updateSms(Inserter inserter) {
+        long maxId = getMaxId(inserter.mDb, SOURCE_SMS);
+        ContentResolver cr = mContext.getContentResolver();
+        Cursor cursor = null;
+        try {
+            cursor = cr.query(SMS_URI, new String[]{COL_ID, COL_ADDRESS,
+                            COL_DATE, COL_BODY}, COL_ID + ">" + maxId, null,
+                    COL_ID + " ASC");
+            if (cursor == null) return;
+            int indexId = cursor.getColumnIndex(COL_ID);
+            int indexAddress = cursor.getColumnIndex(COL_ADDRESS);
+            int indexDate = cursor.getColumnIndex(COL_DATE);
+            int indexBody = cursor.getColumnIndex(COL_BODY);
+            long id;
+            while (cursor.moveToNext()) {
+                id = cursor.getLong(indexId);
+                inserter.insert(2 * id, cursor.getString(indexBody),
+                        indexAddress > -1 ? cursor.getString(indexAddress)
+                                : null,
+                        indexDate > -1 ? cursor.getLong(indexDate) : -1L,
+                        SOURCE_SMS, id);
+            }
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    /**
+     * Indexes the MMS messages after the highest one indexed. The messages
+     * and their text parts are read with one cursor each, in order of
+     * message id, and merged.
+     *
+     * @param inserter The Inserter.
+     */
+    private void updateMms(Inserter inserter) {
+        long maxId = getMaxId(inserter.mDb, SOURCE_MMS);
+        ContentResolver cr = mContext.getContentResolver();
+        Cursor mmsCursor = null;
+        Cursor partCursor = null;
+        try {
+            mmsCursor = cr.query(MMS_URI, new String[]{COL_ID, COL_DATE},
+                    COL_ID + ">" + maxId, null, COL_ID + " ASC");
+            if (mmsCursor == null) return;
+            partCursor = cr.query(MMS_PART_URI, new String[]{COL_ID,
+                            COL_MID, COL_DATA, COL_TEXT},
+                    COL_MID + ">" + maxId + " AND " + COL_CT
+                            + "='text/plain'", null,
+                    COL_MID + " ASC, " + COL_ID + " ASC");
+            int indexId = mmsCursor.getColumnIndex(COL_ID);
+            int indexDate = mmsCursor.getColumnIndex(COL_DATE);
+            boolean hasPart = partCursor != null && partCursor.moveToFirst();
+            int indexMid = hasPart ? partCursor.getColumnIndex(COL_MID) : -1;
+            long[] ids = new long[MMS_BATCH_SIZE];
+            StringBuilder body = new StringBuilder();
+            boolean hasRow = mmsCursor.moveToFirst();
+            while (hasRow) {
+                int start = mmsCursor.getPosition();
+                int count = 0;
+                while (hasRow && count < MMS_BATCH_SIZE) {
+                    ids[count++] = mmsCursor.getLong(indexId);
+                    hasRow = mmsCursor.moveToNext();
+                }
+                Map<Long, String[]> addresses =
+                        MessageUtils.getMmsAddresses(mContext, ids, count);
+                mmsCursor.moveToPosition(start);
+                for (int i = 0; i < count; i++) {
+                    long id = mmsCursor.getLong(indexId);
+                    body.setLength(0);
+                    while (hasPart && partCursor.getLong(indexMid) < id) {
+                        hasPart = partCursor.moveToNext();
+                    }
+                    while (hasPart && partCursor.getLong(indexMid) == id) {
+                        appendPartText(body, partCursor);
+                        hasPart = partCursor.moveToNext();
+                    }
+                    String[] fromTo = addresses.get(id);
+                    inserter.insert(2 * id + 1, body.toString(),
+                            fromTo == null ? null
+                                    : MessageUtils.formatMmsListAddress(
+                                    fromTo),
+                            indexDate > -1 ? getMmsDate(mmsCursor, indexDate)
+                                    : -1L,
+                            SOURCE_MMS, id);
+                    mmsCursor.moveToNext();
+                }
+            }
+        } finally {
+            if (mmsCursor != null) mmsCursor.close();
+            if (partCursor != null) partCursor.close();
+        }
+    }
+
+    /**
+     * Gets the MMS date in ms. MMS dates are stored in s.
+     */
+    private static long getMmsDate(Cursor cursor, int indexDate) {
+        return cursor.getLong(indexDate) * MMS_DATE_MULTIPLIER;
+    }
+
+    /**
+     * Appends the text of the part at the current cursor position, which is
+     * in a file or in the text column, the same as DisplayMMSActivity.
+     *
+     * @param sb     The StringBuilder.
+     * @param cursor The part cursor.
+     */
+    private void appendPartText(StringBuilder sb, Cursor cursor) {
+        String text;
+        int indexData = cursor.getColumnIndex(COL_DATA);
+        if (indexData > -1 && cursor.getString(indexData) != null) {
+            text = MessageUtils.getMmsText(mContext,
+                    cursor.getString(cursor.getColumnIndex(COL_ID)));
+        } else {
+            text = cursor.getString(cursor.getColumnIndex(COL_TEXT));
+        }
+        if (text != null) {
+            sb.append(text).append('\n');
+        }
+    }
+
+    private static long getMaxId(SQLiteDatabase db, String source) {
+        Cursor cursor = db.rawQuery("SELECT max_id FROM " + TABLE_STATE
+                + " WHERE source=?", new String[]{source});
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1L;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Searches the index.
+     *
+     * @param query The FTS query, for example: word, "a phrase", pre*.
+     * @param limit The maximum number of hits.
+     * @return The hits, best first.
+     */
+    List<Hit> search(String query, int limit) {
+        SQLiteDatabase db = getReadableDatabase();
+        String[] args = {query};
+
+        // Score all the matches, keeping the best
+        PriorityQueue<Hit> best = new PriorityQueue<>(limit + 1,
+                Collections.reverseOrder(Hit.ORDER));
+        Cursor cursor = db.rawQuery("SELECT " + TABLE_SEARCH + ".docid, "
+                + TABLE_INFO + ".date, matchinfo(" + TABLE_SEARCH
+                + ", 'pcx') FROM " + TABLE_SEARCH + " JOIN " + TABLE_INFO
+                + " ON " + TABLE_INFO + ".docid=" + TABLE_SEARCH + ".docid"
+                + " WHERE " + TABLE_SEARCH + " MATCH ?", args);
+        try {
+            Hit hit;
+            while (cursor.moveToNext()) {
+                hit = new Hit(cursor.getLong(0), cursor.getLong(1),
+                        score(cursor.getBlob(2)));
+                best.add(hit);
+                if (best.size() > limit) {
+                    best.poll();
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        if (best.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        // Get the address and snippet for those
+        List<Hit> hits = new ArrayList<>(best);
+        Collections.sort(hits, Hit.ORDER);
+        StringBuilder sb = new StringBuilder();
+        for (Hit hit : hits) {
+            if (sb.length() > 0) sb.append(',');
+            sb.append(hit.mDocId);
+        }
+        cursor = db.rawQuery("SELECT docid, address, snippet("
+                + TABLE_SEARCH + ", '', '', '...', 0, 12) FROM "
+                + TABLE_SEARCH + " WHERE " + TABLE_SEARCH + " MATCH ? AND"
+                + " docid IN (" + sb + ")", args);
+        try {
+            LongIntHashMap positions = new LongIntHashMap(hits.size());
+            for (int i = 0; i < hits.size(); i++) {
+                positions.put(hits.get(i).mDocId, i);
+            }
+            int i;
+            while (cursor.moveToNext()) {
+                i = positions.get(cursor.getLong(0), -1);
+                if (i < 0) continue;
+                hits.get(i).mAddress = cursor.getString(1);
+                hits.get(i).mSnippet = cursor.getString(2);
+            }
+        } finally {
+            cursor.close();
+        }
+        return hits;
+    }
+
+    /**
+     * Scores a match from matchinfo 'pcx'. For each phrase and column the
+     * hits in this row are divided by the hits in all rows, so rare terms
+     * count more, and weighted by column.
+     *
+     * @param blob The matchinfo, 32-bit unsigned ints in machine order.
+     * @return The score.
+     */
+    static double score(byte[] blob) {
+        if (blob == null || blob.length < 8) return 0;
+        int nPhrases = getInt(blob, 0);
+        int nCols = getInt(blob, 1);
+        double score = 0;
+        int index;
+        int hitsAll;
+        for (int i = 0; i < nPhrases; i++) {
+            for (int j = 0; j < nCols; j++) {
+                index = 2 + 3 * (i * nCols + j);
+                if (4 * (index + 2) + 4 > blob.length) return score;
+                hitsAll = getInt(blob, index + 1);
+                if (hitsAll > 0) {
+                    score += (j < COLUMN_WEIGHTS.length ?
+                            COLUMN_WEIGHTS[j] : 1.0)
+                            * getInt(blob, index) / hitsAll;
+                }
+            }
+        }
+        return score;
+    }
+
+    /**
+     * Gets the int at the given int index, little-endian as on Android
+     * devices.
+     */
+    private static int getInt(byte[] blob, int index) {
+        int offset = 4 * index;
+        return (blob[offset] & 0xff) | (blob[offset + 1] & 0xff) << 8
+                | (blob[offset + 2] & 0xff) << 16
+                | (blob[offset + 3] & 0xff) << 24;
+    }
+
+    /**
+     * Inserts rows with compiled statements, committing every
+     * ROWS_PER_TRANSACTION rows along with the highest _id for the source,
+     * so an interrupted update resumes where it stopped. A transaction that
+     * is not committed when the Inserter is closed, because an insert
+     * failed, is rolled back, so the failed row is tried again next time.
+     */
+    private static class Inserter {
+        private final SQLiteDatabase mDb;
+        private final SQLiteStatement mInsertSearch;
+        private final SQLiteStatement mInsertInfo;
+        private final SQLiteStatement mUpdateState;
+        private int mCount;
+        private int mInTransaction;
+        private boolean mOpen;
+        private String mSource;
+        private long mMaxId;
+
+        private Inserter(SQLiteDatabase db) {
+            mDb = db;
+            mInsertSearch = db.compileStatement("INSERT OR REPLACE INTO "
+                    + TABLE_SEARCH + " (docid, body, address) VALUES (?,?,?)");
+            mInsertInfo = db.compileStatement("INSERT OR REPLACE INTO "
+                    + TABLE_INFO + " (docid, date) VALUES (?,?)");
+            mUpdateState = db.compileStatement("INSERT OR REPLACE INTO "
+                    + TABLE_STATE + " (source, max_id) VALUES (?,?)");
+        }
+
+        private void insert(long docId, String body, String address,
+                            long date, String source, long id) {
+            if (mOpen && !source.equals(mSource)) {
+                commit();
+            }
+            if (!mOpen) {
+                mDb.beginTransaction();
+                mOpen = true;
+            }
+            mSource = source;
+            mInsertSearch.bindLong(1, docId);
+            bindString(mInsertSearch, 2, body);
+            bindString(mInsertSearch, 3, address);
+            mInsertSearch.executeInsert();
+            mInsertInfo.bindLong(1, docId);
+            mInsertInfo.bindLong(2, date);
+            mInsertInfo.executeInsert();
+            // Only record the id once both rows are in
+            mMaxId = id;
+            mCount++;
+            if (++mInTransaction >= ROWS_PER_TRANSACTION) {
+                commit();
+            }
+        }
+
+        private void commit() {
+            if (!mOpen) return;
+            try {
+                if (mInTransaction > 0) {
+                    mUpdateState.bindString(1, mSource);
+                    mUpdateState.bindLong(2, mMaxId);
+                    mUpdateState.execute();
+                }
+                mDb.setTransactionSuccessful();
+            } finally {
+                endTransaction();
+            }
+        }
+
+        /**
+         * Ends the open transaction, if any. It is rolled back unless commit
+         * marked it successful.
+         */
+        private void endTransaction() {
+            if (!mOpen) return;
+            mOpen = false;
+            mInTransaction = 0;
+            mDb.endTransaction();
+        }
+
+        private void close() {
+            try {
+                endTransaction();
+            } finally {
+                mInsertSearch.close();
+                mInsertInfo.close();
+                mUpdateState.close();
+            }
+        }
+
+        private static void bindString(SQLiteStatement statement, int index,
+                                       String value) {
+            if (value == null) {
+                statement.bindNull(index);
+            } else {
+                statement.bindString(index, value);
+            }
+        }
+    }
+
+    /**
+     * A search hit.
+     */
+    static class Hit {
+        /**
+         * Best first: higher score, then newer.
+         */
+        static final Comparator<Hit> ORDER = new Comparator<Hit>() {
+            @Override
+            public int compare(Hit hit1, Hit hit2) {
+                int result = Double.compare(hit2.mScore, hit1.mScore);
+                if (result == 0) {
+                    result = Long.compare(hit2.mDate, hit1.mDate);
+                }
+                return result;
+            }
+        };
+
+        private final long mDocId;
+        private final long mDate;
+        private final double mScore;
+        private String mAddress;
+        private String mSnippet;
+
+        private Hit(long docId, long date, double score) {
+            mDocId = docId;
+            mDate = date;
+            mScore = score;
+        }
+
+        boolean isMms() {
+            return (mDocId & 1) != 0;
+        }
+
+        long getId() {
+            return mDocId >> 1;
+        }
+
+        long getDate() {
+            return mDate;
+        }
+
+        String getAddress() {
+            return mAddress;
+        }
+
+        String getSnippet() {
+            return mSnippet;
+        }
+    }
+
+}
@@ -34,12 +34,15 @@ import android.provider.ContactsContract;
 import android.telephony.TelephonyManager;
 import android.util.Log;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.text.MessageFormat;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Locale;
+import java.util.Map;
 
 import androidx.core.app.ActivityCompat;
 
@@ -48,33 +51,68 @@ import androidx.core.app.ActivityCompat;
  */
 public class MessageUtils implements IConstants {
     /**
-     * The static format string to use for formatting dates.
+     * The static formatter to use for formatting dates, "MMM dd, yyyy
+     * HH:mm:ss Z". The formatters are thread safe.
      */
-    private static final String longFormat = "MMM dd, yyyy HH:mm:ss Z";
-    private static final SimpleDateFormat longFormatter = new SimpleDateFormat(
-            longFormat, Locale.US);
+    private static final CachedDateFormat longFormatter =
+            new CachedDateFormat(CachedDateFormat.STYLE_LONG);
 
     /**
-     * The static format string to use for formatting dates.
+     * The static medium formatter, "MMM dd, yyyy HH:mm:ss".
      */
-    private static final String mediumFormat = "MMM dd, yyyy HH:mm:ss";
-    static final SimpleDateFormat mediumFormatter = new
-            SimpleDateFormat(
-            mediumFormat, Locale.US);
+    static final CachedDateFormat mediumFormatter =
+            new CachedDateFormat(CachedDateFormat.STYLE_MEDIUM);
 
     /**
-     * The static short format string to use for formatting dates.
+     * The static short formatter, "M/d/yy h:mm a".
      */
-    private static final String shortFormat = "M/d/yy h:mm a";
-    static final SimpleDateFormat shortFormatter = new SimpleDateFormat(
-            shortFormat, Locale.US);
+    static final CachedDateFormat shortFormatter =
+            new CachedDateFormat(CachedDateFormat.STYLE_SHORT);
+
+    /**
+     * The value of phoneNumberKey when there is no usable number.
+     */
+    static final long NO_PHONE_KEY = -1;
+
+    /**
+     * The MMS address type for From.
+     */
+    static final int MMS_ADDR_FROM = 137;
+
+    /**
+     * The MMS address type for To.
+     */
+    static final int MMS_ADDR_TO = 151;
+
+    /**
+     * The MMS From address used for outgoing messages.
+     */
+    static final String MMS_ADDR_INSERT_TOKEN = "insert-address-token";
+
+    /**
+     * Whether the MMS provider has refused a query of the addr table for more
+     * than one message, so getMmsAddresses should not try it again.
+     */
+    private static volatile boolean sMmsBulkAddrUnsupported;
+
+    /**
+     * Powers of 10 from 10^0 to 10^18.
+     */
+    private static final long[] POWERS_OF_10 = new long[19];
+
+    static {
+        POWERS_OF_10[0] = 1;
+        for (int i = 1; i < POWERS_OF_10.length; i++) {
+            POWERS_OF_10[i] = 10 * POWERS_OF_10[i - 1];
+        }
+    }
 
     /**
      * Format the date using the static format.
      *
      * @param dateNum The date number.
      * @return The formatted string.
-     * @see #longFormat
+     * @see #longFormatter
      */
     static String formatDate(Long dateNum) {
         return formatDate(longFormatter, dateNum);
@@ -86,9 +124,9 @@ public class MessageUtils implements IConstants {
      * @param formatter The formatter.
      * @param dateNum   The date number.
      * @return The formatted string.
-     * @see #longFormat
+     * @see #longFormatter
      */
-    static String formatDate(SimpleDateFormat formatter, Long dateNum) {
+    static String formatDate(CachedDateFormat formatter, Long dateNum) {
         // Consider using Date.toString() as it might be more locale
         // independent.
         if (dateNum == null) {
@@ -309,6 +347,173 @@ public class MessageUtils implements IConstants {
         return address;
     }
 
+    /**
+     * Makes a selection of the form "column IN (id1,id2,...)".
+     *
+     * @param column The column.
+     * @param ids    Array holding the ids.
+     * @param count  The number of ids to use from the array.
+     * @return The selection.
+     */
+    static String inSelection(String column, long[] ids, int count) {
+        StringBuilder sb = new StringBuilder(column.length() + 6 + 12 * count);
+        sb.append(column).append(" IN (");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(ids[i]);
+        }
+        return sb.append(')').toString();
+    }
+
+    /**
+     * Gets the From and To addresses for several MMS messages at once. The
+     * addr table is queried for all of them with one IN selection if the
+     * provider allows it, otherwise with one query per message for both
+     * types. For each type the first non-null address is used, and "" if
+     * there is none, as in getMmsAddress.
+     *
+     * @param context The calling context.
+     * @param ids     Array holding the message ids.
+     * @param count   The number of ids to use from the array.
+     * @return Map from message id to {from, to}. Messages that could not be
+     * queried are missing.
+     * @see #getMmsAddress(Context, int, String)
+     */
+    static Map<Long, String[]> getMmsAddresses(Context context, long[] ids,
+                                               int count) {
+        Map<Long, String[]> map = new HashMap<>();
+        if (count <= 0) return map;
+        String typeSelection = "type IN (" + MMS_ADDR_FROM + ","
+                + MMS_ADDR_TO + ")";
+        if (count > 1 && !sMmsBulkAddrUnsupported) {
+            Uri uri = Uri.parse("content://mms/addr");
+            String selection = typeSelection + " AND "
+                    + inSelection("msg_id", ids, count);
+            if (queryMmsAddresses(context, uri, selection, map)) {
+                for (int i = 0; i < count; i++) {
+                    if (!map.containsKey(ids[i])) {
+                        map.put(ids[i], new String[]{"", ""});
+                    }
+                }
+                return map;
+            }
+            Log.d(TAG, MessageUtils.class.getSimpleName()
+                    + ".getMmsAddresses: Using one query per message");
+            sMmsBulkAddrUnsupported = true;
+            map.clear();
+        }
+        for (int i = 0; i < count; i++) {
+            Uri uri = Uri.parse(MessageFormat.format("content://mms/{0}/addr",
+                    Long.toString(ids[i])));
+            if (queryMmsAddresses(context, uri, typeSelection + " AND msg_id="
+                    + ids[i], map) && !map.containsKey(ids[i])) {
+                map.put(ids[i], new String[]{"", ""});
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Queries the MMS addr table and adds the From and To addresses found to
+     * the map.
+     *
+     * @param context   The calling context.
+     * @param uri       The URI to query.
+     * @param selection The selection.
+     * @param map       Map from message id to {from, to}.
+     * @return If the query could be made.
+     */
+    private static boolean queryMmsAddresses(Context context, Uri uri,
+                                             String selection,
+                                             Map<Long, String[]> map) {
+        String[] columns = {"msg_id", "type", "address"};
+        Cursor cursor = null;
+        try {
+            cursor = context.getContentResolver().query(uri, columns,
+                    selection, null, null);
+            if (cursor == null) return false;
+            int indexMsgId = cursor.getColumnIndex("msg_id");
+            int indexType = cursor.getColumnIndex("type");
+            int indexAddr = cursor.getColumnIndex("address");
+            if (indexMsgId < 0 || indexType < 0 || indexAddr < 0) {
+                return false;
+            }
+            long msgId;
+            int slot;
+            String val;
+            String[] addresses;
+            while (cursor.moveToNext()) {
+                msgId = cursor.getLong(indexMsgId);
+                addresses = map.get(msgId);
+                if (addresses == null) {
+                    addresses = new String[]{"", ""};
+                    map.put(msgId, addresses);
+                }
+                slot = cursor.getInt(indexType) == MMS_ADDR_FROM ? 0 : 1;
+                val = cursor.getString(indexAddr);
+                if (val != null && addresses[slot].length() == 0) {
+                    addresses[slot] = val;
+                }
+            }
+            return true;
+        } catch (Exception ex) {
+            Log.d(TAG, MessageUtils.class.getSimpleName()
+                    + ".queryMmsAddresses: " + uri + ": " + ex.getMessage());
+            return false;
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    /**
+     * Formats the address shown in the MMS lists, using the From address or
+     * the To address if it is outgoing.
+     *
+     * @param addresses The {from, to} addresses or null if not known.
+     * @return The formatted address.
+     */
+    static String formatMmsListAddress(String[] addresses) {
+        String address = "<Address NA>";
+        if (addresses != null) {
+            if (!addresses[0].equals(MMS_ADDR_INSERT_TOKEN)) {
+                address = "From: " + addresses[0];
+            } else {
+                // Is outgoing
+                address = "To: " + addresses[1];
+            }
+        }
+        return address;
+    }
+
+    /**
+     * Gets the text of an MMS text part whose data is in a file.
+     *
+     * @param context The calling context.
+     * @param partId  The part id.
+     * @return The text, empty if it could not be read.
+     */
+    static String getMmsText(Context context, String partId) {
+        Uri partURI = Uri.withAppendedPath(MMS_PART_URI, partId);
+        StringBuilder sb = new StringBuilder();
+        try (InputStream is =
+                     context.getContentResolver().openInputStream(partURI)) {
+            if (is != null) {
+                // Read it all, keeping the line breaks
+                InputStreamReader reader = new InputStreamReader(is,
+                        StandardCharsets.UTF_8);
+                char[] buf = new char[4096];
+                int n;
+                while ((n = reader.read(buf)) != -1) {
+                    sb.append(buf, 0, n);
+                }
+            }
+        } catch (IOException ex) {
+            Log.e(TAG, MessageUtils.class.getSimpleName()
+                    + ".getMmsText Exception: " + ex.getMessage());
+        }
+        return sb.toString();
+    }
+
     /**
      * Gets all the MMS address for the given id, one per line in the form: <br>
      * "type address contact_name"
@@ -338,8 +543,7 @@ public class MessageUtils implements IConstants {
         String type;
         String contactId;
         String contactName;
-        String thisPhoneNumber = compressPhoneNumber(getThisPhoneNumber
-                (context));
+        long thisPhoneKey = phoneNumberKey(getThisPhoneNumber(context));
         if (cursor.moveToFirst()) {
             do {
                 addr = type = contactId = "";
@@ -361,7 +565,8 @@ public class MessageUtils implements IConstants {
                 if (contactName != null) {
                     if (contactName.equals("Unknown")) {
                         // Check if it is this phone as a last ditch resort
-                        if (compressPhoneNumber(addr).equals(thisPhoneNumber)) {
+                        long key = phoneNumberKey(addr);
+                        if (key != NO_PHONE_KEY && key == thisPhoneKey) {
                             contactName = " This Phone";
                         } else {
                             contactName = "";
@@ -388,28 +593,42 @@ public class MessageUtils implements IConstants {
      * @return Column names and values.
      */
     static String getColumnNamesAndValues(Cursor cursor) {
-        String info = "";
+        StringBuilder sb = new StringBuilder(cursor.getColumnCount() * 32);
+        appendColumnNamesAndValues(sb, cursor);
+        return sb.toString();
+    }
+
+    /**
+     * Appends the column names and values for the current position of the
+     * given cursor, one per line.
+     *
+     * @param sb     The StringBuilder to append to.
+     * @param cursor The cursor.
+     */
+    static void appendColumnNamesAndValues(StringBuilder sb, Cursor cursor) {
         String[] columnNames = cursor.getColumnNames();
-        for (String name : columnNames) {
+        String name;
+        for (int index = 0; index < columnNames.length; index++) {
+            name = columnNames[index];
+            // Don't do a LF the first time
+            if (index > 0) {
+                sb.append('\n');
+            }
+            sb.append(name).append(": ");
             try {
-                int index = cursor.getColumnIndex(name);
-                // Don't do a LF the first time
-                if (info.length() != 0) {
-                    info += "\n";
-                }
                 // Don't print the body
                 if (name.equals("body")) {
-                    info += name + ": <" + cursor.getString(index).length()
-                            + " chars>";
+                    String body = cursor.getString(index);
+                    sb.append('<').append(body == null ? 0 : body.length())
+                            .append(" chars>");
                 } else {
-                    info += name + ": " + cursor.getString(index);
+                    sb.append(cursor.getString(index));
                 }
             } catch (Exception ex) {
                 // Shouldn't happen
-                info += name + ": Not found";
+                sb.append("Not found");
             }
         }
-        return info;
     }
 
     /**
@@ -650,8 +869,10 @@ public class MessageUtils implements IConstants {
                         new String[]{id}, null);
         if (rawCursor != null) {
             info += "Linked contacts: " + rawCursor.getCount() + "\n";
+            Map<String, RawContactDetails> details =
+                    getRawContactDetails(context, id);
             while (rawCursor.moveToNext()) {
-                info += getRawContactDetails(context, rawCursor);
+                info += formatRawContactDetails(rawCursor, details);
             }
             rawCursor.close();
         }
@@ -704,25 +925,91 @@ public class MessageUtils implements IConstants {
         return colName + ": " + stringVal + "\n";
     }
 
+    /**
+     * Gets the names, phones, emails, and postal addresses of all the raw
+     * contacts of a contact. They all come from one query of the Data table
+     * and are grouped by raw contact here.
+     *
+     * @param context   The calling context.
+     * @param contactId The _id of the contact.
+     * @return A map from the raw contact _id to the details.
+     */
+    private static Map<String, RawContactDetails> getRawContactDetails(
+            Context context, String contactId) {
+        Map<String, RawContactDetails> map = new HashMap<>();
+        String[] projection = {ContactsContract.Data.RAW_CONTACT_ID,
+                ContactsContract.Data.MIMETYPE, ContactsContract.Data.DATA1,
+                ContactsContract.Data.DATA2};
+        Cursor cursor = context.getContentResolver().query(
+                ContactsContract.Data.CONTENT_URI, projection,
+                ContactsContract.Data.CONTACT_ID + " = ?",
+                new String[]{contactId}, ContactsContract.Data._ID);
+        if (cursor == null) return map;
+        int indexRawId = cursor.getColumnIndex(ContactsContract.Data
+                .RAW_CONTACT_ID);
+        int indexMimeType = cursor.getColumnIndex(ContactsContract.Data
+                .MIMETYPE);
+        // The value and type are DATA1 and DATA2 for all of these kinds
+        int indexData = cursor.getColumnIndex(ContactsContract.Data.DATA1);
+        int indexType = cursor.getColumnIndex(ContactsContract.Data.DATA2);
+        String rawId, mimeType;
+        RawContactDetails details;
+        while (cursor.moveToNext()) {
+            rawId = cursor.getString(indexRawId);
+            mimeType = cursor.getString(indexMimeType);
+            details = map.get(rawId);
+            if (details == null) {
+                details = new RawContactDetails();
+                map.put(rawId, details);
+            }
+            if (ContactsContract.CommonDataKinds.Phone.CONTENT_ITEM_TYPE
+                    .equals(mimeType)) {
+                details.phones += "  "
+                        + getPhoneType(cursor.getInt(indexType)) + ": "
+                        + cursor.getString(indexData) + "\n";
+            } else if (ContactsContract.CommonDataKinds.Email
+                    .CONTENT_ITEM_TYPE.equals(mimeType)) {
+                details.emails += "  "
+                        + getEmailType(cursor.getInt(indexType)) + ": "
+                        + cursor.getString(indexData) + "\n";
+            } else if (ContactsContract.CommonDataKinds.StructuredPostal
+                    .CONTENT_ITEM_TYPE.equals(mimeType)) {
+                details.postalAddresses += "  "
+                        + getEmailType(cursor.getInt(indexType)) + ": \n"
+                        + cursor.getString(indexData) + "\n";
+            } else if (ContactsContract.CommonDataKinds.StructuredName
+                    .CONTENT_ITEM_TYPE.equals(mimeType) && !details.hasName) {
+                // Use the first one though there should only be one
+                details.name = cursor.getString(indexData);
+                details.hasName = true;
+            }
+        }
+        cursor.close();
+        return map;
+    }
+
     /**
      * Gets information including phones, emails, and postal addresses for a
      * raw contact.
      *
-     * @param context   The calling context.
      * @param rawCursor The Cursor over raw cantacts.
+     * @param map       The details from getRawContactDetails.
      * @return A string with the info.
      */
-    private static String getRawContactDetails(Context context, Cursor
-            rawCursor) {
+    private static String formatRawContactDetails(Cursor rawCursor,
+            Map<String, RawContactDetails> map) {
         String info = "";
         String rawId = rawCursor
                 .getString(rawCursor
                         .getColumnIndex(ContactsContract.RawContacts
                                 ._ID));
+        RawContactDetails details = map.get(rawId);
+        if (details == null) {
+            details = new RawContactDetails();
+        }
 
         // Name
-        String name = getRawContactName(context, rawCursor);
-        info += "\n" + name + " (raw _id=" + rawId + "):\n";
+        info += "\n" + details.name + " (raw _id=" + rawId + "):\n";
         String accountName = rawCursor
                 .getString(rawCursor
                         .getColumnIndex(ContactsContract.RawContacts
@@ -736,73 +1023,9 @@ public class MessageUtils implements IConstants {
                                 .ACCOUNT_TYPE));
         info += "Account Type: " + accountType + "\n";
 
-        // Phones
-        info += "Phones:\n";
-        Cursor phonesCursor = context.getContentResolver().query(
-                ContactsContract.CommonDataKinds.Phone.CONTENT_URI, null,
-                ContactsContract.CommonDataKinds.Phone.RAW_CONTACT_ID + " = ?",
-                new String[]{rawId}, null);
-        if (phonesCursor == null) return null;
-        while (phonesCursor.moveToNext()) {
-            String phoneNumber = phonesCursor
-                    .getString(phonesCursor
-                            .getColumnIndex(ContactsContract
-                                    .CommonDataKinds.Phone.NUMBER));
-            int phoneType = phonesCursor
-                    .getInt(phonesCursor
-                            .getColumnIndex(ContactsContract
-                                    .CommonDataKinds.Phone.TYPE));
-            info += "  " + MessageUtils.getPhoneType(phoneType) + ": "
-                    + phoneNumber + "\n";
-        }
-        phonesCursor.close();
-
-        // Email
-        info += "Email Addresses:\n";
-        Cursor emailCur = context.getContentResolver().query(
-                ContactsContract.CommonDataKinds.Email.CONTENT_URI, null,
-                ContactsContract.CommonDataKinds.Email.RAW_CONTACT_ID + " = ?",
-                new String[]{rawId}, null);
-        if (emailCur == null) return null;
-        while (emailCur.moveToNext()) {
-            // This would allow you get several email addresses
-            // if the email addresses were stored in an array
-            String email = emailCur
-                    .getString(emailCur
-                            .getColumnIndex(ContactsContract.CommonDataKinds
-                                    .Email.DATA));
-            int emailType = emailCur
-                    .getInt(emailCur
-                            .getColumnIndex(ContactsContract.CommonDataKinds
-                                    .Email.TYPE));
-            info += "  " + MessageUtils.getEmailType(emailType) + ": " + email
-                    + "\n";
-        }
-        emailCur.close();
-
-        // Postal addresses
-        info += "Postal Addresses:\n";
-        Cursor postalCursor = context.getContentResolver().query(
-                ContactsContract.CommonDataKinds.StructuredPostal
-                        .CONTENT_URI, null,
-                ContactsContract.Data.RAW_CONTACT_ID + " = ?",
-                new String[]{rawId}, null);
-        if (postalCursor == null) return null;
-        while (postalCursor.moveToNext()) {
-            String address = postalCursor
-                    .getString(postalCursor
-                            .getColumnIndex(ContactsContract.CommonDataKinds
-                                    .StructuredPostal.DATA));
-            int postalType = postalCursor
-                    .getInt(postalCursor
-                            .getColumnIndex(ContactsContract.CommonDataKinds
-                                    .StructuredPostal.TYPE));
-            info += "  " + MessageUtils.getEmailType(postalType) + ": " +
-                    "\n" + address
-                    + "\n";
-        }
-        postalCursor.close();
-
+        info += "Phones:\n" + details.phones;
+        info += "Email Addresses:\n" + details.emails;
+        info += "Postal Addresses:\n" + details.postalAddresses;
         return info;
     }
 
@@ -899,63 +1122,6 @@ public class MessageUtils implements IConstants {
         return id;
     }
 
-    /**
-     * Gets the id for the given name.
-     *
-     * @param context The calling context.
-     * @param number  The number.
-     * @return The id or -1 on failure.
-     */
-    private static long getContactIdFromNumber(Context context, String number) {
-        if (number == null || number.length() == 0) {
-            return -1L;
-        }
-        // Get rid of everything but numerals for comparison
-        String number1 = compressPhoneNumber(number);
-        if (number1 == null || number1.length() == 0) {
-            return -1L;
-        }
-        String[] columns = {ContactsContract.CommonDataKinds.Phone.CONTACT_ID,
-                ContactsContract.CommonDataKinds.Phone.NUMBER};
-        // Look in the phone database
-        Cursor cursor = context.getContentResolver().query(
-                ContactsContract.CommonDataKinds.Phone.CONTENT_URI, columns,
-                null, null, null);
-        if (cursor == null) return -1L;
-        int indexId = cursor
-                .getColumnIndex(ContactsContract.CommonDataKinds.Phone
-                        .CONTACT_ID);
-        int indexNumber = cursor
-                .getColumnIndex(ContactsContract.CommonDataKinds.Phone.NUMBER);
-        if (indexId < 0 || indexNumber < 0 || cursor.getCount() == 0) {
-            return -1L;
-        }
-        long id = -1L;
-        long lVal;
-        String number2;
-        while (cursor.moveToNext()) {
-            number2 = cursor
-                    .getString(cursor
-                            .getColumnIndex(ContactsContract.CommonDataKinds
-                                    .Phone.NUMBER));
-            if (number2 == null) {
-                continue;
-            }
-            number2 = compressPhoneNumber(number2);
-            lVal = cursor.getLong(indexId);
-//            Log.d(TAG, MessageUtils.class.getSimpleName()
-//                    + ".getContactIdFromNumber: " + "number1,number2="
-//                    + number1 + "," + number2);
-            if (number1.equals(number2)) {
-                // Get the first one
-                id = lVal;
-                break;
-            }
-        }
-        cursor.close();
-        return id;
-    }
-
     /**
      * Gets the contact name give a phone number.
      *
@@ -970,20 +1136,18 @@ public class MessageUtils implements IConstants {
             return name;
         }
         // Get rid of everything but numerals for comparison
-        String number1 = compressPhoneNumber(number);
-        if (number1 == null || number1.length() == 0) {
+        long key = phoneNumberKey(number);
+        if (key == NO_PHONE_KEY) {
             return name;
         }
-        long id = getContactIdFromNumber(context, number1);
-        if (id > -1) {
-            name = getContactName(context, Long.toString(id));
+        // The index has the name, so the Contacts table is not needed
+        String found = ContactIndex.getInstance(context).lookup(key);
+        if (found != null) {
+            name = found;
         }
-        if (name == null) return null;
         if (name.equals("Unknown")) {
             // Check if it is this phone as a last ditch resort
-            String thisPhoneNumber = compressPhoneNumber(getThisPhoneNumber
-                    (context));
-            if (number1.equals(thisPhoneNumber)) {
+            if (key == phoneNumberKey(getThisPhoneNumber(context))) {
                 name = " This Phone";
             }
         }
@@ -1025,15 +1189,86 @@ public class MessageUtils implements IConstants {
      * @param number The number.
      * @return The compressed number.
      */
-    private static String compressPhoneNumber(String number) {
+    static String compressPhoneNumber(String number) {
         if (number == null) {
             return null;
         }
-        String compressed = number.replaceAll("[^0-9]", "");
-        if (compressed.length() == 11 && compressed.startsWith("1")) {
-            compressed = compressed.substring(1);
+        int len = number.length();
+        int nDigits = 0;
+        char c;
+        for (int i = 0; i < len; i++) {
+            c = number.charAt(i);
+            if (c >= '0' && c <= '9') {
+                nDigits++;
+            }
+        }
+        boolean dropOne = nDigits == 11;
+        if (nDigits == len && !(dropOne && number.charAt(0) == '1')) {
+            // Already compressed
+            return number;
+        }
+        char[] digits = new char[nDigits];
+        int n = 0;
+        for (int i = 0; i < len; i++) {
+            c = number.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits[n++] = c;
+            }
         }
-        return compressed;
+        if (dropOne && digits[0] == '1') {
+            return new String(digits, 1, 10);
+        }
+        return new String(digits);
+    }
+
+    /**
+     * Gets a numeric key for a phone number that is the same for two numbers
+     * exactly when their compressed forms are the same. It is the compressed
+     * numerals with a 1 in front, so leading zeros are kept, and is found in
+     * one pass without allocating.
+     *
+     * @param number The number.
+     * @return The key or NO_PHONE_KEY if there are no numerals or more than
+     * 18.
+     * @see #compressPhoneNumber(String)
+     */
+    static long phoneNumberKey(String number) {
+        if (number == null) {
+            return NO_PHONE_KEY;
+        }
+        int len = number.length();
+        int nDigits = 0;
+        long value = 0;
+        char c;
+        for (int i = 0; i < len; i++) {
+            c = number.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (++nDigits > 18) {
+                    return NO_PHONE_KEY;
+                }
+                value = 10 * value + (c - '0');
+            }
+        }
+        if (nDigits == 0) {
+            return NO_PHONE_KEY;
+        }
+        if (nDigits == 11 && value / POWERS_OF_10[10] == 1) {
+            value -= POWERS_OF_10[10];
+            nDigits = 10;
+        }
+        return POWERS_OF_10[nDigits] + value;
+    }
+
+    /**
+     * The parts of a raw contact shown in the contact information, already
+     * formatted.
+     */
+    private static class RawContactDetails {
+        private String name = "<Not found>";
+        private boolean hasName;
+        private String phones = "";
+        private String emails = "";
+        private String postalAddresses = "";
     }
 
 }
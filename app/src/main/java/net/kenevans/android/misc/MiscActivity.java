@@ -54,6 +54,9 @@ public class MiscActivity extends AppCompatActivity {
             // new Data("WebView", "Test WebView", InfoActivity.class),
             new Data("Application Info", "Display Application Information",
                     ApplicationInfoActivity.class),
+            new Data("Conversations",
+                    "Display the SMS and MMS conversations",
+                    ConversationsActivity.class),
             new Data("MMS and SMS Messages",
                     "Display all SMS and MMS messsages",
                     MMSSMSActivity.class),
@@ -63,6 +66,9 @@ public class MiscActivity extends AppCompatActivity {
             new Data("MMS Messages",
                     "Display all messages in the MMS database",
                     MMSActivity.class),
+            new Data("Search Messages",
+                    "Search the text of the SMS and MMS messages",
+                    SearchActivity.class),
             // new Data("Messages", "Display all SMS and MMS messages",
             // MessageActivity.class),
             new Data("Call History", "Display call history",
@@ -87,6 +93,9 @@ public class MiscActivity extends AppCompatActivity {
                     "Get information about the carrier", NetworkActivity.class),
             new Data("Application Info", "Display Application Information",
                     ApplicationInfoActivity.class),
+            new Data("Conversations",
+                    "Display the SMS and MMS conversations",
+                    ConversationsActivity.class),
             new Data("MMS and SMS Messages",
                     "Display all SMS and MMS messsages",
                     MMSSMSActivity.class),
@@ -96,6 +105,9 @@ public class MiscActivity extends AppCompatActivity {
             new Data("MMS Messages",
                     "Display all messages in the MMS database",
                     MMSActivity.class),
+            new Data("Search Messages",
+                    "Search the text of the SMS and MMS messages",
+                    SearchActivity.class),
             new Data("Call History", "Display call history",
                     CallHistoryActivity.class),
             new Data("Contacts", "Display contacts", ContactsActivity.class),
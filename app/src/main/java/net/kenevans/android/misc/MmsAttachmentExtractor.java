@@ -0,0 +1,260 @@
+//Copyright (c) 2011 Kenneth Evans
+//
+//Permission is hereby granted, free of charge, to any person obtaining
+//a copy of this software and associated documentation files (the
+//"Software"), to deal in the Software without restriction, including
+//without limitation the rights to use, copy, modify, merge, publish,
+//distribute, sublicense, and/or sell copies of the Software, and to
+//permit persons to whom the Software is furnished to do so, subject to
+//the following conditions:
+//
+//The above copyright notice and this permission notice shall be included
+//in all copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+//EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+//MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+//IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+//CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+//TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+//SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+package net.kenevans.android.misc;
+
+import android.app.Activity;
+import android.content.ContentResolver;
+import android.content.Intent;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.ParcelFileDescriptor;
+import android.provider.DocumentsContract;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import androidx.annotation.RequiresApi;
+
+/**
+ * Copies MMS attachments to a folder chosen with ACTION_OPEN_DOCUMENT_TREE,
+ * in the background. Each part is copied from its file descriptor to the
+ * new document with FileChannel.transferTo, so the data is not decoded or
+ * brought onto the heap. If the source is a pipe rather than a file, a
+ * direct buffer is used instead. Choosing the folder requires API 21.
+ */
+public class MmsAttachmentExtractor extends ExportTask {
+    /**
+     * The size of the direct buffer used when transferTo cannot be.
+     */
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    /**
+     * Parts that are not attachments.
+     */
+    private static final String PART_SELECTION = COL_DATA + " IS NOT NULL"
+            + " AND " + COL_CT + "<>'application/smil'";
+
+    private final ContentResolver mResolver;
+    private final Uri mTreeUri;
+    private final String mSelection;
+    private ByteBuffer mBuffer;
+    private long mBytes;
+
+    /**
+     * Constructor.
+     *
+     * @param activity  The activity.
+     * @param treeUri   The Uri of the folder from ACTION_OPEN_DOCUMENT_TREE.
+     * @param messageId The MMS message id or -1 for all messages.
+     */
+    private MmsAttachmentExtractor(Activity activity, Uri treeUri,
+                                   long messageId) {
+        super(activity, "Extracting Attachments");
+        mResolver = activity.getContentResolver();
+        mTreeUri = treeUri;
+        mSelection = messageId < 0 ? PART_SELECTION
+                : COL_MID + "=" + messageId + " AND " + PART_SELECTION;
+    }
+
+    /**
+     * Asks the user for the destination folder. The result is returned to
+     * the activity's onActivityResult with requestCode OPEN_DOCUMENT_TREE.
+     *
+     * @param activity The activity.
+     */
+    static void requestFolder(Activity activity) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            Utils.errMsg(activity, "Choosing a folder requires Android 5.0 "
+                    + "or later");
+            return;
+        }
+        try {
+            Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT_TREE);
+            activity.startActivityForResult(intent, OPEN_DOCUMENT_TREE);
+        } catch (Exception ex) {
+            Utils.excMsg(activity, "Error requesting folder", ex);
+        }
+    }
+
+    /**
+     * Starts extracting to the folder returned from requestFolder.
+     *
+     * @param activity  The activity.
+     * @param treeUri   The Uri of the folder.
+     * @param messageId The MMS message id or -1 for all messages.
+     */
+    static void start(Activity activity, Uri treeUri, long messageId) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP
+                || treeUri == null) {
+            return;
+        }
+        new MmsAttachmentExtractor(activity, treeUri, messageId).execute();
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    @Override
+    protected String export() throws Exception {
+        Uri dirUri = DocumentsContract.buildDocumentUriUsingTree(mTreeUri,
+                DocumentsContract.getTreeDocumentId(mTreeUri));
+        int nParts = 0;
+        Cursor cursor = null;
+        try {
+            cursor = mResolver.query(MMS_PART_URI, new String[]{COL_ID,
+                            COL_MID, COL_CT, COL_CL}, mSelection, null,
+                    COL_MID + " ASC, " + COL_ID + " ASC");
+            if (cursor == null) {
+                return "No attachments found";
+            }
+            int indexId = cursor.getColumnIndex(COL_ID);
+            int indexMid = cursor.getColumnIndex(COL_MID);
+            int indexCt = cursor.getColumnIndex(COL_CT);
+            int indexCl = cursor.getColumnIndex(COL_CL);
+            int total = cursor.getCount();
+            while (cursor.moveToNext()) {
+                if (isCancelled()) break;
+                long partId = cursor.getLong(indexId);
+                String type = indexCt > -1 ? cursor.getString(indexCt) : null;
+                if (type == null) {
+                    type = "application/octet-stream";
+                }
+                String name = getFileName(cursor.getLong(indexMid), partId,
+                        indexCl > -1 ? cursor.getString(indexCl) : null);
+                Uri docUri = DocumentsContract.createDocument(mResolver,
+                        dirUri, type, name);
+                if (docUri == null) {
+                    throw new IOException("Cannot create " + name);
+                }
+                copy(Uri.withAppendedPath(MMS_PART_URI,
+                        Long.toString(partId)), docUri);
+                publishRows(++nParts, total);
+            }
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return "Extracted " + nParts + " attachments (" + mBytes
+                + " bytes)";
+    }
+
+    /**
+     * Copies the source to the destination through their file descriptors.
+     * The destination is closed normally when the copy succeeds, since a
+     * document provider may only write or report errors when it is closed,
+     * and the bytes are counted only then.
+     *
+     * @param src The source Uri.
+     * @param dst The destination Uri.
+     * @throws IOException On error.
+     */
+    private void copy(Uri src, Uri dst) throws IOException {
+        ParcelFileDescriptor srcPfd = null;
+        ParcelFileDescriptor dstPfd = null;
+        FileChannel in = null;
+        FileChannel out = null;
+        long bytes = 0;
+        boolean copied = false;
+        try {
+            srcPfd = mResolver.openFileDescriptor(src, "r");
+            dstPfd = mResolver.openFileDescriptor(dst, "w");
+            if (srcPfd == null || dstPfd == null) {
+                throw new IOException("Cannot open " + src + " or " + dst);
+            }
+            in = new FileInputStream(srcPfd.getFileDescriptor()).getChannel();
+            out = new FileOutputStream(dstPfd.getFileDescriptor())
+                    .getChannel();
+            // The size is -1 for a pipe or socket
+            long size = srcPfd.getStatSize();
+            long position = 0;
+            if (size > 0) {
+                long n;
+                while (position < size) {
+                    n = in.transferTo(position, size - position, out);
+                    if (n <= 0) break;
+                    position += n;
+                }
+                bytes += position;
+                // transferTo may stop short, so the rest is copied below
+                in.position(position);
+            }
+            if (size <= 0 || position < size) {
+                if (mBuffer == null) {
+                    mBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+                }
+                mBuffer.clear();
+                while (in.read(mBuffer) != -1) {
+                    mBuffer.flip();
+                    while (mBuffer.hasRemaining()) {
+                        bytes += out.write(mBuffer);
+                    }
+                    mBuffer.clear();
+                }
+            }
+            out.close();
+            dstPfd.close();
+            copied = true;
+        } finally {
+            closeQuietly(in);
+            closeQuietly(srcPfd);
+            if (!copied) {
+                closeQuietly(out);
+                closeQuietly(dstPfd);
+            }
+        }
+        mBytes += bytes;
+    }
+
+    /**
+     * Gets a file name for the part that will not collide with those of
+     * other parts.
+     *
+     * @param mid    The message id.
+     * @param partId The part id.
+     * @param cl     The content location, which is usually the original file
+     *               name, or null.
+     * @return The file name.
+     */
+    private static String getFileName(long mid, long partId, String cl) {
+        String name = "MMS" + mid + "_" + partId;
+        if (cl != null && cl.length() > 0) {
+            name += "_" + cl.replaceAll("[\\\\/:*?\"<>|]", "_");
+        }
+        return name;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ex) {
+                // Do nothing
+            }
+        }
+    }
+
+}
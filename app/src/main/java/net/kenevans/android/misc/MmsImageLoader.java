@@ -0,0 +1,210 @@
+//Copyright (c) 2011 Kenneth Evans
+//
+//Permission is hereby granted, free of charge, to any person obtaining
+//a copy of this software and associated documentation files (the
+//"Software"), to deal in the Software without restriction, including
+//without limitation the rights to use, copy, modify, merge, publish,
+//distribute, sublicense, and/or sell copies of the Software, and to
+//permit persons to whom the Software is furnished to do so, subject to
+//the following conditions:
+//
+//The above copyright notice and this permission notice shall be included
+//in all copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+//EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+//MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+//IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+//CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+//TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+//SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+package net.kenevans.android.misc;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.DisplayMetrics;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Loads MMS part images into ImageViews. The bounds are decoded first so the
+ * image can be decoded with an inSampleSize that fits the view rather than
+ * at full resolution. Decoding is done on a background thread, and the
+ * decoded images are kept in a process-wide LRU cache, keyed by part id,
+ * limited to an eighth of the heap.
+ */
+public class MmsImageLoader implements IConstants {
+    /**
+     * The single instance for the process.
+     */
+    private static MmsImageLoader sInstance;
+
+    /**
+     * The worker thread.
+     */
+    private static final ExecutorService sExecutor =
+            Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "MmsImageLoader");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private final ContentResolver mResolver;
+    private final DisplayMetrics mMetrics;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * The decoded images by part id. The size is in KB.
+     */
+    private final LruCache<Long, Bitmap> mCache;
+
+    private MmsImageLoader(Context context) {
+        mResolver = context.getContentResolver();
+        mMetrics = context.getResources().getDisplayMetrics();
+        int maxKb = (int) (Runtime.getRuntime().maxMemory() / 1024 / 8);
+        mCache = new LruCache<Long, Bitmap>(maxKb) {
+            @Override
+            protected int sizeOf(Long key, Bitmap bitmap) {
+                return bitmap.getByteCount() / 1024;
+            }
+        };
+    }
+
+    /**
+     * Gets the loader.
+     *
+     * @param context The calling context.
+     * @return The loader.
+     */
+    static synchronized MmsImageLoader getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new MmsImageLoader(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Shows the image for the part in the ImageView. A cached image is shown
+     * at once. Otherwise the view is cleared and the image is shown when it
+     * has been decoded, unless the view has since been given another part.
+     *
+     * @param partId    The part id.
+     * @param imageView The ImageView.
+     */
+    void load(final long partId, final ImageView imageView) {
+        imageView.setTag(R.id.image_part, partId);
+        Bitmap bitmap = mCache.get(partId);
+        if (bitmap != null) {
+            imageView.setImageBitmap(bitmap);
+            return;
+        }
+        imageView.setImageDrawable(null);
+        // Fit the view, or the screen if it has not been laid out
+        final int width = imageView.getWidth() > 0 ? imageView.getWidth()
+                : mMetrics.widthPixels;
+        final int height = imageView.getHeight() > 0 ? imageView.getHeight()
+                : mMetrics.heightPixels;
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap decoded = decode(partId, width, height);
+                if (decoded == null) return;
+                mCache.put(partId, decoded);
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        Object tag = imageView.getTag(R.id.image_part);
+                        if (tag instanceof Long && (Long) tag == partId) {
+                            imageView.setImageBitmap(decoded);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Clears the image and the pending part for the ImageView.
+     *
+     * @param imageView The ImageView.
+     */
+    void clear(ImageView imageView) {
+        imageView.setTag(R.id.image_part, null);
+        imageView.setImageDrawable(null);
+    }
+
+    /**
+     * Decodes the part image to at least the given size, using the largest
+     * power of 2 inSampleSize that allows that.
+     *
+     * @param partId The part id.
+     * @param width  The required width.
+     * @param height The required height.
+     * @return The Bitmap or null on failure.
+     */
+    private Bitmap decode(long partId, int width, int height) {
+        Uri uri = Uri.withAppendedPath(MMS_PART_URI, Long.toString(partId));
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        decodeStream(uri, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        int sampleSize = 1;
+        while (options.outWidth / (2 * sampleSize) >= width
+                && options.outHeight / (2 * sampleSize) >= height) {
+            sampleSize *= 2;
+        }
+        Log.d(TAG, getClass().getSimpleName() + ".decode: partId=" + partId
+                + " " + options.outWidth + "x" + options.outHeight
+                + " inSampleSize=" + sampleSize);
+        options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        return decodeStream(uri, options);
+    }
+
+    /**
+     * Decodes the stream for the Uri.
+     *
+     * @param uri     The Uri.
+     * @param options The options.
+     * @return The Bitmap or null if none was decoded.
+     */
+    private Bitmap decodeStream(Uri uri, BitmapFactory.Options options) {
+        InputStream is = null;
+        try {
+            is = mResolver.openInputStream(uri);
+            return is == null ? null
+                    : BitmapFactory.decodeStream(is, null, options);
+        } catch (IOException | OutOfMemoryError ex) {
+            Log.e(TAG, getClass().getSimpleName() + ".decodeStream: "
+                    + uri + ": " + ex);
+            return null;
+        } finally {
+            if (is != null) {
+                try {
+                    is.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,135 @@
+//Copyright (c) 2011 Kenneth Evans
+//
+//Permission is hereby granted, free of charge, to any person obtaining
+//a copy of this software and associated documentation files (the
+//"Software"), to deal in the Software without restriction, including
+//without limitation the rights to use, copy, modify, merge, publish,
+//distribute, sublicense, and/or sell copies of the Software, and to
+//permit persons to whom the Software is furnished to do so, subject to
+//the following conditions:
+//
+//The above copyright notice and this permission notice shall be included
+//in all copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+//EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+//MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+//IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+//CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+//TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+//SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+package net.kenevans.android.misc;
+
+/**
+ * Snapshot of the ids in a list, in list order, so a display activity can
+ * go to the previous and next items itself instead of returning to the list
+ * for each one. Lists that mix SMS and MMS messages also keep the type of
+ * each item. The list activity sets the current one just before starting a
+ * display activity, which is kept for the process rather than passed in the
+ * Intent since it may be too large for that.
+ */
+public class NavigationList {
+    /**
+     * Type used when all the items are the same type.
+     */
+    static final int TYPE_ANY = -1;
+    /**
+     * Type of an SMS message. The same as MMSSMSActivity.MessageType.SMS.
+     */
+    static final int TYPE_SMS = 0;
+    /**
+     * Type of an MMS message. The same as MMSSMSActivity.MessageType.MMS.
+     */
+    static final int TYPE_MMS = 1;
+
+    /**
+     * The list for the display activity being started.
+     */
+    private static NavigationList sCurrent;
+
+    private final long[] mIds;
+
+    /**
+     * The types or null if they are all TYPE_ANY.
+     */
+    private final byte[] mTypes;
+
+    /**
+     * Constructor.
+     *
+     * @param ids   The ids, which are not copied.
+     * @param types The types, which are not copied, or null if there is only
+     *              one type.
+     */
+    NavigationList(long[] ids, byte[] types) {
+        mIds = ids;
+        mTypes = types;
+    }
+
+    /**
+     * Sets the list for the display activity about to be started.
+     *
+     * @param list The list.
+     */
+    static synchronized void setCurrent(NavigationList list) {
+        sCurrent = list;
+    }
+
+    /**
+     * @return The list set by the last list activity, or null.
+     */
+    static synchronized NavigationList getCurrent() {
+        return sCurrent;
+    }
+
+    /**
+     * @return The number of items.
+     */
+    int size() {
+        return mIds.length;
+    }
+
+    /**
+     * @param position The position.
+     * @return The id or -1 if the position is out of range.
+     */
+    long getId(int position) {
+        return position >= 0 && position < mIds.length ? mIds[position] : -1;
+    }
+
+    /**
+     * @param position The position.
+     * @return The type, TYPE_ANY if the list has one type.
+     */
+    int getType(int position) {
+        if (mTypes == null || position < 0 || position >= mTypes.length) {
+            return TYPE_ANY;
+        }
+        return mTypes[position];
+    }
+
+    /**
+     * Makes a list without the item at the given position.
+     *
+     * @param position The position.
+     * @return The new list, or this list if the position is out of range.
+     */
+    NavigationList remove(int position) {
+        if (position < 0 || position >= mIds.length) return this;
+        long[] ids = new long[mIds.length - 1];
+        System.arraycopy(mIds, 0, ids, 0, position);
+        System.arraycopy(mIds, position + 1, ids, position,
+                ids.length - position);
+        byte[] types = null;
+        if (mTypes != null) {
+            types = new byte[mTypes.length - 1];
+            System.arraycopy(mTypes, 0, types, 0, position);
+            System.arraycopy(mTypes, position + 1, types, position,
+                    types.length - position);
+        }
+        return new NavigationList(ids, types);
+    }
+
+}
@@ -0,0 +1,201 @@
+//Copyright (c) 2011 Kenneth Evans
+//
+//Permission is hereby granted, free of charge, to any person obtaining
+//a copy of this software and associated documentation files (the
+//"Software"), to deal in the Software without restriction, including
+//without limitation the rights to use, copy, modify, merge, publish,
+//distribute, sublicense, and/or sell copies of the Software, and to
+//permit persons to whom the Software is furnished to do so, subject to
+//the following conditions:
+//
+//The above copyright notice and this permission notice shall be included
+//in all copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+//EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+//MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+//IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+//CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+//TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+//SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+package net.kenevans.android.misc;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.util.Log;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Gets the values for list rows a page at a time, with one query using an
+ * IN selection on the ids in the page rather than one query per row. The
+ * most recently used pages are kept. When a page is dropped the callback is
+ * told so it can free the values, and the page is queried again if it is
+ * needed later. The number of queries therefore grows with the pages
+ * viewed, not the rows.
+ */
+public class PagedRowLoader implements IConstants {
+    /**
+     * The default number of rows in a page.
+     */
+    static final int DEFAULT_PAGE_SIZE = 256;
+
+    /**
+     * The default number of pages to keep.
+     */
+    static final int DEFAULT_MAX_PAGES = 8;
+
+    /**
+     * Used by the adapter to supply the ids and take the values.
+     */
+    interface Callback {
+        /**
+         * @param position The position.
+         * @return The _id of the row at the position.
+         */
+        long getRowId(int position);
+
+        /**
+         * Called for each row in a page when it is loaded.
+         *
+         * @param position The position.
+         * @param cursor   The cursor positioned at the row, or null if the
+         *                 row was not found.
+         */
+        void onRowLoaded(int position, Cursor cursor);
+
+        /**
+         * Called after all the rows in a page have been loaded and the
+         * cursor closed. Used to get values from other providers for the
+         * whole page.
+         *
+         * @param start The first position in the page.
+         * @param end   One past the last position in the page.
+         */
+        void onPageLoaded(int start, int end);
+
+        /**
+         * Called when a page is dropped.
+         *
+         * @param start The first position in the page.
+         * @param end   One past the last position in the page.
+         */
+        void onPageEvicted(int start, int end);
+    }
+
+    private final ContentResolver mContentResolver;
+    private final Uri mUri;
+    private final String[] mProjection;
+    private int mCount;
+    private final int mPageSize;
+    private final Callback mCallback;
+    private int mQueryCount;
+
+    /**
+     * The loaded pages in least recently used order.
+     */
+    private final Map<Integer, Boolean> mPages;
+
+    /**
+     * Constructor.
+     *
+     * @param contentResolver The ContentResolver.
+     * @param uri             The URI to query.
+     * @param projection      The columns to get. Must include COL_ID.
+     * @param count           The number of rows.
+     * @param pageSize        The number of rows in a page.
+     * @param maxPages        The number of pages to keep.
+     * @param callback        The Callback.
+     */
+    PagedRowLoader(ContentResolver contentResolver, Uri uri,
+                   String[] projection, int count, int pageSize,
+                   final int maxPages, Callback callback) {
+        mContentResolver = contentResolver;
+        mUri = uri;
+        mProjection = projection;
+        mCount = count;
+        mPageSize = pageSize;
+        mCallback = callback;
+        mPages = new LinkedHashMap<Integer, Boolean>(16, .75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer,
+                    Boolean> eldest) {
+                if (size() <= maxPages) return false;
+                int start = eldest.getKey() * mPageSize;
+                mCallback.onPageEvicted(start,
+                        Math.min(start + mPageSize, mCount));
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Loads the page holding the position if it is not loaded. Called on a
+     * worker thread.
+     *
+     * @param position The position.
+     */
+    synchronized void load(int position) {
+        if (position < 0 || position >= mCount) return;
+        int page = position / mPageSize;
+        if (mPages.get(page) != null) return;
+
+        int start = page * mPageSize;
+        int end = Math.min(start + mPageSize, mCount);
+        int nIds = end - start;
+        long[] ids = new long[nIds];
+        LongIntHashMap positions = new LongIntHashMap(nIds);
+        for (int i = 0; i < nIds; i++) {
+            ids[i] = mCallback.getRowId(start + i);
+            positions.put(ids[i], start + i);
+        }
+
+        boolean[] found = new boolean[nIds];
+        Cursor cursor = null;
+        try {
+            mQueryCount++;
+            cursor = mContentResolver.query(mUri, mProjection,
+                    MessageUtils.inSelection(COL_ID, ids, nIds), null, null);
+            if (cursor != null) {
+                int indexId = cursor.getColumnIndex(COL_ID);
+                int pos;
+                while (cursor.moveToNext()) {
+                    pos = positions.get(cursor.getLong(indexId), -1);
+                    if (pos < 0 || found[pos - start]) continue;
+                    found[pos - start] = true;
+                    mCallback.onRowLoaded(pos, cursor);
+                }
+            }
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+        for (int i = 0; i < nIds; i++) {
+            if (!found[i]) {
+                mCallback.onRowLoaded(start + i, null);
+            }
+        }
+        mCallback.onPageLoaded(start, end);
+        mPages.put(page, Boolean.TRUE);
+        Log.d(TAG, PagedRowLoader.class.getSimpleName() + ": " + mUri
+                + " page " + page + " loaded, queries=" + mQueryCount);
+    }
+
+    /**
+     * Forgets the loaded pages and sets the number of rows, after rows have
+     * been removed. The callback is not told, since it is expected to have
+     * freed the values. The change to the rows should be made holding the
+     * lock on this PagedRowLoader, along with this call, so that a page
+     * being loaded does not use the old positions.
+     *
+     * @param count The number of rows.
+     */
+    synchronized void reset(int count) {
+        mPages.clear();
+        mCount = count;
+    }
+
+}
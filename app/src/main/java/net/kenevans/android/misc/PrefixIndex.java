@@ -0,0 +1,202 @@
+//Copyright (c) 2011 Kenneth Evans
+//
+//Permission is hereby granted, free of charge, to any person obtaining
+//a copy of this software and associated documentation files (the
+//"Software"), to deal in the Software without restriction, including
+//without limitation the rights to use, copy, modify, merge, publish,
+//distribute, sublicense, and/or sell copies of the Software, and to
+//permit persons to whom the Software is furnished to do so, subject to
+//the following conditions:
+//
+//The above copyright notice and this permission notice shall be included
+//in all copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+//EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+//MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+//IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+//CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+//TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+//SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+package net.kenevans.android.misc;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * In-memory prefix index from string keys to row positions. The keys are
+ * added once, then sorted, and the rows whose keys start with a prefix are
+ * found with two binary searches for the range of matching keys. A row may
+ * have several keys, for example a number and each word of a name.
+ */
+public class PrefixIndex {
+    /**
+     * The sorted keys. While adding they are in the order added.
+     */
+    private String[] mKeys;
+
+    /**
+     * The row for each key.
+     */
+    private int[] mRows;
+
+    private int mSize;
+
+    /**
+     * The number of rows, one more than the largest row added.
+     */
+    private int mNRows;
+
+    private boolean mSorted;
+
+    /**
+     * Constructor.
+     *
+     * @param expectedSize The expected number of keys.
+     */
+    public PrefixIndex(int expectedSize) {
+        int capacity = Math.max(expectedSize, 16);
+        mKeys = new String[capacity];
+        mRows = new int[capacity];
+    }
+
+    /**
+     * Adds a key for a row. Null and empty keys are ignored.
+     *
+     * @param key The key, already normalized.
+     * @param row The row position.
+     */
+    public void add(String key, int row) {
+        if (mSorted) {
+            throw new IllegalStateException("Keys added after sort");
+        }
+        if (key == null || key.length() == 0) return;
+        if (mSize == mKeys.length) {
+            mKeys = Arrays.copyOf(mKeys, mSize << 1);
+            mRows = Arrays.copyOf(mRows, mSize << 1);
+        }
+        mKeys[mSize] = key;
+        mRows[mSize] = row;
+        mSize++;
+        if (row >= mNRows) {
+            mNRows = row + 1;
+        }
+    }
+
+    /**
+     * Sorts the keys. Done once after all keys are added.
+     */
+    public void sort() {
+        if (mSorted) return;
+        final String[] keys = mKeys;
+        Integer[] order = new Integer[mSize];
+        for (int i = 0; i < mSize; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer i1, Integer i2) {
+                return keys[i1].compareTo(keys[i2]);
+            }
+        });
+        String[] sortedKeys = new String[mSize];
+        int[] sortedRows = new int[mSize];
+        for (int i = 0; i < mSize; i++) {
+            sortedKeys[i] = keys[order[i]];
+            sortedRows[i] = mRows[order[i]];
+        }
+        mKeys = sortedKeys;
+        mRows = sortedRows;
+        mSorted = true;
+    }
+
+    /**
+     * Changes the rows of the keys after rows have been removed or moved.
+     * The keys of removed rows are dropped. The keys stay sorted.
+     *
+     * @param map For each old row, the new row or -1 if it was removed.
+     */
+    public void remap(int[] map) {
+        int size = 0;
+        int nRows = 0;
+        int row;
+        for (int i = 0; i < mSize; i++) {
+            row = mRows[i] < map.length ? map[mRows[i]] : -1;
+            if (row < 0) continue;
+            mKeys[size] = mKeys[i];
+            mRows[size] = row;
+            size++;
+            if (row >= nRows) {
+                nRows = row + 1;
+            }
+        }
+        Arrays.fill(mKeys, size, mSize, null);
+        mSize = size;
+        mNRows = nRows;
+    }
+
+    /**
+     * @return The number of keys.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Finds the rows that have a key starting with the prefix.
+     *
+     * @param prefix The prefix, normalized the same as the keys.
+     * @return The rows, in increasing order, without duplicates.
+     */
+    public int[] find(String prefix) {
+        if (!mSorted) sort();
+        int start = lowerBound(prefix);
+        int end = lowerBound(prefix + Character.MAX_VALUE);
+        if (end <= start) return new int[0];
+
+        // Mark the rows so they come out in order and only once
+        long[] found = new long[(mNRows + 63) >>> 6];
+        int nFound = 0;
+        int row;
+        for (int i = start; i < end; i++) {
+            row = mRows[i];
+            if ((found[row >>> 6] & (1L << row)) == 0) {
+                found[row >>> 6] |= 1L << row;
+                nFound++;
+            }
+        }
+        int[] rows = new int[nFound];
+        int n = 0;
+        long word;
+        for (int i = 0; i < found.length; i++) {
+            word = found[i];
+            while (word != 0) {
+                rows[n++] = (i << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * @return The index of the first key that is not less than the given
+     * one.
+     */
+    private int lowerBound(String key) {
+        int low = 0;
+        int high = mSize;
+        int mid;
+        while (low < high) {
+            mid = (low + high) >>> 1;
+            if (mKeys[mid].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+}
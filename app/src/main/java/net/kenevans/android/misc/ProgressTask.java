@@ -0,0 +1,165 @@
+//Copyright (c) 2011 Kenneth Evans
+//
+//Permission is hereby granted, free of charge, to any person obtaining
+//a copy of this software and associated documentation files (the
+//"Software"), to deal in the Software without restriction, including
+//without limitation the rights to use, copy, modify, merge, publish,
+//distribute, sublicense, and/or sell copies of the Software, and to
+//permit persons to whom the Software is furnished to do so, subject to
+//the following conditions:
+//
+//The above copyright notice and this permission notice shall be included
+//in all copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+//EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+//MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+//IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+//CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+//TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+//SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+package net.kenevans.android.misc;
+
+import android.app.Activity;
+import android.app.ProgressDialog;
+import android.content.DialogInterface;
+import android.os.AsyncTask;
+import android.util.Log;
+
+/**
+ * Base class for cancellable tasks that run in the background. It shows a
+ * progress dialog with the number of items done out of the total and a
+ * Cancel button. Subclasses do the work in doWork, publishing progress as
+ * (done, total) and checking isCancelled to stop early, and supply the
+ * messages shown when it fails or is cancelled.
+ */
+public abstract class ProgressTask extends AsyncTask<Void, Integer, String>
+        implements IConstants {
+    protected final Activity mActivity;
+    private final String mTitle;
+    private ProgressDialog mDialog;
+
+    /**
+     * The exception if the task failed.
+     */
+    private Exception mException;
+
+    /**
+     * Constructor.
+     *
+     * @param activity The activity.
+     * @param title    The title for the progress dialog.
+     */
+    protected ProgressTask(Activity activity, String title) {
+        mActivity = activity;
+        mTitle = title;
+    }
+
+    /**
+     * Does the work. Called on a worker thread.
+     *
+     * @return The message to show when done.
+     * @throws Exception On error.
+     */
+    protected abstract String doWork() throws Exception;
+
+    /**
+     * @return The title of the message shown with the exception if doWork
+     * failed.
+     */
+    protected abstract String getErrorMessage();
+
+    /**
+     * @return The message shown if the task was cancelled.
+     */
+    protected abstract String getCancelledMessage();
+
+    /**
+     * Called on the main thread when the task has stopped, whether it
+     * finished, failed, or was cancelled, before any message is shown. Does
+     * nothing by default.
+     */
+    protected void onDone() {
+    }
+
+    /**
+     * Called on the main thread to show the result of doWork. Shows it in
+     * an info dialog by default.
+     *
+     * @param result The message from doWork.
+     */
+    protected void showResult(String result) {
+        Utils.infoMsg(mActivity, result);
+    }
+
+    @Override
+    protected void onPreExecute() {
+        mDialog = new ProgressDialog(mActivity);
+        mDialog.setTitle(mTitle);
+        mDialog.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
+        mDialog.setIndeterminate(false);
+        mDialog.setCancelable(false);
+        mDialog.setButton(DialogInterface.BUTTON_NEGATIVE,
+                mActivity.getText(R.string.cancel),
+                new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        cancel(false);
+                    }
+                });
+        mDialog.show();
+    }
+
+    @Override
+    protected String doInBackground(Void... params) {
+        try {
+            return doWork();
+        } catch (Exception ex) {
+            Log.e(TAG, getClass().getSimpleName() + ": Failed", ex);
+            mException = ex;
+            return null;
+        }
+    }
+
+    @Override
+    protected void onProgressUpdate(Integer... values) {
+        if (mDialog != null) {
+            mDialog.setMax(values[1]);
+            mDialog.setProgress(values[0]);
+        }
+    }
+
+    @Override
+    protected void onPostExecute(String result) {
+        dismiss();
+        onDone();
+        if (mActivity.isFinishing()) return;
+        if (mException != null) {
+            Utils.excMsg(mActivity, getErrorMessage(), mException);
+        } else if (result != null) {
+            showResult(result);
+        }
+    }
+
+    @Override
+    protected void onCancelled(String result) {
+        dismiss();
+        onDone();
+        if (mActivity.isFinishing()) return;
+        Utils.infoMsg(mActivity, getCancelledMessage());
+    }
+
+    private void dismiss() {
+        if (mDialog != null) {
+            try {
+                mDialog.dismiss();
+            } catch (Exception ex) {
+                // Do nothing, the window may be gone
+            }
+            mDialog = null;
+        }
+    }
+
+}
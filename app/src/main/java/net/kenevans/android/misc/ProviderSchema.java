@@ -0,0 +1,130 @@
+//Copyright (c) 2011 Kenneth Evans
+//
+//Permission is hereby granted, free of charge, to any person obtaining
+//a copy of this software and associated documentation files (the
+//"Software"), to deal in the Software without restriction, including
+//without limitation the rights to use, copy, modify, merge, publish,
+//distribute, sublicense, and/or sell copies of the Software, and to
+//permit persons to whom the Software is furnished to do so, subject to
+//the following conditions:
+//
+//The above copyright notice and this permission notice shall be included
+//in all copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+//EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+//MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+//IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+//CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+//TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+//SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+package net.kenevans.android.misc;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Process-wide cache of the columns available from content provider Uris.
+ * Each Uri is probed once with a query that matches no rows, rather than
+ * with a query of the whole table, and the column names are kept for later
+ * use. A provider's columns do not change while the process runs, so the
+ * cache is never cleared.
+ */
+public class ProviderSchema implements IConstants {
+    /**
+     * Selection that matches no rows.
+     */
+    private static final String PROBE_SELECTION = COL_ID + "=-1";
+
+    /**
+     * Map from the Uri string to its column names.
+     */
+    private static final Map<String, String[]> sColumns = new HashMap<>();
+
+    /**
+     * Gets the names of all the columns for the given Uri.
+     *
+     * @param cr  The ContentResolver.
+     * @param uri The Uri.
+     * @return The column names, empty if they could not be gotten.
+     */
+    static synchronized String[] getColumns(ContentResolver cr, Uri uri) {
+        String key = uri.toString();
+        String[] columns = sColumns.get(key);
+        if (columns == null) {
+            columns = probe(cr, uri);
+            if (columns == null) {
+                // Do not cache, so it will be tried again
+                return new String[0];
+            }
+            sColumns.put(key, columns);
+        }
+        return columns.clone();
+    }
+
+    /**
+     * Gets the desired columns that are available for the given Uri, in
+     * the order given.
+     *
+     * @param cr      The ContentResolver.
+     * @param uri     The Uri.
+     * @param desired The desired column names.
+     * @return The available ones.
+     */
+    static String[] getAvailableColumns(ContentResolver cr, Uri uri,
+                                        String... desired) {
+        String[] available = getColumns(cr, uri);
+        List<String> list = new ArrayList<>();
+        for (String col : desired) {
+            for (String col1 : available) {
+                if (col.equals(col1)) {
+                    list.add(col);
+                    break;
+                }
+            }
+        }
+        return list.toArray(new String[0]);
+    }
+
+    /**
+     * Queries the Uri for its column names. If the provider does not accept
+     * the probe selection, the names are gotten from an unrestricted query
+     * as before.
+     *
+     * @param cr  The ContentResolver.
+     * @param uri The Uri.
+     * @return The column names or null on failure.
+     */
+    private static String[] probe(ContentResolver cr, Uri uri) {
+        Cursor cursor = null;
+        try {
+            try {
+                cursor = cr.query(uri, null, PROBE_SELECTION, null, null);
+            } catch (Exception ex) {
+                Log.d(TAG, ProviderSchema.class.getSimpleName()
+                        + ".probe: Selection failed for " + uri + ": "
+                        + ex.getMessage());
+                cursor = cr.query(uri, null, null, null, null);
+            }
+            return cursor == null ? null : cursor.getColumnNames();
+        } catch (Exception ex) {
+            Log.e(TAG, ProviderSchema.class.getSimpleName()
+                    + ".probe: Error getting columns for " + uri, ex);
+            return null;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,246 @@
+//Copyright (c) 2011 Kenneth Evans
+//
+//Permission is hereby granted, free of charge, to any person obtaining
+//a copy of this software and associated documentation files (the
+//"Software"), to deal in the Software without restriction, including
+//without limitation the rights to use, copy, modify, merge, publish,
+//distribute, sublicense, and/or sell copies of the Software, and to
+//permit persons to whom the Software is furnished to do so, subject to
+//the following conditions:
+//
+//The above copyright notice and this permission notice shall be included
+//in all copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+//EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+//MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+//IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+//CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+//TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+//SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+package net.kenevans.android.misc;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.View;
+import android.widget.AbsListView;
+import android.widget.ListAdapter;
+import android.widget.ListView;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Gets the values for ListView rows on background threads so the provider
+ * queries are not done in getView. A row that is not loaded yet is shown
+ * as a placeholder and is bound again when its values arrive, if the view
+ * still shows that position. Rows a window ahead in the direction of
+ * scrolling are loaded before they are needed.
+ */
+public class RowBinder implements IConstants {
+    /**
+     * The default number of rows to load ahead of the visible ones.
+     */
+    static final int DEFAULT_PREFETCH_WINDOW = 32;
+
+    /**
+     * Worker threads shared by all the lists.
+     */
+    private static final ExecutorService sExecutor =
+            Executors.newFixedThreadPool(2, new ThreadFactory() {
+                private int mCount;
+
+                @Override
+                public synchronized Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable,
+                            "RowBinder-" + ++mCount);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    /**
+     * Used by the adapter to get the values for rows.
+     */
+    interface Loader {
+        /**
+         * @return The number of rows.
+         */
+        int getCount();
+
+        /**
+         * @param position The position.
+         * @return If the values for the row at the position have been
+         * gotten. Called on any thread.
+         */
+        boolean isLoaded(int position);
+
+        /**
+         * Gets the values for the row at the position. It may get the values
+         * for others at the same time. Called on a worker thread.
+         *
+         * @param position The position.
+         */
+        void load(int position);
+    }
+
+    private final ListView mListView;
+    private final Loader mLoader;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final int mPrefetchWindow;
+
+    /**
+     * The positions that have been queued and not loaded. Only used on the
+     * main thread.
+     */
+    private final Set<Integer> mPending = new HashSet<>();
+
+    /**
+     * The first visible position when last scrolled.
+     */
+    private int mLastFirstVisible;
+
+    private volatile boolean mCancelled;
+
+    /**
+     * Constructor. Sets itself as the OnScrollListener for the ListView.
+     *
+     * @param listView       The ListView.
+     * @param loader         The Loader, which is expected to be the adapter
+     *                       of the ListView.
+     * @param prefetchWindow The number of rows to load ahead of the visible
+     *                       ones.
+     */
+    RowBinder(ListView listView, Loader loader, int prefetchWindow) {
+        mListView = listView;
+        mLoader = loader;
+        mPrefetchWindow = prefetchWindow;
+        mListView.setOnScrollListener(new AbsListView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(AbsListView view,
+                                             int scrollState) {
+            }
+
+            @Override
+            public void onScroll(AbsListView view, int firstVisibleItem,
+                                 int visibleItemCount, int totalItemCount) {
+                prefetch(firstVisibleItem, visibleItemCount);
+            }
+        });
+    }
+
+    /**
+     * Called from getView. If the row is not loaded, marks the view as
+     * waiting for the position and queues it.
+     *
+     * @param view     The row view.
+     * @param position The position.
+     * @return If the row is loaded and can be bound. If false the caller
+     * should show a placeholder.
+     */
+    boolean bind(View view, int position) {
+        if (mLoader.isLoaded(position)) {
+            view.setTag(R.id.row_position, null);
+            return true;
+        }
+        view.setTag(R.id.row_position, position);
+        request(position);
+        return false;
+    }
+
+    /**
+     * Stops loading rows. Called when the adapter is being replaced or the
+     * activity is going away. Loads already running finish but are not
+     * shown.
+     */
+    void cancel() {
+        mCancelled = true;
+        mPending.clear();
+        mHandler.removeCallbacksAndMessages(null);
+    }
+
+    /**
+     * Queues rows ahead of the visible ones in the direction of scrolling.
+     *
+     * @param firstVisible The first visible position.
+     * @param nVisible     The number of visible rows.
+     */
+    private void prefetch(int firstVisible, int nVisible) {
+        int count = mLoader.getCount();
+        if (mCancelled || nVisible <= 0 || count == 0) return;
+        int start, end;
+        if (firstVisible >= mLastFirstVisible) {
+            start = firstVisible + nVisible;
+            end = Math.min(start + mPrefetchWindow, count);
+        } else {
+            end = firstVisible;
+            start = Math.max(end - mPrefetchWindow, 0);
+        }
+        mLastFirstVisible = firstVisible;
+        for (int i = start; i < end; i++) {
+            if (!mLoader.isLoaded(i)) {
+                request(i);
+            }
+        }
+    }
+
+    /**
+     * Queues a position to be loaded on a worker thread if it is not
+     * already queued.
+     *
+     * @param position The position.
+     */
+    private void request(final int position) {
+        if (mCancelled || !mPending.add(position)) return;
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (mCancelled) return;
+                try {
+                    if (!mLoader.isLoaded(position)) {
+                        mLoader.load(position);
+                    }
+                } catch (Exception ex) {
+                    Log.e(TAG, RowBinder.class.getSimpleName()
+                            + ": Error loading position " + position, ex);
+                }
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mPending.remove(position);
+                        rebind();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Binds again the visible rows that are waiting for a position that is
+     * now loaded.
+     */
+    private void rebind() {
+        ListAdapter adapter = mListView.getAdapter();
+        if (mCancelled || adapter != mLoader) return;
+        View child;
+        Object tag;
+        int position;
+        for (int i = 0; i < mListView.getChildCount(); i++) {
+            child = mListView.getChildAt(i);
+            tag = child.getTag(R.id.row_position);
+            if (!(tag instanceof Integer)) continue;
+            position = (Integer) tag;
+            if (position < mLoader.getCount() && mLoader.isLoaded(position)) {
+                // Returns the same view, now filled in
+                adapter.getView(position, child, mListView);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,350 @@
+//Copyright (c) 2011 Kenneth Evans
+//
+//Permission is hereby granted, free of charge, to any person obtaining
+//a copy of this software and associated documentation files (the
+//"Software"), to deal in the Software without restriction, including
+//without limitation the rights to use, copy, modify, merge, publish,
+//distribute, sublicense, and/or sell copies of the Software, and to
+//permit persons to whom the Software is furnished to do so, subject to
+//the following conditions:
+//
+//The above copyright notice and this permission notice shall be included
+//in all copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+//EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+//MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+//IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+//CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+//TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+//SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+package net.kenevans.android.misc;
+
+import java.util.Arrays;
+
+/**
+ * Compact storage for the rows of a list. The ids, dates, and types of all
+ * rows are kept in primitive arrays. Values that are gotten later, such as
+ * addresses and names, are kept in a side table that is allocated a page at
+ * a time as rows are loaded and freed when they are unloaded. This avoids
+ * an object per row. The methods are synchronized since rows are loaded on
+ * worker threads.
+ */
+public class RowStore {
+    /**
+     * The number of rows in a page of the side table.
+     */
+    private static final int PAGE_SIZE = 256;
+
+    private long[] mIds;
+    private long[] mDates;
+    private byte[] mTypes;
+    private int mSize;
+
+    /**
+     * The number of values for each row in the side table.
+     */
+    private final int mNFields;
+
+    /**
+     * The side table, by page, with mNFields values per row. A page is null
+     * until a row in it is loaded.
+     */
+    private Object[][] mValues;
+
+    /**
+     * Bit set of the rows that are loaded.
+     */
+    private long[] mLoaded;
+
+    /**
+     * Map from the id and type of a row to its position. It is made the
+     * first time a position is looked up and kept up to date as rows are
+     * added after that.
+     */
+    private LongIntHashMap mPositions;
+
+    /**
+     * Whether rows of different types may have the same _id, so that rows
+     * are looked up by id and type.
+     */
+    private final boolean mTypedIds;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity The expected number of rows.
+     * @param nFields  The number of values gotten later for each row.
+     */
+    RowStore(int capacity, int nFields) {
+        this(capacity, nFields, false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param capacity The expected number of rows.
+     * @param nFields  The number of values gotten later for each row.
+     * @param typedIds Whether rows of different types may have the same
+     *                 _id, as for SMS and MMS messages in the same list.
+     */
+    RowStore(int capacity, int nFields, boolean typedIds) {
+        mTypedIds = typedIds;
+        capacity = Math.max(capacity, 16);
+        mNFields = nFields;
+        mIds = new long[capacity];
+        mDates = new long[capacity];
+        mTypes = new byte[capacity];
+        mValues = new Object[(capacity + PAGE_SIZE - 1) / PAGE_SIZE][];
+        mLoaded = new long[(capacity + 63) / 64];
+    }
+
+    /**
+     * Adds a row at the end.
+     *
+     * @param id   The _id.
+     * @param date The date.
+     * @param type The type, which must fit in a byte.
+     * @return The position of the row.
+     */
+    synchronized int add(long id, long date, int type) {
+        if (mSize == mIds.length) {
+            int capacity = mSize + (mSize >> 1);
+            mIds = Arrays.copyOf(mIds, capacity);
+            mDates = Arrays.copyOf(mDates, capacity);
+            mTypes = Arrays.copyOf(mTypes, capacity);
+            mValues = Arrays.copyOf(mValues,
+                    (capacity + PAGE_SIZE - 1) / PAGE_SIZE);
+            mLoaded = Arrays.copyOf(mLoaded, (capacity + 63) / 64);
+        }
+        mIds[mSize] = id;
+        mDates[mSize] = date;
+        mTypes[mSize] = (byte) type;
+        if (mPositions != null) {
+            mPositions.put(positionKey(id, type), mSize);
+        }
+        return mSize++;
+    }
+
+    /**
+     * @return The number of rows.
+     */
+    synchronized int size() {
+        return mSize;
+    }
+
+    /**
+     * @return A copy of the ids of all the rows.
+     */
+    synchronized long[] copyIds() {
+        return Arrays.copyOf(mIds, mSize);
+    }
+
+    /**
+     * @return A copy of the types of all the rows.
+     */
+    synchronized byte[] copyTypes() {
+        return Arrays.copyOf(mTypes, mSize);
+    }
+
+    /**
+     * Gets the position of the row with the given id. For a store with
+     * typed ids, the type is taken to be 0.
+     *
+     * @param id The _id.
+     * @return The position or -1 if there is no such row.
+     */
+    int getPosition(long id) {
+        return getPosition(id, 0);
+    }
+
+    /**
+     * Gets the position of the row with the given id and type. This is
+     * constant time after the first call.
+     *
+     * @param id   The _id.
+     * @param type The type. It is ignored unless the store has typed ids.
+     * @return The position or -1 if there is no such row.
+     */
+    synchronized int getPosition(long id, int type) {
+        if (mPositions == null) {
+            mPositions = new LongIntHashMap(mSize);
+            for (int i = 0; i < mSize; i++) {
+                mPositions.put(positionKey(mIds[i], mTypes[i]), i);
+            }
+        }
+        return mPositions.get(positionKey(id, type), -1);
+    }
+
+    /**
+     * @param id   The _id.
+     * @param type The type.
+     * @return The key for the row in mPositions.
+     */
+    private long positionKey(long id, int type) {
+        return mTypedIds ? (id << 8) | (type & 0xFF) : id;
+    }
+
+    /**
+     * @param position The position.
+     * @return The _id or -1 if the position is out of range.
+     */
+    synchronized long getId(int position) {
+        return position >= 0 && position < mSize ? mIds[position] : -1;
+    }
+
+    /**
+     * @param position The position.
+     * @return The date or -1 if the position is out of range.
+     */
+    synchronized long getDate(int position) {
+        return position >= 0 && position < mSize ? mDates[position] : -1;
+    }
+
+    /**
+     * @param position The position.
+     * @return The type or -1 if the position is out of range.
+     */
+    synchronized int getType(int position) {
+        return position >= 0 && position < mSize ? mTypes[position] : -1;
+    }
+
+    /**
+     * @param position The position.
+     * @return If the values for the row have been set. Positions out of
+     * range are considered loaded, so nothing is done for them.
+     */
+    synchronized boolean isLoaded(int position) {
+        return position < 0 || position >= mSize
+                || (mLoaded[position >> 6] & (1L << position)) != 0;
+    }
+
+    /**
+     * Sets the values for the row and marks it loaded.
+     *
+     * @param position The position.
+     * @param values   The values, up to the number of fields. Missing ones
+     *                 are null.
+     */
+    synchronized void setLoaded(int position, Object... values) {
+        if (position < 0 || position >= mSize) return;
+        int page = position / PAGE_SIZE;
+        Object[] pageValues = mValues[page];
+        if (pageValues == null) {
+            pageValues = new Object[PAGE_SIZE * mNFields];
+            mValues[page] = pageValues;
+        }
+        int offset = (position % PAGE_SIZE) * mNFields;
+        for (int i = 0; i < mNFields; i++) {
+            pageValues[offset + i] = i < values.length ? values[i] : null;
+        }
+        mLoaded[position >> 6] |= 1L << position;
+    }
+
+    /**
+     * Gets a value for the row.
+     *
+     * @param position The position.
+     * @param field    The field.
+     * @return The value or null if not loaded.
+     */
+    synchronized Object getValue(int position, int field) {
+        if (position < 0 || position >= mSize) return null;
+        Object[] pageValues = mValues[position / PAGE_SIZE];
+        return pageValues == null ? null
+                : pageValues[(position % PAGE_SIZE) * mNFields + field];
+    }
+
+    /**
+     * Gets a String value for the row.
+     *
+     * @param position The position.
+     * @param field    The field.
+     * @return The value or null if not loaded.
+     */
+    String getString(int position, int field) {
+        return (String) getValue(position, field);
+    }
+
+    /**
+     * Removes the rows with the given ids, keeping the order of the others.
+     * The values of all the rows are freed, since their positions change,
+     * and are to be gotten again. For a store with typed ids, only the rows
+     * with both the id and the type are removed.
+     *
+     * @param ids   The ids.
+     * @param types The types, needed only for a store with typed ids,
+     *              otherwise may be null.
+     * @param count The number of ids to use.
+     * @return For each old position, the new position or -1 if the row was
+     * removed, or null if no rows were removed.
+     */
+    synchronized int[] remove(long[] ids, int[] types, int count) {
+        if (mTypedIds && types == null) {
+            throw new IllegalArgumentException("The types are needed for"
+                    + " typed ids");
+        }
+        LongIntHashMap removed = new LongIntHashMap(count);
+        for (int i = 0; i < count; i++) {
+            removed.put(positionKey(ids[i], types == null ? 0 : types[i]),
+                    1);
+        }
+        int[] map = new int[mSize];
+        int size = 0;
+        for (int i = 0; i < mSize; i++) {
+            if (removed.containsKey(positionKey(mIds[i], mTypes[i]))) {
+                map[i] = -1;
+                continue;
+            }
+            map[i] = size;
+            mIds[size] = mIds[i];
+            mDates[size] = mDates[i];
+            mTypes[size] = mTypes[i];
+            size++;
+        }
+        if (size == mSize) return null;
+        mSize = size;
+        Arrays.fill(mValues, null);
+        Arrays.fill(mLoaded, 0L);
+        mPositions = null;
+        return map;
+    }
+
+    /**
+     * Marks the rows as not loaded and frees their values. Pages of the
+     * side table with no loaded rows are dropped.
+     *
+     * @param start The first position.
+     * @param end   One past the last position.
+     */
+    synchronized void unload(int start, int end) {
+        start = Math.max(start, 0);
+        end = Math.min(end, mSize);
+        for (int i = start; i < end; i++) {
+            mLoaded[i >> 6] &= ~(1L << i);
+        }
+        int firstPage = start / PAGE_SIZE;
+        int lastPage = (end - 1) / PAGE_SIZE;
+        for (int page = firstPage; page <= lastPage; page++) {
+            Object[] pageValues = mValues[page];
+            if (pageValues == null) continue;
+            int pageStart = page * PAGE_SIZE;
+            int pageEnd = Math.min(pageStart + PAGE_SIZE, mSize);
+            boolean empty = true;
+            for (int i = pageStart; i < pageEnd; i++) {
+                if (i >= start && i < end) {
+                    int offset = (i % PAGE_SIZE) * mNFields;
+                    Arrays.fill(pageValues, offset, offset + mNFields, null);
+                } else if ((mLoaded[i >> 6] & (1L << i)) != 0) {
+                    empty = false;
+                }
+            }
+            if (empty) {
+                mValues[page] = null;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,346 @@
+//Copyright (c) 2011 Kenneth Evans
+//
+//Permission is hereby granted, free of charge, to any person obtaining
+//a copy of this software and associated documentation files (the
+//"Software"), to deal in the Software without restriction, including
+//without limitation the rights to use, copy, modify, merge, publish,
+//distribute, sublicense, and/or sell copies of the Software, and to
+//permit persons to whom the Software is furnished to do so, subject to
+//the following conditions:
+//
+//The above copyright notice and this permission notice shall be included
+//in all copies or substantial portions of the Software.
+//
+//THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+//EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+//MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+//IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY
+//CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT,
+//TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+//SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+
+package net.kenevans.android.misc;
+
+import android.content.Intent;
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.util.Log;
+import android.view.KeyEvent;
+import android.view.LayoutInflater;
+import android.view.Menu;
+import android.view.MenuInflater;
+import android.view.MenuItem;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.inputmethod.EditorInfo;
+import android.widget.AdapterView;
+import android.widget.BaseAdapter;
+import android.widget.EditText;
+import android.widget.ListView;
+import android.widget.TextView;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import static net.kenevans.android.misc.MessageUtils.formatDate;
+
+/**
+ * Searches the SMS and MMS messages using a MessageSearchIndex. The index is
+ * brought up to date each time the activity is resumed. Selecting a hit
+ * displays the message.
+ */
+public class SearchActivity extends AppCompatActivity implements IConstants {
+    /**
+     * The maximum number of hits to show.
+     */
+    private static final int MAX_HITS = 200;
+
+    private EditText mSearchText;
+    private TextView mStatusView;
+    private ListView mListView;
+    private CustomListAdapter mListAdapter;
+    private IndexTask mIndexTask;
+    private SearchTask mSearchTask;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.search);
+        mSearchText = findViewById(R.id.search_text);
+        mStatusView = findViewById(R.id.status);
+        mListView = findViewById(R.id.mainListView);
+        mListAdapter = new CustomListAdapter();
+        mListView.setAdapter(mListAdapter);
+        mListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+            @Override
+            public void onItemClick(AdapterView<?> parent, View view,
+                                    int position, long id) {
+                onListItemClick(position);
+            }
+        });
+        mSearchText.setOnEditorActionListener(new TextView
+                .OnEditorActionListener() {
+            @Override
+            public boolean onEditorAction(TextView v, int actionId,
+                                          KeyEvent event) {
+                if (actionId == EditorInfo.IME_ACTION_SEARCH
+                        || actionId == EditorInfo.IME_ACTION_DONE
+                        || (event != null && event.getKeyCode()
+                        == KeyEvent.KEYCODE_ENTER && event.getAction()
+                        == KeyEvent.ACTION_DOWN)) {
+                    search();
+                    return true;
+                }
+                return false;
+            }
+        });
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        MenuInflater inflater = getMenuInflater();
+        inflater.inflate(R.menu.searchmenu, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        int id = item.getItemId();
+        switch (id) {
+            case R.id.search:
+                search();
+                return true;
+            case R.id.rebuild_index:
+                updateIndex(true);
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        updateIndex(false);
+    }
+
+    @Override
+    protected void onDestroy() {
+        if (mIndexTask != null) {
+            mIndexTask.cancel(false);
+        }
+        if (mSearchTask != null) {
+            mSearchTask.cancel(false);
+        }
+        super.onDestroy();
+    }
+
+    private void onListItemClick(int position) {
+        MessageSearchIndex.Hit hit = mListAdapter.getHit(position);
+        if (hit == null) return;
+        Log.d(TAG, this.getClass().getSimpleName() + ": onListItemClick: "
+                + "position=" + position + " id=" + hit.getId() + " mms="
+                + hit.isMms());
+        try {
+            Intent i = new Intent(this, hit.isMms() ?
+                    DisplayMMSActivity.class : DisplaySMSActivity.class);
+            i.putExtra(COL_ID, hit.getId());
+            i.putExtra(URI_KEY, hit.isMms() ? MMS_URI.toString()
+                    : SMS_URI.toString());
+            startActivityForResult(i, DISPLAY_MESSAGE);
+        } catch (Exception ex) {
+            Utils.excMsg(this, "Error displaying message", ex);
+        }
+    }
+
+    /**
+     * Adds new messages to the index, or rebuilds it, in the background.
+     *
+     * @param rebuild Whether to rebuild the index.
+     */
+    private void updateIndex(boolean rebuild) {
+        if (mIndexTask != null
+                && mIndexTask.getStatus() != AsyncTask.Status.FINISHED) {
+            if (!rebuild) return;
+            mIndexTask.cancel(false);
+        }
+        mStatusView.setText(rebuild ? R.string.search_rebuilding
+                : R.string.search_indexing);
+        mIndexTask = new IndexTask(rebuild);
+        mIndexTask.execute();
+    }
+
+    /**
+     * Searches for the current text in the background.
+     */
+    private void search() {
+        String query = mSearchText.getText().toString().trim();
+        if (query.length() == 0) return;
+        if (mSearchTask != null) {
+            mSearchTask.cancel(false);
+        }
+        mSearchTask = new SearchTask(query);
+        mSearchTask.execute();
+    }
+
+    /**
+     * An asynchronous task to update the index.
+     */
+    private class IndexTask extends AsyncTask<Void, Void, String> {
+        private final boolean mRebuild;
+        private int mAdded;
+        private int mCount;
+
+        private IndexTask(boolean rebuild) {
+            mRebuild = rebuild;
+        }
+
+        @Override
+        protected String doInBackground(Void... params) {
+            try {
+                MessageSearchIndex index =
+                        MessageSearchIndex.getInstance(SearchActivity.this);
+                mAdded = index.update(mRebuild);
+                mCount = index.getCount();
+            } catch (Exception ex) {
+                Log.e(TAG, "Error updating search index", ex);
+                return "Error updating search index: " + ex.getMessage();
+            }
+            return null;
+        }
+
+        @Override
+        protected void onPostExecute(String error) {
+            if (error != null) {
+                mStatusView.setText(error);
+                return;
+            }
+            mStatusView.setText(getString(R.string.search_indexed, mCount,
+                    mAdded));
+        }
+    }
+
+    /**
+     * An asynchronous task to search the index.
+     */
+    private class SearchTask extends AsyncTask<Void, Void,
+            List<MessageSearchIndex.Hit>> {
+        private final String mQuery;
+        private String mError;
+
+        private SearchTask(String query) {
+            mQuery = query;
+        }
+
+        @Override
+        protected List<MessageSearchIndex.Hit> doInBackground(Void...
+                                                                      params) {
+            try {
+                return MessageSearchIndex.getInstance(SearchActivity.this)
+                        .search(mQuery, MAX_HITS);
+            } catch (Exception ex) {
+                // Most likely a malformed FTS query
+                Log.e(TAG, "Error searching", ex);
+                mError = ex.getMessage();
+                return null;
+            }
+        }
+
+        @Override
+        protected void onPostExecute(List<MessageSearchIndex.Hit> hits) {
+            if (hits == null) {
+                Utils.errMsg(SearchActivity.this, "Error searching for "
+                        + mQuery + ": " + mError);
+                return;
+            }
+            mListAdapter.setHits(hits);
+            mListView.setSelection(0);
+            mStatusView.setText(getString(R.string.search_hits, hits.size(),
+                    mQuery));
+        }
+    }
+
+    /**
+     * ListView adapter class for this activity.
+     */
+    private class CustomListAdapter extends BaseAdapter {
+        private final LayoutInflater mInflator;
+        private List<MessageSearchIndex.Hit> mHits = new ArrayList<>();
+
+        private CustomListAdapter() {
+            super();
+            mInflator = getLayoutInflater();
+        }
+
+        private void setHits(List<MessageSearchIndex.Hit> hits) {
+            mHits = hits;
+            notifyDataSetChanged();
+        }
+
+        private MessageSearchIndex.Hit getHit(int i) {
+            if (i < 0 || i >= mHits.size()) {
+                return null;
+            }
+            return mHits.get(i);
+        }
+
+        @Override
+        public int getCount() {
+            return mHits.size();
+        }
+
+        @Override
+        public Object getItem(int i) {
+            return getHit(i);
+        }
+
+        @Override
+        public long getItemId(int i) {
+            return i;
+        }
+
+        @Override
+        public View getView(int i, View view, ViewGroup viewGroup) {
+            ViewHolder viewHolder;
+            // General ListView optimization code.
+            if (view == null) {
+                view = mInflator.inflate(R.layout.list_row, viewGroup,
+                        false);
+                viewHolder = new ViewHolder();
+                viewHolder.title = (TextView) view.findViewById(R.id.title);
+                viewHolder.subTitle = (TextView) view.findViewById(R.id
+                        .subtitle);
+                view.setTag(viewHolder);
+            } else {
+                viewHolder = (ViewHolder) view.getTag();
+            }
+            MessageSearchIndex.Hit hit = getHit(i);
+            if (hit == null) {
+                viewHolder.title.setText("Error");
+                viewHolder.subTitle.setText("Bad view index" + i
+                        + " (Should be 0 to " + getCount() + ")");
+                return view;
+            }
+            String address = hit.getAddress();
+            if (!hit.isMms()) {
+                address = MessageUtils.formatAddress(address);
+            }
+            viewHolder.title.setText((hit.isMms() ? "MMS " : "SMS ")
+                    + hit.getId() + ": " + address + "\n"
+                    + formatDate(hit.getDate()));
+            viewHolder.subTitle.setText(hit.getSnippet());
+            return view;
+        }
+    }
+
+    /**
+     * Convience class for managing views for a ListView row.
+     */
+    private static class ViewHolder {
+        TextView title;
+        TextView subTitle;
+    }
+
+}